@@ -0,0 +1,53 @@
+package com.bb.kalah;
+
+import java.util.SplittableRandom;
+
+/**
+ * Games and moves the benchmarks play, made the same for every run by a fixed seed.
+ */
+final class KalahBenchGames {
+    static final long SEED = 20171030L;
+
+    private KalahBenchGames() {
+    }
+
+    /**
+     * @return games with both players seated, each played a random number of random moves into it and not ended.
+     */
+    static KalahGame[] inProgress(int pitsPerPlayer, int stonesPerPit, int count) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        KalahGame[] games = new KalahGame[count];
+        for (int i = 0; i < count; i++) {
+            KalahGame game;
+            do {
+                game = new KalahGame("Benchmark", pitsPerPlayer, stonesPerPit);
+                game.setPlayer1("Player 1");
+                game.setPlayer2("Player 2");
+                int moves = random.nextInt(pitsPerPlayer * stonesPerPit / 2 + 1);
+                for (int move = 0; move < moves && !game.hasGameEnded(); move++) {
+                    game.makeMove(randomMove(game.getState(), random));
+                }
+            } while (game.hasGameEnded());
+            games[i] = game;
+        }
+        return games;
+    }
+
+    /**
+     * @return a random legal move of the player whose turn it is.
+     */
+    static int randomMove(KalahGameState state, SplittableRandom random) {
+        return randomMove(state.getBoard(), !state.isPlayerTwoToMove(), random);
+    }
+
+    /**
+     * @return a random legal move of the player on the board, which has to have one.
+     */
+    static int randomMove(KalahBoard board, boolean playerOne, SplittableRandom random) {
+        long legalMoves = board.legalMoves() & KalahRules.houseMask(board.getPitsPerPlayer(), playerOne);
+        for (int choice = random.nextInt(Long.bitCount(legalMoves)); choice > 0; choice--) {
+            legalMoves &= legalMoves - 1;
+        }
+        return Long.numberOfTrailingZeros(legalMoves);
+    }
+}
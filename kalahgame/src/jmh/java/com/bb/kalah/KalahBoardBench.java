@@ -0,0 +1,85 @@
+package com.bb.kalah;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single moves and the end of game checks on positions taken from random games, a different one every call.
+ * A move is made on a copy of the position, as the game state does, so {@link #copyBoard} is its baseline,
+ * and {@link #moveState} adds the new state around the board. Run with {@code -prof gc} for the allocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KalahBoardBench {
+    private static final int POSITIONS = 1024;
+
+    @Param({"4", "6", "12"})
+    public int pitsPerPlayer;
+
+    @Param({"3", "6", "12"})
+    public int stonesPerPit;
+
+    private final KalahGameState[] states = new KalahGameState[POSITIONS];
+    private final KalahBoard[] boards = new KalahBoard[POSITIONS];
+    private final int[] moves = new int[POSITIONS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(KalahBenchGames.SEED);
+        KalahGame[] games = KalahBenchGames.inProgress(pitsPerPlayer, stonesPerPit, POSITIONS);
+        for (int i = 0; i < POSITIONS; i++) {
+            states[i] = games[i].getState();
+            boards[i] = states[i].getBoard();
+            moves[i] = KalahBenchGames.randomMove(states[i], random);
+        }
+    }
+
+    @Benchmark
+    public KalahBoard copyBoard() {
+        return new KalahBoard(boards[position()]);
+    }
+
+    @Benchmark
+    public KalahGameMove makeMove() {
+        int position = position();
+        return new KalahBoard(boards[position]).makeMove(moves[position]);
+    }
+
+    @Benchmark
+    public KalahGameState moveState() {
+        int position = position();
+        return states[position].move("Benchmark", moves[position]);
+    }
+
+    @Benchmark
+    public int playerOneStoneCount() {
+        return boards[position()].getPlayerOneStoneCount();
+    }
+
+    @Benchmark
+    public boolean hasGameEnded() {
+        return states[position()].hasGameEnded();
+    }
+
+    private int position() {
+        next = (next + 1) & (POSITIONS - 1);
+        return next;
+    }
+}
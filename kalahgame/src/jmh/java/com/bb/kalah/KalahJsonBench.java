@@ -0,0 +1,66 @@
+package com.bb.kalah;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a game in progress the ways the endpoints answer with it: the full JSON, the slim JSON view and the
+ * binary form, and reading the binary form back. The object mapper is configured like the one the
+ * application gets from Spring.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KalahJsonBench {
+    @Param({"6", "12"})
+    public int pitsPerPlayer;
+
+    private ObjectMapper objectMapper;
+    private KalahGame game;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        game = KalahBenchGames.inProgress(pitsPerPlayer, 6, 1)[0].snapshot();
+        encoded = KalahGameCodec.encode(game);
+    }
+
+    @Benchmark
+    public byte[] json() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(game);
+    }
+
+    @Benchmark
+    public byte[] slimJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(KalahSlimJsonMessageConverter.view(game));
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        return KalahGameCodec.encode(game);
+    }
+
+    @Benchmark
+    public KalahGame binaryDecode() {
+        return KalahGameCodec.decodeGame(ByteBuffer.wrap(encoded));
+    }
+}
@@ -0,0 +1,67 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.request.CreateGameResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Players enqueued by many threads at once into a few rating bands, every second one paired with a player
+ * waiting in its band into a game made in memory. The games are dropped with the service after every
+ * iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class KalahMatchmakingBench {
+    @Param({"1", "4"})
+    public int bands;
+
+    private KalahService service;
+    private KalahMatchmaker matchmaker;
+    private int ratingBand;
+
+    @State(Scope.Thread)
+    public static class Player {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        KalahServiceProperties properties = new KalahServiceProperties();
+        service = new KalahService(new KalahEngine(), properties);
+        matchmaker = new KalahMatchmaker(service, properties);
+        ratingBand = properties.getMatchmaking().getRatingBand();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public DeferredResult<ResponseEntity<CreateGameResponse>> enqueue(Player player) {
+        return matchmaker.enqueue("Player", player.random.nextInt(bands) * ratingBand);
+    }
+}
@@ -0,0 +1,65 @@
+package com.bb.kalah;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole games of random moves from the start to the result, on a single board changed in place and through
+ * {@link KalahGame}, which makes a new state for every move as the service does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KalahPlayoutBench {
+    @Param({"4", "6", "12"})
+    public int pitsPerPlayer;
+
+    @Param({"3", "6"})
+    public int stonesPerPit;
+
+    private SplittableRandom random;
+
+    @Setup
+    public void setUp() {
+        random = new SplittableRandom(KalahBenchGames.SEED);
+    }
+
+    @Benchmark
+    public KalahBoard boardPlayout() {
+        KalahBoard board = new KalahBoard(pitsPerPlayer, stonesPerPit);
+        boolean playerOne = true;
+        while (board.getPlayerOneStoneCount() != 0 && board.getPlayerTwoStoneCount() != 0) {
+            if (board.makeMove(KalahBenchGames.randomMove(board, playerOne, random)) != KalahGameMove.PLAY_AGAIN) {
+                playerOne = !playerOne;
+            }
+        }
+        board.endGame();
+        return board;
+    }
+
+    @Benchmark
+    public String gamePlayout() {
+        KalahGame game = new KalahGame("Playout", pitsPerPlayer, stonesPerPit);
+        game.setPlayer1("Player 1");
+        game.setPlayer2("Player 2");
+        while (!game.hasGameEnded()) {
+            game.makeMove(KalahBenchGames.randomMove(game.getState(), random));
+        }
+        return game.endGame();
+    }
+}
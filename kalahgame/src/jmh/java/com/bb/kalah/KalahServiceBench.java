@@ -0,0 +1,104 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.exception.BadRequestException;
+import com.bb.kalah.exception.GameNotFoundException;
+import com.bb.kalah.exception.UnauthorizedPitAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Moves through {@link KalahService#makeMove} by many threads at once on games they share, few games for
+ * much contention and many for little. Every thread moves for the player whose turn it saw last, so some
+ * moves lose the race and are rejected, as they would be from real clients. A finished game is replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class KalahServiceBench {
+    @Param({"LOCKING", "OPTIMISTIC"})
+    public KalahServiceProperties.Concurrency concurrency;
+
+    @Param({"4", "1024"})
+    public int games;
+
+    private KalahService service;
+    private AtomicReferenceArray<String[]> slots;
+
+    @State(Scope.Thread)
+    public static class Player {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup
+    public void setUp() {
+        KalahServiceProperties properties = new KalahServiceProperties();
+        properties.setConcurrency(concurrency);
+        service = new KalahService(new KalahEngine(), properties);
+        slots = new AtomicReferenceArray<>(games);
+        for (int i = 0; i < games; i++) {
+            slots.set(i, newGame());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    /**
+     * @return the move number after the move, or -1 if the move was rejected.
+     */
+    @Benchmark
+    public int makeMove(Player player) {
+        int slot = player.random.nextInt(games);
+        String[] game = slots.get(slot);
+        try {
+            KalahGameState state = service.getGame(game[0]).getState();
+            if (state.hasGameEnded()) {
+                replace(slot, game);
+                return -1;
+            }
+            int pitIndex = KalahBenchGames.randomMove(state, player.random);
+            return service.makeMove(game[0], state.isPlayerTwoToMove() ? game[2] : game[1], pitIndex)
+                    .getMoveNumber();
+        } catch (BadRequestException | UnauthorizedPitAccessException e) {
+            // Another thread moved first.
+            return -1;
+        } catch (GameNotFoundException e) {
+            replace(slot, game);
+            return -1;
+        }
+    }
+
+    private void replace(int slot, String[] game) {
+        slots.compareAndSet(slot, game, newGame());
+    }
+
+    /**
+     * @return the game's ID followed by the IDs of its two players.
+     */
+    private String[] newGame() {
+        String gameId = service.createGame("Benchmark");
+        return new String[]{gameId, service.assignPlayer(gameId, "Player 1"), service.assignPlayer(gameId, "Player 2")};
+    }
+}
@@ -0,0 +1,119 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A restart with the games in a snapshot, until the service answers for one of them, against reading every
+ * game of the snapshot as a restart reading them up front would. The restart should take about the same
+ * time for any number of games. A million games need a heap of about 2 GB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class KalahSnapshotBench {
+    private static final String SNAPSHOT = String.format("snapshot-%019d.bin", 1);
+
+    @Param({"10000", "100000", "1000000"})
+    public int games;
+
+    private final SplittableRandom random = new SplittableRandom(KalahBenchGames.SEED);
+    private final KalahEngine engine = new KalahEngine();
+    private Path directory;
+    private List<String> ids;
+    private KalahService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("kalah-snapshot");
+        List<KalahGame> all = new ArrayList<>(games);
+        ids = new ArrayList<>(games);
+        for (int i = 0; i < games; i++) {
+            KalahGame game = new KalahGame("Game " + i);
+            game.setPlayer1("Player " + i);
+            if (i % 2 == 0) {
+                game.setPlayer2("Opponent " + i);
+                game.makeMove(i % 6);
+            }
+            all.add(game);
+            ids.add(game.getGameId());
+        }
+        KalahSnapshot.write(directory.resolve(SNAPSHOT), all, null, null);
+    }
+
+    /**
+     * Leaves only the snapshot for the next restart, without the segment the last one started.
+     */
+    @TearDown(Level.Invocation)
+    public void shutdown() throws IOException {
+        if (service != null) {
+            service.shutdown();
+            service = null;
+        }
+        delete(file -> file.getFileName().toString().startsWith("journal-"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        delete(file -> true);
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public KalahGame restart() {
+        KalahServiceProperties properties = new KalahServiceProperties();
+        properties.getJournal().setEnabled(true);
+        properties.getJournal().setDirectory(directory.toString());
+        properties.getJournal().setFsync(false);
+        service = new KalahService(engine, properties);
+        return service.getGame(ids.get(random.nextInt(ids.size())));
+    }
+
+    @Benchmark
+    public int readAll() throws IOException {
+        int read = 0;
+        try (KalahSnapshot snapshot = KalahSnapshot.open(directory.resolve(SNAPSHOT))) {
+            for (String id : ids) {
+                if (snapshot.take(id) != null) {
+                    read++;
+                }
+            }
+        }
+        return read;
+    }
+
+    private void delete(Predicate<Path> which) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (which.test(file)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
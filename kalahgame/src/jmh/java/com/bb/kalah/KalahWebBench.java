@@ -0,0 +1,115 @@
+package com.bb.kalah;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The game endpoints over HTTP, answering on the request thread against the non-blocking ones, with the
+ * journal forcing every batch to the disk and few request threads. Every benchmark thread is a client that
+ * creates a game, seats the second player and makes the first move, each a change that waits for the
+ * journal, and the percentiles are of the three requests together. More clients with {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dhttp.maxConnections=1000")
+@Threads(64)
+public class KalahWebBench {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Param({"false", "true"})
+    public boolean nonBlocking;
+
+    @Param({"8"})
+    public int requestThreads;
+
+    private Path journal;
+    private ConfigurableApplicationContext context;
+    private String base;
+
+    @Setup
+    public void setUp() throws IOException {
+        journal = Files.createTempDirectory("kalah-load");
+        context = SpringApplication.run(KalahApplication.class,
+                "--server.port=0",
+                "--server.tomcat.max-threads=" + requestThreads,
+                "--logging.level.root=WARN",
+                "--kalah.service.non-blocking=" + nonBlocking,
+                "--kalah.service.journal.enabled=true",
+                "--kalah.service.journal.directory=" + journal);
+        int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+        base = "http://localhost:" + port + "/api/v1/game";
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        try (Stream<Path> files = Files.list(journal)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(journal);
+    }
+
+    @Benchmark
+    public String createJoinMove() throws IOException {
+        Map<?, ?> game = OBJECT_MAPPER.readValue(post(base, "application/json",
+                "{\"gameName\":\"Load\",\"playerName\":\"Player 1\"}"), Map.class);
+        String gameId = (String) game.get("gameId");
+        post(base + "/join/" + gameId, "text/plain", "Player 2");
+        return post(base + "/move/" + gameId, "application/json",
+                "{\"playerId\":\"" + game.get("playerId") + "\",\"pitIndex\":0}");
+    }
+
+    private static String post(String url, String contentType, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IOException(url + " answered " + connection.getResponseCode());
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                content.write(buffer, 0, read);
+            }
+        }
+        return new String(content.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,82 @@
+package com.bb.kalah.engine;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A parallel search of the opening position for a fixed time, by the main search alone and with helper
+ * searches on more threads, to see how the nodes searched per second scale with the threads. The nodes of
+ * the main search and the helpers together are reported as {@code nodes}. Every search starts from an empty
+ * transposition table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KalahSearchBench {
+    private static final int[] INITIAL_BOARD = {6, 6, 6, 6, 6, 6, 0, 6, 6, 6, 6, 6, 6, 0};
+    private static final int MAX_DEPTH = 48;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"100"})
+    public int budgetMillis;
+
+    private KalahZobrist zobrist;
+    private ForkJoinPool pool;
+    private KalahTranspositionTable table;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        zobrist = new KalahZobrist(6, 72);
+        pool = new ForkJoinPool(Math.max(1, threads - 1));
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTable() {
+        table = new KalahTranspositionTable(1 << 22);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public int bestMove(Nodes counted) {
+        KalahParallelSearch search = new KalahParallelSearch(zobrist, table, MAX_DEPTH, threads - 1, pool);
+        int move = search.bestMove(INITIAL_BOARD.clone(), KalahPosition.PLAYER_ONE,
+                TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+        counted.nodes += search.getNodes();
+        return move;
+    }
+}
@@ -0,0 +1,32 @@
+package com.bb.kalah;
+
+import com.bb.kalah.request.ArchivePage;
+import com.bb.kalah.request.ArchivedGame;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Endpoints for games that have ended, which the game endpoints no longer know.
+ */
+@RestController
+@RequestMapping("/api/v1/archive")
+public class KalahArchiveController {
+    private KalahGameArchive kalahGameArchive;
+
+    public KalahArchiveController(KalahGameArchive kalahGameArchive) {
+        this.kalahGameArchive = kalahGameArchive;
+    }
+
+    @RequestMapping(value = "/{gameId}", method = RequestMethod.GET)
+    public ArchivedGame getGame(@PathVariable("gameId") String gameId) {
+        return kalahGameArchive.find(gameId);
+    }
+
+    @RequestMapping(value = "", method = RequestMethod.GET)
+    public ArchivePage getGames(@RequestParam(value = "playerId", required = false) String playerId,
+                                @RequestParam(value = "from", required = false) Long from,
+                                @RequestParam(value = "to", required = false) Long to,
+                                @RequestParam(value = "page", defaultValue = "0") int page,
+                                @RequestParam(value = "size", defaultValue = "20") int size) {
+        return kalahGameArchive.query(playerId, from, to, page, size);
+    }
+}
@@ -0,0 +1,49 @@
+package com.bb.kalah;
+
+import com.bb.kalah.request.MoveRequest;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes games and reads moves in the binary form of {@link KalahGameCodec}, for clients that accept
+ * {@value KalahGameCodec#MEDIA_TYPE}.
+ */
+class KalahBinaryMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    KalahBinaryMessageConverter() {
+        super(MediaType.valueOf(KalahGameCodec.MEDIA_TYPE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == KalahGame.class || clazz == MoveRequest.class;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        if (clazz != MoveRequest.class) {
+            throw new HttpMessageNotReadableException("Only moves are read as " + KalahGameCodec.MEDIA_TYPE);
+        }
+        try {
+            return KalahGameCodec.decodeMove(ByteBuffer.wrap(StreamUtils.copyToByteArray(inputMessage.getBody())));
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object object, HttpOutputMessage outputMessage) throws IOException {
+        byte[] bytes = object instanceof KalahGame
+                ? KalahGameCodec.encode((KalahGame) object)
+                : KalahGameCodec.encode((MoveRequest) object);
+        outputMessage.getHeaders().setContentLength(bytes.length);
+        outputMessage.getBody().write(bytes);
+    }
+}
@@ -1,15 +1,18 @@
 package com.bb.kalah;
 
-import com.bb.kalah.pit.KalahHouse;
-import com.bb.kalah.pit.KalahPit;
-import com.bb.kalah.pit.KalahStore;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.IntStream;
+import java.util.Arrays;
 
+/**
+ * Kalah board backed by a single primitive array.
+ * Indices 0 .. pitsPerPlayer - 1 are player 1's houses, followed by player 1's store,
+ * then player 2's houses and finally player 2's store.
+ * The stones in each player's houses are kept as running totals, so telling whether the game has ended
+ * and tallying it up don't have to count the houses. Moves are sown by the board's {@link KalahRuleSet}.
+ */
 @Slf4j
 public class KalahBoard {
     @Getter
@@ -18,33 +21,91 @@ public class KalahBoard {
     @Getter
     private int stonesPerPit;
 
+    @Getter(AccessLevel.PACKAGE)
+    private final KalahRuleSet rules;
+
     private final int playerOneStore;
     private final int playerTwoStore;
 
-    private List<KalahPit> pits;
+    private final int[] pits;
+
+    private int playerOneHouseStones;
+    private int playerTwoHouseStones;
+
+    // How the move that led to the board turned out and the stones it sowed, null and 0 before any move.
+    @Getter(AccessLevel.PACKAGE)
+    private KalahGameMove lastMove;
+    @Getter(AccessLevel.PACKAGE)
+    private int lastSown;
 
+    // All pits have to fit into the 64 bit legal moves mask.
+    static final int MAX_PITS_PER_PLAYER = 31;
+
+    /**
+     * Board of standard Kalah.
+     */
     KalahBoard(int initialPitsCount, int initialStoneCount) {
-        this.pits = new ArrayList<>((initialPitsCount + 1) * 2);
+        this(KalahRuleSet.standard(initialPitsCount), initialStoneCount);
+    }
+
+    /**
+     * @param pits all the pits on the board, houses and stores included, which are copied.
+     */
+    KalahBoard(int pitsPerPlayer, int stonesPerPit, int[] pits) {
+        this(KalahRuleSet.standard(pitsPerPlayer), stonesPerPit, pits);
+    }
+
+    KalahBoard(KalahRuleSet rules, int initialStoneCount) {
+        int initialPitsCount = rules.getPitsPerPlayer();
+        this.rules = rules;
         pitsPerPlayer = initialPitsCount;
         stonesPerPit = initialStoneCount;
         playerOneStore = initialPitsCount;
         playerTwoStore = (initialPitsCount * 2) + 1;
-        createPlayerPits(initialPitsCount, initialStoneCount);
-        createPlayerPits(initialPitsCount, initialStoneCount);
+        pits = new int[(initialPitsCount + 1) * 2];
+        for (int i = 0; i < initialPitsCount; i++) {
+            pits[i] = initialStoneCount;
+            pits[playerOneStore + 1 + i] = initialStoneCount;
+        }
+        playerOneHouseStones = initialPitsCount * initialStoneCount;
+        playerTwoHouseStones = initialPitsCount * initialStoneCount;
+    }
+
+    /**
+     * @param pits all the pits on the board, houses and stores included, which are copied.
+     */
+    KalahBoard(KalahRuleSet rules, int stonesPerPit, int[] pits) {
+        this(rules, stonesPerPit);
+        if (pits.length != this.pits.length) {
+            throw new IllegalArgumentException("Board with " + pitsPerPlayer + " pits per player has "
+                    + this.pits.length + " pits");
+        }
+        System.arraycopy(pits, 0, this.pits, 0, pits.length);
+        playerOneHouseStones = KalahRules.houseStones(pits, rules.getPitsPerPlayer(), true);
+        playerTwoHouseStones = KalahRules.houseStones(pits, rules.getPitsPerPlayer(), false);
     }
 
-    private void createPlayerPits(int initialPitsCount, int initialStoneCount) {
-        IntStream.range(0, initialPitsCount).forEach(
-                i -> pits.add(new KalahHouse(initialStoneCount))
-        );
-        pits.add(new KalahStore(0));
+    /**
+     * @param board the board to copy, which is left unchanged.
+     */
+    KalahBoard(KalahBoard board) {
+        pitsPerPlayer = board.pitsPerPlayer;
+        stonesPerPit = board.stonesPerPit;
+        rules = board.rules;
+        playerOneStore = board.playerOneStore;
+        playerTwoStore = board.playerTwoStore;
+        pits = board.pits.clone();
+        playerOneHouseStones = board.playerOneHouseStones;
+        playerTwoHouseStones = board.playerTwoHouseStones;
+        lastMove = board.lastMove;
+        lastSown = board.lastSown;
     }
 
     /**
      * Performs all the tasks related to a specific player move :
-     * 1. Validate the Move.
+     * 1. Validate the Move, returning ILLEGAL without side effects if it is not allowed.
      * 2. Pick All the stones from the selected pit.
-     * 3. Sows the stones into each of the following pits.
+     * 3. Sows the stones into each of the following pits, adding full laps in a single pass.
      * 4. Checks for the edge cases and takes action.
      * 5. Return a GameMove to help decide on the next move / GameState.
      *
@@ -52,144 +113,129 @@ public class KalahBoard {
      * @return the GameMove for deciding next move.
      */
     KalahGameMove makeMove(int pitNum) {
-        try {
-            KalahHouse pit = (KalahHouse) validate(pitNum);
-
-            // Pick all the stones in the selected pit.
-            int stones = pit.pickStones();
-
-            KalahGameMove nextMove = KalahGameMove.CONTINUE;
-            boolean isOppositionPit = false;
-            int index = pitNum;
-            while (stones > 0) {
-                stones--;
-                if (index == playerTwoStore) {
-                    index = 0;
-                } else {
-                    index++;
-                }
-                KalahPit currentPit = pits.get(index);
-
-                if (currentPit.isStore()) {
-                    if (!isOppositionPit) {
-                        // Stone is added to the players kalah / store.
-                        currentPit.sowStone();
-                        // Set next move to play again if this is the last stone.
-                        if (stones == 0) {
-                            nextMove = KalahGameMove.PLAY_AGAIN;
-                        }
-                    } else {
-                        // No stones are added to the opponents score.
-                        stones++;
-                    }
-                    isOppositionPit = !isOppositionPit;
-                } else {
-                    // Set the next move to Capture opposite pit stones if this is the last stone.
-                    if (!isOppositionPit && stones == 0 && currentPit.isEmpty()) {
-                        nextMove = KalahGameMove.CAPTURE;
-                    }
-                    currentPit.sowStone();
-                }
-            }
-            if (nextMove == KalahGameMove.CAPTURE) {
-                capture(index);
-            }
-            return nextMove;
-        } catch (RuntimeException e) {
-            log.info("Illegal Move exception : " + e.getMessage());
+        if (!isLegalMove(pitNum)) {
+            log.debug("Illegal move on pit {}", pitNum);
             return KalahGameMove.ILLEGAL;
         }
+        boolean playerOne = pitNum < playerOneStore;
+        int ownStore = playerOne ? playerOneStore : playerTwoStore;
+        int stones = pits[pitNum];
+        int storeBefore = pits[ownStore];
+
+        KalahGameMove move = rules.sow(pits, pitNum);
+
+        // Stones only ever leave the houses for the store of the player moving.
+        int stored = pits[ownStore] - storeBefore;
+        int houseStones = playerOneHouseStones + playerTwoHouseStones - stored;
+        // Every full lap puts a stone into each of the opponent's houses, and the rest of the stones reach
+        // them once they are past the own houses and store.
+        int laps = stones / (pits.length - 1);
+        int rest = stones % (pits.length - 1) - (ownStore - pitNum);
+        int opponentHouseStones = (playerOne ? playerTwoHouseStones : playerOneHouseStones)
+                + laps * pitsPerPlayer + Math.min(Math.max(rest, 0), pitsPerPlayer);
+        if (move == KalahGameMove.CAPTURE) {
+            // Beyond the stones sown into it, the store got the capturing stone and the opposite house.
+            opponentHouseStones -= stored - laps - (rest >= 0 ? 1 : 0) - 1;
+        }
+        if (playerOne) {
+            playerTwoHouseStones = opponentHouseStones;
+            playerOneHouseStones = houseStones - opponentHouseStones;
+        } else {
+            playerOneHouseStones = opponentHouseStones;
+            playerTwoHouseStones = houseStones - opponentHouseStones;
+        }
+        lastMove = move;
+        lastSown = stones;
+        return move;
     }
 
     /**
-     * @return count The total number of stones in all the houses for player 1.
+     * @param pitNum the index of the pit to pick stones.
+     * @return true if the pit is a house on the board that has stones in it.
      */
-    public int getPlayerOneStoneCount() {
-        int count = 0;
-        for (int i = 0; i < pitsPerPlayer; i++) {
-            count += pits.get(i).getStones();
-        }
-        return count;
+    public boolean isLegalMove(int pitNum) {
+        return KalahRules.isLegalMove(pits, pitsPerPlayer, pitNum);
     }
 
     /**
-     * @return count The total number of stones in all the houses for player 2.
+     * @return bitmask of the legal moves, bit i is set if pit i is a house with stones in it.
      */
-    public int getPlayerTwoStoneCount() {
-        int count = 0;
-        for (int i = pitsPerPlayer + 1; i <= pitsPerPlayer * 2; i++) {
-            count += pits.get(i).getStones();
-        }
-        return count;
+    public long legalMoves() {
+        return KalahRules.legalMoves(pits, pitsPerPlayer);
     }
 
     /**
-     * Ends the game by collecting all the stones in the pits and collecting it in the respective kalah / store.
+     * @return a copy of all the pits on the board, houses and stores included.
      */
-    public void endGame() {
-        IntStream.range(0, pitsPerPlayer).forEach(
-                i -> ((KalahStore) pits.get(pitsPerPlayer)).addStones(((KalahHouse) pits.get(i)).pickStones())
-        );
-
-        IntStream.range(pitsPerPlayer + 1, (pitsPerPlayer * 2) + 1).forEach(
-                i -> ((KalahStore) pits.get((pitsPerPlayer * 2) + 1)).addStones(((KalahHouse) pits.get(i)).pickStones())
-        );
+    int[] getPits() {
+        return pits.clone();
     }
 
     /**
-     * @return count of stones in the Player 1 Kalah / Store.
+     * Copies all the pits into the array, which has to have room for exactly all of them.
      */
-    public int getPlayerOneScore() {
-        return pits.get(playerOneStore).getStones();
+    void copyPits(int[] to) {
+        System.arraycopy(pits, 0, to, 0, pits.length);
     }
 
     /**
-     * @return count of stones in the Player 2 Kalah / Store.
+     * @return number of pits on the board, houses and stores included.
      */
-    public int getPlayerTwoScore() {
-        return pits.get(playerTwoStore).getStones();
+    int getPitCount() {
+        return pits.length;
     }
 
     /**
-     * Captures the last stone to be added to the player's empty pit and all the
-     * stones in the opposite pit. Adds all these stones to the player's score.
-     *
-     * @param pitNum the index of the current player's pit.
+     * @return true if the last stone landing in an own empty house captures.
      */
-    private void capture(int pitNum) {
-        int oppPit = getOppositePit(pitNum);
-
-        KalahHouse currentPit = (KalahHouse) pits.get(pitNum);
-        KalahHouse oppositePit = (KalahHouse) pits.get(oppPit);
-        int stones = currentPit.pickStones() + oppositePit.pickStones();
+    public boolean isCaptures() {
+        return rules.isCaptures();
+    }
 
-        int storeIndex = playerOneStore;
-        if (pitNum > pitsPerPlayer) {
-            storeIndex = playerTwoStore;
-        }
-        KalahStore store = (KalahStore) pits.get(storeIndex);
-        store.addStones(stones);
+    /**
+     * @return true if the last stone captures even when the house across is empty.
+     */
+    public boolean isEmptyCaptures() {
+        return rules.isEmptyCaptures();
     }
 
-    private int getOppositePit(int pitNum) {
-        return (pitsPerPlayer * 2) - pitNum;
+    /**
+     * @return count The total number of stones in all the houses for player 1.
+     */
+    public int getPlayerOneStoneCount() {
+        return playerOneHouseStones;
     }
 
-    // TODO: Create custom exceptions here.
-    private KalahPit validate(int pitNum) {
-        if (pitNum < 0 || pitNum >= pits.size()) {
-            throw new RuntimeException("Pit is out of range.");
-        }
+    /**
+     * @return count The total number of stones in all the houses for player 2.
+     */
+    public int getPlayerTwoStoneCount() {
+        return playerTwoHouseStones;
+    }
 
-        KalahPit pit = pits.get(pitNum);
-        if (pit.isStore()) {
-            throw new RuntimeException("Pit is a Kalah / Store.");
-        }
+    /**
+     * Ends the game by collecting all the stones in the pits and collecting it in the respective kalah / store.
+     */
+    public void endGame() {
+        pits[playerOneStore] += playerOneHouseStones;
+        pits[playerTwoStore] += playerTwoHouseStones;
+        Arrays.fill(pits, 0, playerOneStore, 0);
+        Arrays.fill(pits, playerOneStore + 1, playerTwoStore, 0);
+        playerOneHouseStones = 0;
+        playerTwoHouseStones = 0;
+    }
 
-        if (pit.isEmpty()) {
-            throw new RuntimeException("Pit is empty.");
-        }
+    /**
+     * @return count of stones in the Player 1 Kalah / Store.
+     */
+    public int getPlayerOneScore() {
+        return pits[playerOneStore];
+    }
 
-        return pit;
+    /**
+     * @return count of stones in the Player 2 Kalah / Store.
+     */
+    public int getPlayerTwoScore() {
+        return pits[playerTwoStore];
     }
 }
@@ -1,22 +1,34 @@
 package com.bb.kalah;
 
+import com.bb.kalah.request.BatchMoveRequest;
+import com.bb.kalah.request.BatchMoveResponse;
 import com.bb.kalah.request.CreateGameRequest;
 import com.bb.kalah.request.CreateGameResponse;
 import com.bb.kalah.request.MoveRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.web.bind.annotation.*;
 
+/**
+ * Game endpoints that answer on the request thread. See {@link KalahNonBlockingController} for the same
+ * endpoints without waiting on the request thread.
+ */
 @RestController
+@ConditionalOnProperty(prefix = "kalah.service", name = "non-blocking", havingValue = "false", matchIfMissing = true)
 @RequestMapping("/api/v1/game")
 public class KalahController {
     private KalahService kalahService;
+    private KalahMoveBatches kalahMoveBatches;
 
-    public KalahController(KalahService kalahService) {
+    public KalahController(KalahService kalahService, KalahMoveBatches kalahMoveBatches) {
         this.kalahService = kalahService;
+        this.kalahMoveBatches = kalahMoveBatches;
     }
 
     @RequestMapping(value = "", method = RequestMethod.POST)
     public CreateGameResponse createGame(@RequestBody CreateGameRequest createGameRequest) {
-        String gameId = kalahService.createGame(createGameRequest.getGameName());
+        String gameId = kalahService.createGame(createGameRequest.getGameName(), createGameRequest.getGameType(),
+                KalahVariant.of(createGameRequest.getPitsPerPlayer(), createGameRequest.getStonesPerPit(),
+                        createGameRequest.getCaptures(), createGameRequest.getEmptyCaptures()));
 
         String playerId = kalahService.assignPlayer(gameId, createGameRequest.getPlayerName());
 
@@ -33,8 +45,13 @@ public class KalahController {
         return kalahService.makeMove(gameId, moveRequest.getPlayerId(), moveRequest.getPitIndex());
     }
 
+    @RequestMapping(value = "/moves", method = RequestMethod.POST)
+    public BatchMoveResponse<KalahGame> makeMoves(@RequestBody BatchMoveRequest batchMoveRequest) {
+        return kalahMoveBatches.makeMoves(batchMoveRequest.getMoves());
+    }
+
     @RequestMapping(value = "/{gameId}", method = RequestMethod.GET)
     public KalahGame getGame(@PathVariable("gameId") String gameId) {
-        return kalahService.getGame(gameId);
+        return kalahService.getGame(gameId).snapshot();
     }
 }
@@ -0,0 +1,300 @@
+package com.bb.kalah;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Game store that evicts games nobody asked for within their idle time, and never holds more than
+ * the most games.
+ * <p>
+ * Every game sits in one bucket of a timing wheel, the bucket of the tick at which it would become idle.
+ * A request for a game only records the time, the game stays in its bucket. When the wheel reaches the
+ * bucket, each game in it is either evicted or, if it was asked for in the meantime, moved on to the bucket
+ * of its new idle time. A tick therefore only looks at the games that are due, never at the whole store.
+ * <p>
+ * When the store is full, a few games are sampled from the buckets that come up next, which hold the games
+ * that have been idle the longest, and the least recently used one of them is evicted.
+ */
+@Slf4j
+final class KalahEvictingGameStore implements KalahGameStore {
+    // A power of two, games idle for longer than the wheel turns are moved on once per turn.
+    private static final int WHEEL_SIZE = 512;
+    private static final int SIZE_SAMPLES = 8;
+
+    private static volatile ScheduledExecutorService sweeper;
+
+    private final ConcurrentMap<String, Entry> games = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry>[] wheel;
+    private final LongSupplier clock;
+    private final int maxGames;
+    private final long tickNanos;
+    private final long waitingIdleNanos;
+    private final long inProgressIdleNanos;
+    private final KalahServiceProperties.SizeEviction sizeEviction;
+    private final ScheduledFuture<?> sweep;
+
+    private final LongAdder evictedIdleWaiting = new LongAdder();
+    private final LongAdder evictedIdleInProgress = new LongAdder();
+    private final LongAdder evictedForSize = new LongAdder();
+    private final LongAdder evictedForSizeInProgress = new LongAdder();
+
+    private volatile long processedTick;
+
+    /**
+     * @param settings limits of the store.
+     * @param clock    source of {@link System#nanoTime()}.
+     * @param sweep    whether the wheel is turned every tick in the background, or only by calling {@link #expire()}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    KalahEvictingGameStore(KalahServiceProperties.Store settings, LongSupplier clock, boolean sweep) {
+        this.clock = clock;
+        this.maxGames = settings.getMaxGames();
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, settings.getTickMillis()));
+        this.waitingIdleNanos = TimeUnit.MILLISECONDS.toNanos(settings.getWaitingIdleMillis());
+        this.inProgressIdleNanos = TimeUnit.MILLISECONDS.toNanos(settings.getInProgressIdleMillis());
+        this.sizeEviction = settings.getSizeEviction();
+        this.wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.processedTick = tick(clock.getAsLong());
+        this.sweep = sweep
+                ? sweeper().scheduleWithFixedDelay(this::expire, tickNanos, tickNanos, TimeUnit.NANOSECONDS)
+                : null;
+    }
+
+    /**
+     * All the stores share one daemon thread that turns their wheels.
+     */
+    private static ScheduledExecutorService sweeper() {
+        if (sweeper == null) {
+            synchronized (KalahEvictingGameStore.class) {
+                if (sweeper == null) {
+                    sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "kalah-game-evictor");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return sweeper;
+    }
+
+    @Override
+    public void put(KalahGame game) {
+        Entry entry = new Entry(game, clock.getAsLong());
+        Entry previous = games.put(game.getGameId(), entry);
+        if (previous != null) {
+            previous.removed = true;
+        }
+        schedule(entry);
+        if (games.size() > maxGames) {
+            evictForSize();
+        }
+    }
+
+    @Override
+    public KalahGame get(String gameId) {
+        Entry entry = games.get(gameId);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = clock.getAsLong();
+        return entry.game;
+    }
+
+    @Override
+    public void remove(String gameId) {
+        Entry entry = games.remove(gameId);
+        if (entry != null) {
+            entry.removed = true;
+        }
+    }
+
+    /**
+     * Only replaces the state while the game is still in the store, so a change racing its eviction fails
+     * instead of being made to a game that is gone.
+     */
+    @Override
+    public boolean replace(KalahGame game, KalahGameState expected, KalahGameState next) {
+        Entry entry = games.get(game.getGameId());
+        return entry != null && entry.game == game && !entry.removed && game.compareAndSet(expected, next);
+    }
+
+    @Override
+    public void forEach(Consumer<KalahGame> action) {
+        for (Entry entry : games.values()) {
+            action.accept(entry.game);
+        }
+    }
+
+    @Override
+    public int size() {
+        return games.size();
+    }
+
+    @Override
+    public long getEvictedIdleWaiting() {
+        return evictedIdleWaiting.sum();
+    }
+
+    @Override
+    public long getEvictedIdleInProgress() {
+        return evictedIdleInProgress.sum();
+    }
+
+    @Override
+    public long getEvictedForSize() {
+        return evictedForSize.sum();
+    }
+
+    @Override
+    public long getEvictedForSizeInProgress() {
+        return evictedForSizeInProgress.sum();
+    }
+
+    @Override
+    public void close() {
+        if (sweep != null) {
+            sweep.cancel(false);
+        }
+    }
+
+    /**
+     * Turns the wheel up to the current tick, evicting the games that became idle.
+     */
+    synchronized void expire() {
+        long now = clock.getAsLong();
+        long nowTick = tick(now);
+        // After a long pause every bucket is due, but each only has to be looked at once.
+        long fromTick = Math.max(processedTick + 1, nowTick - WHEEL_SIZE + 1);
+        int evicted = 0;
+        for (long t = fromTick; t <= nowTick; t++) {
+            processedTick = t;
+            List<Entry> due = drain(wheel[bucket(t)], Integer.MAX_VALUE);
+            for (Entry entry : due) {
+                if (entry.removed) {
+                    continue;
+                }
+                if (idleDeadline(entry) - now <= 0) {
+                    if (evict(entry)) {
+                        (entry.game.hasStarted() ? evictedIdleInProgress : evictedIdleWaiting).increment();
+                        evicted++;
+                    }
+                } else {
+                    schedule(entry);
+                }
+            }
+        }
+        processedTick = Math.max(processedTick, nowTick);
+        if (evicted > 0) {
+            log.debug("Evicted {} idle games, {} left", evicted, games.size());
+        }
+    }
+
+    private synchronized void evictForSize() {
+        while (games.size() > maxGames) {
+            List<Entry> samples = new ArrayList<>(SIZE_SAMPLES);
+            for (long t = processedTick + 1; samples.size() < SIZE_SAMPLES && t <= processedTick + WHEEL_SIZE; t++) {
+                samples.addAll(drain(wheel[bucket(t)], SIZE_SAMPLES - samples.size()));
+            }
+            if (samples.isEmpty()) {
+                return;
+            }
+            Entry victim = samples.get(0);
+            for (Entry sample : samples) {
+                if (isBetterVictim(sample, victim)) {
+                    victim = sample;
+                }
+            }
+            for (Entry sample : samples) {
+                if (sample != victim) {
+                    schedule(sample);
+                }
+            }
+            if (evict(victim)) {
+                evictedForSize.increment();
+                if (victim.game.hasStarted()) {
+                    evictedForSizeInProgress.increment();
+                }
+            }
+        }
+    }
+
+    private boolean isBetterVictim(Entry candidate, Entry victim) {
+        if (sizeEviction == KalahServiceProperties.SizeEviction.WAITING_FIRST) {
+            boolean candidateWaiting = !candidate.game.hasStarted();
+            boolean victimWaiting = !victim.game.hasStarted();
+            if (candidateWaiting != victimWaiting) {
+                return candidateWaiting;
+            }
+        }
+        return candidate.lastAccess - victim.lastAccess < 0;
+    }
+
+    private boolean evict(Entry entry) {
+        entry.removed = true;
+        return games.remove(entry.game.getGameId(), entry);
+    }
+
+    /**
+     * Puts the game into the bucket of the first tick after its idle time runs out,
+     * at most one turn of the wheel ahead.
+     */
+    private void schedule(Entry entry) {
+        long processed = processedTick;
+        long tick = tick(idleDeadline(entry)) + 1;
+        tick = Math.min(Math.max(tick, processed + 1), processed + WHEEL_SIZE);
+        wheel[bucket(tick)].add(entry);
+    }
+
+    /**
+     * @return entries taken from the bucket, without the ones already removed.
+     */
+    private static List<Entry> drain(ConcurrentLinkedQueue<Entry> bucket, int max) {
+        List<Entry> entries = new ArrayList<>();
+        Entry entry;
+        while (entries.size() < max && (entry = bucket.poll()) != null) {
+            if (!entry.removed) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private long idleDeadline(Entry entry) {
+        return entry.lastAccess + (entry.game.hasStarted() ? inProgressIdleNanos : waitingIdleNanos);
+    }
+
+    private long tick(long nanos) {
+        return Math.floorDiv(nanos, tickNanos);
+    }
+
+    private static int bucket(long tick) {
+        return (int) tick & (WHEEL_SIZE - 1);
+    }
+
+    private static final class Entry {
+        private final KalahGame game;
+        private volatile long lastAccess;
+        private volatile boolean removed;
+
+        private Entry(KalahGame game, long lastAccess) {
+            this.game = game;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -1,53 +1,145 @@
 package com.bb.kalah;
 
+import com.bb.kalah.engine.KalahTranspositionTable;
 import com.bb.kalah.exception.IllegalMoveException;
 import com.bb.kalah.exception.UnauthorizedPitAccessException;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.Setter;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * A game and its current {@link KalahGameState}. The state is replaced as a whole on every change,
+ * so readers always see a consistent board, players and result without taking a lock.
+ * Changes are either made one at a time by the caller, or installed with {@link #compareAndSet}.
+ */
 @Getter
-@AllArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 final class KalahGame {
     private final String gameId;
     private final String name;
     private final KalahGameType gameType;
 
-    private KalahPlayer player1;
-    private KalahPlayer player2;
-    private KalahPlayer currentPlayer;
-    private KalahBoard board;
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<KalahGameState> state;
 
-    private String result = "In Progress";
+    // Transposition table the computer player keeps between its moves.
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private volatile KalahTranspositionTable searchTable;
 
-    private static final int INITIAL_PITS_COUNT = 6;
-    private static final int INITIAL_STONES_COUNT = 6;
+    private static final String COMPUTER_PLAYER_NAME = "Computer";
 
     public KalahGame(String name) {
-        this(name, INITIAL_PITS_COUNT, INITIAL_STONES_COUNT);
+        this(name, KalahGameType.MULTI_PLAYER);
+    }
+
+    public KalahGame(String name, KalahGameType gameType) {
+        this(name, gameType, KalahVariant.STANDARD);
     }
 
     public KalahGame(String name, int initialPitsCount, int initialStonesCount) {
+        this(name, KalahGameType.MULTI_PLAYER, initialPitsCount, initialStonesCount);
+    }
+
+    public KalahGame(String name, KalahGameType gameType, int initialPitsCount, int initialStonesCount) {
+        this(name, gameType, KalahVariant.of(initialPitsCount, initialStonesCount, null, null));
+    }
+
+    /**
+     * In a single player game the computer takes the second seat straight away,
+     * so the game starts as soon as the first player joins.
+     * @throws IllegalArgumentException if the pits per player are out of range.
+     */
+    public KalahGame(String name, KalahGameType gameType, KalahVariant variant) {
         this.gameId = UUID.randomUUID().toString();
         this.name = name;
-        this.gameType = KalahGameType.MULTI_PLAYER;
-        this.board = new KalahBoard(initialPitsCount, initialStonesCount);
+        this.gameType = gameType;
+        KalahPlayer computer = gameType == KalahGameType.SINGLE_PLAYER ? new KalahPlayer(COMPUTER_PLAYER_NAME) : null;
+        this.state = new AtomicReference<>(
+                KalahGameState.start(new KalahBoard(variant.rules(), variant.getStonesPerPit()), computer));
+    }
+
+    /**
+     * @return a game that was kept elsewhere, with its ID and state.
+     */
+    static KalahGame restore(String gameId, String name, KalahGameType gameType, KalahGameState state) {
+        return new KalahGame(gameId, name, gameType, new AtomicReference<>(state), null);
+    }
+
+    /**
+     * @return the game as it is in the snapshot, which never changes afterwards.
+     */
+    KalahGame snapshot(KalahGameState snapshot) {
+        return new KalahGame(gameId, name, gameType, new AtomicReference<>(snapshot), null);
+    }
+
+    /**
+     * @return the game as it is now, which never changes afterwards.
+     */
+    KalahGame snapshot() {
+        return snapshot(state.get());
+    }
+
+    KalahGameState getState() {
+        return state.get();
+    }
+
+    void setState(KalahGameState next) {
+        state.set(next);
+    }
+
+    /**
+     * @return true if the state was still the expected one and has been replaced by the next.
+     */
+    boolean compareAndSet(KalahGameState expected, KalahGameState next) {
+        return state.compareAndSet(expected, next);
+    }
+
+    public KalahPlayer getPlayer1() {
+        return state.get().getPlayer1();
+    }
+
+    public KalahPlayer getPlayer2() {
+        return state.get().getPlayer2();
+    }
+
+    public KalahPlayer getCurrentPlayer() {
+        return state.get().getCurrentPlayer();
+    }
+
+    public KalahBoard getBoard() {
+        return state.get().getBoard();
+    }
+
+    public String getResult() {
+        return state.get().getResult();
+    }
+
+    /**
+     * @return moves made so far, the computer's included.
+     */
+    public int getMoveNumber() {
+        return state.get().getMoveNumber();
     }
 
     public String setPlayer1(String playerName) {
-        player1 = new KalahPlayer(playerName);
-        currentPlayer = player1;
-        return player1.getId();
+        KalahPlayer player = new KalahPlayer(playerName);
+        state.set(state.get().withPlayer1(player));
+        return player.getId();
     }
 
     public String setPlayer2(String playerName) {
-        player2 = new KalahPlayer(playerName);
-        return player2.getId();
+        KalahPlayer player = new KalahPlayer(playerName);
+        state.set(state.get().withPlayer2(player));
+        return player.getId();
     }
 
     public boolean hasStarted() {
-        return (player1 != null && player2 != null);
+        return state.get().hasStarted();
     }
 
     /**
@@ -56,28 +148,14 @@ final class KalahGame {
      * @throws IllegalMoveException           if an illegal move is made by the player.
      */
     public void makeMove(int pitNum) {
-        if (!isPitOwnedByCurrentPlayer(pitNum)) {
-            throw new UnauthorizedPitAccessException(gameId, currentPlayer.getId(), pitNum);
-        }
-
-        KalahGameMove nextMove = board.makeMove(pitNum);
-        switch (nextMove) {
-            case CAPTURE:
-            case CONTINUE:
-                changePlayer();
-                break;
-            case PLAY_AGAIN:
-                break;
-            case ILLEGAL:
-                throw new IllegalMoveException(gameId, currentPlayer.getId());
-        }
+        state.set(state.get().move(gameId, pitNum));
     }
 
     /**
      * @return true if the game has ended else false.
      */
     public boolean hasGameEnded() {
-        return (board.getPlayerOneStoneCount() == 0 || board.getPlayerTwoStoneCount() == 0);
+        return state.get().hasGameEnded();
     }
 
     /**
@@ -86,48 +164,19 @@ final class KalahGame {
      * @return result of the game. Winner or Draw.
      */
     public String endGame() {
-        board.endGame();
-        setGameResult();
-        return result;
-    }
-
-    private void setGameResult() {
-        int player1Score = board.getPlayerOneScore();
-        int player2Score = board.getPlayerTwoScore();
-        if (player1Score > player2Score) {
-            result = player1.getName() + " Wins";
-        } else if (player2Score > player1Score) {
-            result = player2.getName() + " Wins";
-        } else {
-            result = "Draw";
-        }
+        KalahGameState ended = state.get().end();
+        state.set(ended);
+        return ended.getResult();
     }
 
     /**
-     * Switches the current player in the Game.
+     * @return true if the computer player has to make the next move.
      */
-    private void changePlayer() {
-        if (isPlayer1Turn()) {
-            currentPlayer = player2;
-        } else {
-            currentPlayer = player1;
-        }
-    }
-
-    private boolean isPitOwnedByCurrentPlayer(int pitNum) {
-        if (isPlayer1Turn()) {
-            if (pitNum > board.getPitsPerPlayer()) {
-                return false;
-            }
-        } else {
-            if (pitNum < board.getPitsPerPlayer() + 1) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private boolean isPlayer1Turn() {
-        return currentPlayer == null || currentPlayer == player1;
+    boolean isComputerTurn() {
+        return isComputerTurn(state.get());
+    }
+
+    boolean isComputerTurn(KalahGameState snapshot) {
+        return gameType == KalahGameType.SINGLE_PLAYER && snapshot.isPlayerTwoToMove();
     }
 }
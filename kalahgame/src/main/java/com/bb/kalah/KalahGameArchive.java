@@ -0,0 +1,547 @@
+package com.bb.kalah;
+
+import com.bb.kalah.exception.GameNotFoundException;
+import com.bb.kalah.request.ArchivePage;
+import com.bb.kalah.request.ArchivedGame;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps finished games on the disk, with their moves, scores and result, so they can still be asked for
+ * after they left the game store. The moves of every game in progress are collected as varints while it is
+ * played, and the whole game is written when it ends, by a thread of its own.
+ * <p>
+ * Four files, all but the heads only ever appended to:
+ * <pre>
+ * games.dat    the games, each its length as int followed by the varint record, in the order they ended
+ * times.idx    end time and offset of every game, 16 bytes each, so sorted by end time
+ * ids.idx      game ID or player ID, end time, offset and the previous entry of the same bucket, 40 bytes each
+ * ids.heads    newest entry of every bucket plus one, 8 bytes each, mapped
+ * </pre>
+ * Every game has an entry for its ID and for the IDs of both players, and the entries of a bucket form a
+ * chain from the newest back to the oldest. A query by ID walks its bucket's chain, a query by time
+ * searches the times, and only the games of the page asked for are read, so nothing but the bucket heads
+ * is held in memory. A game that was in progress while the server restarted only has the moves made since.
+ */
+@Slf4j
+@Component
+@ManagedResource(objectName = "kalah:type=Archive,name=KalahGameArchive")
+public class KalahGameArchive implements KalahGameListener, Closeable {
+    static final int VERSION = 1;
+
+    private static final int TIME_ENTRY_BYTES = 16;
+    private static final int ID_ENTRY_BYTES = 40;
+    private static final long SWEEP_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final boolean enabled;
+    private final int maxPageSize;
+    private final long idleNanos;
+    private final ConcurrentHashMap<String, Moves> playing = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer;
+
+    private final LongAdder archived = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private FileChannel records;
+    private FileChannel times;
+    private FileChannel ids;
+    private FileChannel headsFile;
+    private MappedByteBuffer heads;
+    private int bucketMask;
+
+    // Changed by the writer only, and read by queries.
+    private volatile long recordsEnd;
+    private volatile long timeEntries;
+    private volatile long idEntries;
+    private long lastEndedAt;
+
+    public KalahGameArchive(KalahServiceProperties properties) {
+        KalahServiceProperties.Archive settings = properties.getArchive();
+        this.enabled = settings.isEnabled();
+        this.maxPageSize = Math.max(1, settings.getMaxPageSize());
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(properties.getStore().getInProgressIdleMillis());
+        if (!enabled) {
+            this.writer = null;
+            return;
+        }
+        try {
+            open(Paths.get(settings.getDirectory()), settings.getIdBuckets());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Archive could not be opened", e);
+        }
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kalah-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::sweep, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the games that ended so far and closes the files.
+     */
+    @PreDestroy
+    @Override
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        records.force(false);
+        times.force(false);
+        ids.force(false);
+        heads.force();
+        records.close();
+        times.close();
+        ids.close();
+        headsFile.close();
+    }
+
+    @Override
+    public void moved(String gameId, KalahGameState before, KalahGameState after, List<Integer> pits) {
+        if (!enabled) {
+            return;
+        }
+        Moves moves = playing.computeIfAbsent(gameId, id -> new Moves(before.getMoveNumber()));
+        synchronized (moves) {
+            for (int pit : pits) {
+                KalahGameCodec.writeVarint(moves.pits, pit);
+            }
+            moves.count += pits.size();
+            moves.touched = System.nanoTime();
+        }
+        if (after.hasGameEnded()) {
+            playing.remove(gameId);
+            long endedAt = System.currentTimeMillis();
+            byte[] record = encode(gameId, after, moves, endedAt);
+            try {
+                writer.execute(() -> append(gameId, after, endedAt, record));
+            } catch (RejectedExecutionException e) {
+                // Shutting down.
+                failed.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the game with the ID.
+     * @throws GameNotFoundException if no game with the ID ended since the archive was started.
+     */
+    public ArchivedGame find(String gameId) {
+        if (enabled) {
+            try {
+                long[] key = key(gameId);
+                for (long entry = head(key); entry >= 0; ) {
+                    ByteBuffer found = readIdEntry(entry);
+                    if (found.getLong(0) == key[0] && found.getLong(8) == key[1]) {
+                        ArchivedGame game = readGame(found.getLong(24));
+                        if (game.getGameId().equals(gameId)) {
+                            return game;
+                        }
+                    }
+                    entry = found.getLong(32) - 1;
+                }
+            } catch (IllegalArgumentException e) {
+                // No UUID, so no game.
+            } catch (IOException e) {
+                throw new UncheckedIOException("Archive could not be read", e);
+            }
+        }
+        throw new GameNotFoundException(gameId);
+    }
+
+    /**
+     * Finds the games that ended within the time, the most recently ended first.
+     * @param playerId ID of a player of the games, or null for the games of all players
+     * @param from earliest end time in milliseconds since the epoch, or null
+     * @param to latest end time in milliseconds since the epoch, or null
+     * @param page page to answer, from 0
+     * @param size games per page, at most the most games a page may hold
+     * @return the page of games.
+     */
+    public ArchivePage query(String playerId, Long from, Long to, int page, int size) {
+        size = Math.max(1, Math.min(size, maxPageSize));
+        page = Math.max(0, page);
+        long earliest = from == null ? Long.MIN_VALUE : from;
+        long latest = to == null ? Long.MAX_VALUE : to;
+        List<ArchivedGame> games = new ArrayList<>(size);
+        boolean more = false;
+        if (enabled) {
+            try {
+                more = playerId == null
+                        ? byTime(earliest, latest, (long) page * size, size, games)
+                        : byPlayer(playerId, earliest, latest, (long) page * size, size, games);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Archive could not be read", e);
+            }
+        }
+        return ArchivePage.builder().games(games).page(page).size(size).more(more).build();
+    }
+
+    @ManagedAttribute(description = "Games written to the archive since the start")
+    public long getArchived() {
+        return archived.sum();
+    }
+
+    @ManagedAttribute(description = "Games that could not be written to the archive")
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @ManagedAttribute(description = "Games in progress whose moves are collected")
+    public int getPlaying() {
+        return playing.size();
+    }
+
+    @ManagedAttribute(description = "Bytes of the archived games")
+    public long getArchiveBytes() {
+        return recordsEnd;
+    }
+
+    /**
+     * @return whether there are more games after the page.
+     */
+    private boolean byTime(long earliest, long latest, long skip, int size, List<ArchivedGame> games)
+            throws IOException {
+        // The newest entry that ended no later than the latest time.
+        long low = 0;
+        long high = timeEntries;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (readTimeEntry(middle).getLong(0) <= latest) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (long entry = low - 1 - skip; entry >= 0; entry--) {
+            ByteBuffer found = readTimeEntry(entry);
+            if (found.getLong(0) < earliest) {
+                return false;
+            }
+            if (games.size() == size) {
+                return true;
+            }
+            games.add(readGame(found.getLong(8)));
+        }
+        return false;
+    }
+
+    /**
+     * @return whether there are more games after the page.
+     */
+    private boolean byPlayer(String playerId, long earliest, long latest, long skip, int size,
+                             List<ArchivedGame> games) throws IOException {
+        long[] key;
+        try {
+            key = key(playerId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        for (long entry = head(key); entry >= 0; ) {
+            ByteBuffer found = readIdEntry(entry);
+            long endedAt = found.getLong(16);
+            if (endedAt < earliest) {
+                return false;
+            }
+            if (found.getLong(0) == key[0] && found.getLong(8) == key[1] && endedAt <= latest) {
+                if (skip > 0) {
+                    skip--;
+                } else if (games.size() == size) {
+                    return true;
+                } else {
+                    games.add(readGame(found.getLong(24)));
+                }
+            }
+            entry = found.getLong(32) - 1;
+        }
+        return false;
+    }
+
+    private static byte[] encode(String gameId, KalahGameState state, Moves moves, long endedAt) {
+        KalahBoard board = state.getBoard();
+        KalahGameCodec.Out out = new KalahGameCodec.Out(128);
+        out.write(VERSION);
+        KalahGameCodec.writeId(out, gameId);
+        KalahGameCodec.writeLong(out, endedAt);
+        KalahGameCodec.writeId(out, state.getPlayer1().getId());
+        KalahGameCodec.writeString(out, state.getPlayer1().getName());
+        KalahGameCodec.writeId(out, state.getPlayer2().getId());
+        KalahGameCodec.writeString(out, state.getPlayer2().getName());
+        KalahGameCodec.writeVarint(out, board.getRules().getCode());
+        KalahGameCodec.writeVarint(out, board.getStonesPerPit());
+        KalahGameCodec.writeVarint(out, board.getPlayerOneScore());
+        KalahGameCodec.writeVarint(out, board.getPlayerTwoScore());
+        KalahGameCodec.writeString(out, state.getResult());
+        synchronized (moves) {
+            KalahGameCodec.writeVarint(out, moves.firstMoveNumber);
+            KalahGameCodec.writeVarint(out, moves.count);
+            byte[] pits = moves.pits.toByteArray();
+            out.write(pits, 0, pits.length);
+        }
+        return out.toByteArray();
+    }
+
+    static ArchivedGame decode(ByteBuffer in) {
+        if (in.get() != VERSION) {
+            throw new IllegalArgumentException("Not an archived game of version " + VERSION);
+        }
+        ArchivedGame.ArchivedGameBuilder game = ArchivedGame.builder()
+                .gameId(KalahGameCodec.readId(in))
+                .endedAt(in.getLong())
+                .player1Id(KalahGameCodec.readId(in))
+                .player1Name(KalahGameCodec.readString(in))
+                .player2Id(KalahGameCodec.readId(in))
+                .player2Name(KalahGameCodec.readString(in));
+        KalahRuleSet rules = KalahRuleSet.forCode(KalahGameCodec.readVarint(in));
+        game.pitsPerPlayer(rules.getPitsPerPlayer())
+                .captures(rules.isCaptures())
+                .emptyCaptures(rules.isEmptyCaptures())
+                .stonesPerPit(KalahGameCodec.readVarint(in))
+                .playerOneScore(KalahGameCodec.readVarint(in))
+                .playerTwoScore(KalahGameCodec.readVarint(in))
+                .result(KalahGameCodec.readString(in))
+                .firstMoveNumber(KalahGameCodec.readVarint(in));
+        int[] moves = new int[KalahGameCodec.readVarint(in)];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = KalahGameCodec.readVarint(in);
+        }
+        return game.moves(moves).build();
+    }
+
+    /**
+     * Appends the game and its index entries, on the writer's thread.
+     */
+    private void append(String gameId, KalahGameState state, long endedAt, byte[] record) {
+        try {
+            long offset = recordsEnd;
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + record.length);
+            buffer.putInt(record.length).put(record).flip();
+            write(records, buffer, offset);
+            recordsEnd = offset + buffer.capacity();
+
+            // End times only ever grow, so the times stay sorted even if the clock goes back.
+            long indexedAt = Math.max(endedAt, lastEndedAt);
+            lastEndedAt = indexedAt;
+            ByteBuffer time = ByteBuffer.allocate(TIME_ENTRY_BYTES);
+            time.putLong(indexedAt).putLong(offset).flip();
+            write(times, time, timeEntries * TIME_ENTRY_BYTES);
+            timeEntries++;
+
+            index(key(gameId), indexedAt, offset);
+            index(key(state.getPlayer1().getId()), indexedAt, offset);
+            index(key(state.getPlayer2().getId()), indexedAt, offset);
+            archived.increment();
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            log.error("Game {} could not be archived", gameId, e);
+        }
+    }
+
+    private void index(long[] key, long endedAt, long offset) throws IOException {
+        int bucket = bucket(key);
+        long entry = idEntries;
+        ByteBuffer buffer = ByteBuffer.allocate(ID_ENTRY_BYTES);
+        buffer.putLong(key[0]).putLong(key[1]).putLong(endedAt).putLong(offset)
+                .putLong(heads.getLong(bucket * Long.BYTES)).flip();
+        write(ids, buffer, entry * ID_ENTRY_BYTES);
+        idEntries = entry + 1;
+        heads.putLong(bucket * Long.BYTES, entry + 1);
+    }
+
+    private void sweep() {
+        // Games evicted from the store never end, so their moves are dropped after the same idle time.
+        long now = System.nanoTime();
+        playing.values().removeIf(moves -> now - moves.touched > idleNanos);
+    }
+
+    private void open(Path directory, int idBuckets) throws IOException {
+        Files.createDirectories(directory);
+        records = channel(directory.resolve("games.dat"));
+        times = channel(directory.resolve("times.idx"));
+        ids = channel(directory.resolve("ids.idx"));
+        headsFile = channel(directory.resolve("ids.heads"));
+        int buckets = Integer.highestOneBit(Math.max(1, idBuckets - 1)) << 1;
+        if (headsFile.size() > 0) {
+            // The buckets can't change once there are entries in them.
+            buckets = (int) (headsFile.size() / Long.BYTES);
+        }
+        bucketMask = buckets - 1;
+        heads = headsFile.map(FileChannel.MapMode.READ_WRITE, 0, (long) buckets * Long.BYTES);
+        recover();
+    }
+
+    /**
+     * Drops whatever the last writes before a crash left half written: games without a time entry, time
+     * entries without their game and id entries without their game, and mends the bucket heads.
+     */
+    private void recover() throws IOException {
+        long entries = times.size() / TIME_ENTRY_BYTES;
+        long end = 0;
+        while (entries > 0) {
+            ByteBuffer last = readTimeEntry(entries - 1);
+            long offset = last.getLong(8);
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            if (offset + Integer.BYTES <= records.size()) {
+                read(records, length, offset);
+                long next = offset + Integer.BYTES + length.getInt(0);
+                if (next <= records.size()) {
+                    end = next;
+                    lastEndedAt = last.getLong(0);
+                    break;
+                }
+            }
+            entries--;
+        }
+        records.truncate(end);
+        times.truncate(entries * TIME_ENTRY_BYTES);
+        recordsEnd = end;
+        timeEntries = entries;
+
+        long idCount = ids.size() / ID_ENTRY_BYTES;
+        while (idCount > 0 && readIdEntry(idCount - 1).getLong(24) >= end) {
+            idCount--;
+        }
+        ids.truncate(idCount * ID_ENTRY_BYTES);
+        idEntries = idCount;
+
+        // Buckets whose newest entry is gone get the newest entry that is left.
+        Set<Integer> lost = new HashSet<>();
+        for (int bucket = 0; bucket <= bucketMask; bucket++) {
+            if (heads.getLong(bucket * Long.BYTES) > idCount) {
+                lost.add(bucket);
+            }
+        }
+        for (long entry = idCount - 1; entry >= 0 && !lost.isEmpty(); entry--) {
+            int bucket = bucket(readIdEntry(entry));
+            if (lost.remove(bucket)) {
+                heads.putLong(bucket * Long.BYTES, entry + 1);
+            }
+        }
+        for (int bucket : lost) {
+            heads.putLong(bucket * Long.BYTES, 0);
+        }
+        // Only the entries of the last game can be written without their head.
+        for (long entry = Math.max(0, idCount - 3); entry < idCount; entry++) {
+            ByteBuffer found = readIdEntry(entry);
+            int bucket = bucket(found);
+            if (heads.getLong(bucket * Long.BYTES) == found.getLong(32)) {
+                heads.putLong(bucket * Long.BYTES, entry + 1);
+            }
+        }
+        if (entries > 0) {
+            log.info("Opened archive with {} games, {} bytes", entries, end);
+        }
+    }
+
+    private ArchivedGame readGame(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        read(records, length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        read(records, record, offset + Integer.BYTES);
+        return decode(record);
+    }
+
+    private ByteBuffer readTimeEntry(long entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TIME_ENTRY_BYTES);
+        read(times, buffer, entry * TIME_ENTRY_BYTES);
+        return buffer;
+    }
+
+    private ByteBuffer readIdEntry(long entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ID_ENTRY_BYTES);
+        read(ids, buffer, entry * ID_ENTRY_BYTES);
+        return buffer;
+    }
+
+    /**
+     * @return the newest entry of the key's bucket, -1 if there is none.
+     */
+    private long head(long[] key) {
+        return heads.getLong(bucket(key) * Long.BYTES) - 1;
+    }
+
+    private int bucket(ByteBuffer entry) {
+        return bucket(new long[]{entry.getLong(0), entry.getLong(8)});
+    }
+
+    private int bucket(long[] key) {
+        long hash = key[0] ^ key[1];
+        hash ^= hash >>> 32;
+        hash ^= hash >>> 16;
+        return (int) hash & bucketMask;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the ID is no UUID.
+     */
+    private static long[] key(String id) {
+        UUID uuid = UUID.fromString(id);
+        return new long[]{uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()};
+    }
+
+    private static FileChannel channel(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Archive ends at " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Pits moved so far in a game in progress.
+     */
+    private static final class Moves {
+        private final int firstMoveNumber;
+        private final KalahGameCodec.Out pits = new KalahGameCodec.Out(32);
+        private int count;
+        private volatile long touched = System.nanoTime();
+
+        private Moves(int firstMoveNumber) {
+            this.firstMoveNumber = firstMoveNumber;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.bb.kalah;
+
+import com.bb.kalah.request.MoveRequest;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Compact binary form of games and moves for {@value #MEDIA_TYPE}. A game is about a hundred bytes:
+ * <pre>
+ * version  byte
+ * flags    byte    player 1 seated, player 2 seated, player two to move, ended, single player, no captures,
+ *                  no captures from an empty house
+ * gameId   16 bytes
+ * name     string
+ * player 1 16 bytes ID and string name, if seated, same for player 2
+ * pitsPerPlayer, stonesPerPit, moveNumber, pits...   varints
+ * result   string, if ended
+ * </pre>
+ * Varints are unsigned with seven bits per byte, low bits first. A string is its UTF-8 length plus one as
+ * varint followed by the bytes, and 0 for null. A move is the 16 bytes of the player ID and the pit as varint.
+ * IDs are parsed and printed by hand, as {@link UUID#fromString} and {@link UUID#toString} would take
+ * most of the time.
+ */
+final class KalahGameCodec {
+    static final String MEDIA_TYPE = "application/x-kalah";
+
+    static final int VERSION = 1;
+
+    private static final int PLAYER_ONE_SEATED = 1;
+    private static final int PLAYER_TWO_SEATED = 1 << 1;
+    private static final int PLAYER_TWO_TO_MOVE = 1 << 2;
+    private static final int ENDED = 1 << 3;
+    private static final int SINGLE_PLAYER = 1 << 4;
+    private static final int NO_CAPTURES = 1 << 5;
+    private static final int NO_EMPTY_CAPTURES = 1 << 6;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private KalahGameCodec() {
+    }
+
+    static byte[] encode(KalahGame game) {
+        KalahGameState state = game.getState();
+        KalahBoard board = state.getBoard();
+        boolean ended = !KalahGameState.IN_PROGRESS.equals(state.getResult());
+        Out out = new Out(128);
+        out.write(VERSION);
+        out.write((state.getPlayer1() != null ? PLAYER_ONE_SEATED : 0)
+                | (state.getPlayer2() != null ? PLAYER_TWO_SEATED : 0)
+                | (state.isPlayerTwoToMove() ? PLAYER_TWO_TO_MOVE : 0)
+                | (ended ? ENDED : 0)
+                | (game.getGameType() == KalahGameType.SINGLE_PLAYER ? SINGLE_PLAYER : 0)
+                | (board.isCaptures() ? 0 : NO_CAPTURES)
+                | (board.isEmptyCaptures() ? 0 : NO_EMPTY_CAPTURES));
+        writeId(out, game.getGameId());
+        writeString(out, game.getName());
+        writePlayer(out, state.getPlayer1());
+        writePlayer(out, state.getPlayer2());
+        writeVarint(out, board.getPitsPerPlayer());
+        writeVarint(out, board.getStonesPerPit());
+        writeVarint(out, state.getMoveNumber());
+        for (int stones : board.getPits()) {
+            writeVarint(out, stones);
+        }
+        if (ended) {
+            writeString(out, state.getResult());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are no game of this version.
+     */
+    static KalahGame decodeGame(ByteBuffer in) {
+        try {
+            if (in.get() != VERSION) {
+                throw new IllegalArgumentException("Not a game of version " + VERSION);
+            }
+            int flags = in.get();
+            String gameId = readId(in);
+            String name = readString(in);
+            KalahPlayer player1 = (flags & PLAYER_ONE_SEATED) == 0 ? null : readPlayer(in);
+            KalahPlayer player2 = (flags & PLAYER_TWO_SEATED) == 0 ? null : readPlayer(in);
+            KalahRuleSet rules = KalahRuleSet.of(readVarint(in), (flags & NO_CAPTURES) == 0,
+                    (flags & NO_EMPTY_CAPTURES) == 0);
+            int stonesPerPit = readVarint(in);
+            int moveNumber = readVarint(in);
+            int[] pits = new int[2 * rules.getPitsPerPlayer() + 2];
+            for (int i = 0; i < pits.length; i++) {
+                pits[i] = readVarint(in);
+            }
+            String result = (flags & ENDED) == 0 ? KalahGameState.IN_PROGRESS : readString(in);
+            KalahGameState state = new KalahGameState(player1, player2, (flags & PLAYER_TWO_TO_MOVE) != 0,
+                    new KalahBoard(rules, stonesPerPit, pits), result, moveNumber);
+            KalahGameType gameType = (flags & SINGLE_PLAYER) != 0
+                    ? KalahGameType.SINGLE_PLAYER
+                    : KalahGameType.MULTI_PLAYER;
+            return KalahGame.restore(gameId, name, gameType, state);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Game is cut short", e);
+        }
+    }
+
+    static byte[] encode(MoveRequest move) {
+        Out out = new Out(20);
+        writeId(out, move.getPlayerId());
+        writeVarint(out, move.getPitIndex());
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are no move.
+     */
+    static MoveRequest decodeMove(ByteBuffer in) {
+        try {
+            MoveRequest move = new MoveRequest();
+            move.setPlayerId(readId(in));
+            move.setPitIndex(readVarint(in));
+            return move;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Move is cut short", e);
+        }
+    }
+
+    private static void writePlayer(Out out, KalahPlayer player) {
+        if (player != null) {
+            writeId(out, player.getId());
+            writeString(out, player.getName());
+        }
+    }
+
+    private static KalahPlayer readPlayer(ByteBuffer in) {
+        String id = readId(in);
+        return new KalahPlayer(readString(in), id);
+    }
+
+    static void writeId(Out out, String id) {
+        if (id.length() != 36) {
+            UUID uuid = UUID.fromString(id);
+            writeLong(out, uuid.getMostSignificantBits());
+            writeLong(out, uuid.getLeastSignificantBits());
+            return;
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 36; i++) {
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (id.charAt(i) != '-') {
+                    throw new IllegalArgumentException("Not a UUID: " + id);
+                }
+                continue;
+            }
+            int digit = Character.digit(id.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a UUID: " + id);
+            }
+            if (i < 18) {
+                high = high << 4 | digit;
+            } else {
+                low = low << 4 | digit;
+            }
+        }
+        writeLong(out, high);
+        writeLong(out, low);
+    }
+
+    static String readId(ByteBuffer in) {
+        long high = in.getLong();
+        long low = in.getLong();
+        char[] id = new char[36];
+        hex(high >>> 32, id, 0, 8);
+        id[8] = '-';
+        hex(high >>> 16, id, 9, 4);
+        id[13] = '-';
+        hex(high, id, 14, 4);
+        id[18] = '-';
+        hex(low >>> 48, id, 19, 4);
+        id[23] = '-';
+        hex(low, id, 24, 12);
+        return new String(id);
+    }
+
+    /**
+     * Prints the lowest digits of the value as hex into the characters from the offset.
+     */
+    private static void hex(long value, char[] to, int offset, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            to[i] = HEX[(int) value & 0xF];
+            value >>>= 4;
+        }
+    }
+
+    static void writeLong(Out out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    static void writeString(Out out, String value) {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = readVarint(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarint(Out out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is longer than 5 bytes");
+    }
+
+    /**
+     * Growing byte array, without the locking of a stream.
+     */
+    static final class Out {
+        private byte[] bytes;
+        private int size;
+
+        Out(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void write(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size << 1);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] from, int offset, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size << 1, size + length));
+            }
+            System.arraycopy(from, offset, bytes, size, length);
+            size += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
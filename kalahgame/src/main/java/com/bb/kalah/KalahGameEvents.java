@@ -0,0 +1,215 @@
+package com.bb.kalah;
+
+import com.bb.kalah.event.GameEndedEvent;
+import com.bb.kalah.event.GameJoinedEvent;
+import com.bb.kalah.event.GameMovedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Pushes the changes of games to the clients subscribed to them as server-sent events. A subscription
+ * starts with the whole game, followed by a small event for every change: "joined", "moved" with only the
+ * pits that changed, and "ended", after which the subscription is completed. Every event carries the
+ * values after the change rather than differences, so an event that was already part of the whole game a
+ * subscription started with can be applied again without harm.
+ * <p>
+ * Games nobody subscribed to cost a map lookup per change. Otherwise the change is only queued, and the
+ * events are built and sent by a few threads, the events of a game always by the same thread in order.
+ * When a thread falls too far behind, the subscriptions of the game whose event doesn't fit are completed
+ * instead of blocking the move, and their clients subscribe again. A subscription waiting for events holds
+ * no thread.
+ */
+@Slf4j
+@Component
+@ManagedResource(objectName = "kalah:type=Events,name=KalahGameEvents")
+public class KalahGameEvents implements KalahGameListener {
+    private final ConcurrentHashMap<String, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService[] dispatchers;
+    private final long timeoutMillis;
+
+    private final LongAdder dropped = new LongAdder();
+
+    public KalahGameEvents(KalahServiceProperties properties) {
+        KalahServiceProperties.Events settings = properties.getEvents();
+        this.timeoutMillis = settings.getTimeoutMillis();
+        this.dispatchers = new ExecutorService[Math.max(1, settings.getDispatchers())];
+        for (int i = 0; i < dispatchers.length; i++) {
+            String name = "kalah-events-" + i;
+            dispatchers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(settings.getQueueSize()), runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService dispatcher : dispatchers) {
+            dispatcher.shutdownNow();
+        }
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        subscribers.clear();
+    }
+
+    /**
+     * Subscribes to the changes of the game. The subscription is made on the game's thread, before the game
+     * is read, so no change after the game that was sent can be missed.
+     * @param gameId ID of the game
+     * @param game reads the game, and throws if it doesn't exist any more
+     * @return the emitter the events are sent through
+     */
+    public SseEmitter subscribe(String gameId, Supplier<KalahGame> game) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        emitter.onCompletion(() -> unsubscribe(gameId, emitter));
+        emitter.onTimeout(() -> unsubscribe(gameId, emitter));
+        boolean queued = dispatch(gameId, () -> {
+            subscribers.computeIfAbsent(gameId, id -> ConcurrentHashMap.newKeySet()).add(emitter);
+            try {
+                emitter.send(SseEmitter.event().name("game").data(game.get()));
+            } catch (IOException | RuntimeException e) {
+                unsubscribe(gameId, emitter);
+                emitter.completeWithError(e);
+            }
+        });
+        if (!queued) {
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    @Override
+    public void joined(String gameId, KalahGameState state, KalahPlayer player) {
+        if (!subscribers.containsKey(gameId)) {
+            return;
+        }
+        publish(gameId, () -> send(gameId, "joined", GameJoinedEvent.builder()
+                .seat(state.getPlayer1() == player ? 1 : 2)
+                .playerId(player.getId())
+                .playerName(player.getName())
+                .started(state.hasStarted())
+                .build()));
+    }
+
+    @Override
+    public void moved(String gameId, KalahGameState before, KalahGameState after, List<Integer> pits) {
+        if (!subscribers.containsKey(gameId)) {
+            return;
+        }
+        int[] moves = pits.stream().mapToInt(Integer::intValue).toArray();
+        publish(gameId, () -> {
+            send(gameId, "moved", GameMovedEvent.builder()
+                    .moves(moves)
+                    .moveNumber(after.getMoveNumber())
+                    .changed(changed(before.getBoard().getPits(), after.getBoard().getPits()))
+                    .currentPlayerId(after.getCurrentPlayer().getId())
+                    .build());
+            if (after.hasGameEnded()) {
+                send(gameId, "ended", GameEndedEvent.builder()
+                        .result(after.getResult())
+                        .playerOneScore(after.getBoard().getPlayerOneScore())
+                        .playerTwoScore(after.getBoard().getPlayerTwoScore())
+                        .build());
+                Set<SseEmitter> emitters = subscribers.remove(gameId);
+                if (emitters != null) {
+                    emitters.forEach(SseEmitter::complete);
+                }
+            }
+        });
+    }
+
+    @ManagedAttribute(description = "Games with at least one subscription")
+    public int getSubscribedGames() {
+        return subscribers.size();
+    }
+
+    @ManagedAttribute(description = "Events not sent because their thread fell too far behind")
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the pits that differ, as pairs of the pit index and its stones after the change.
+     */
+    static int[] changed(int[] before, int[] after) {
+        int count = 0;
+        for (int i = 0; i < after.length; i++) {
+            if (before[i] != after[i]) {
+                count++;
+            }
+        }
+        int[] changed = new int[count << 1];
+        for (int i = 0, j = 0; i < after.length; i++) {
+            if (before[i] != after[i]) {
+                changed[j++] = i;
+                changed[j++] = after[i];
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Queues the event, or completes the game's subscriptions if its thread is too far behind.
+     */
+    private void publish(String gameId, Runnable event) {
+        if (!dispatch(gameId, event)) {
+            dropped.increment();
+            Set<SseEmitter> emitters = subscribers.remove(gameId);
+            if (emitters != null) {
+                emitters.forEach(SseEmitter::complete);
+            }
+        }
+    }
+
+    private boolean dispatch(String gameId, Runnable task) {
+        int hash = gameId.hashCode();
+        hash ^= hash >>> 16;
+        try {
+            dispatchers[(hash & Integer.MAX_VALUE) % dispatchers.length].execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void send(String gameId, String name, Object event) {
+        Set<SseEmitter> emitters = subscribers.get(gameId);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(event));
+            } catch (IOException | RuntimeException e) {
+                // The client went away.
+                log.debug("Event {} for game {} could not be sent", name, gameId, e);
+                unsubscribe(gameId, emitter);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private void unsubscribe(String gameId, SseEmitter emitter) {
+        subscribers.computeIfPresent(gameId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package com.bb.kalah;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hears about the changes {@link KalahService} makes to games. It is called right after the change is made,
+ * still under the game's lock if changes are locked, so it sees the changes of a game in order. It must
+ * only hand the change on and return, as the next change to the game waits for it.
+ */
+interface KalahGameListener {
+    KalahGameListener NONE = new KalahGameListener() {
+    };
+
+    /**
+     * @return a listener that hands every change to all the listeners, in order.
+     */
+    static KalahGameListener of(List<? extends KalahGameListener> listeners) {
+        if (listeners.isEmpty()) {
+            return NONE;
+        }
+        if (listeners.size() == 1) {
+            return listeners.get(0);
+        }
+        KalahGameListener[] all = new ArrayList<>(listeners).toArray(new KalahGameListener[0]);
+        return new KalahGameListener() {
+            @Override
+            public void joined(String gameId, KalahGameState state, KalahPlayer player) {
+                for (KalahGameListener listener : all) {
+                    listener.joined(gameId, state, player);
+                }
+            }
+
+            @Override
+            public void moved(String gameId, KalahGameState before, KalahGameState after, List<Integer> pits) {
+                for (KalahGameListener listener : all) {
+                    listener.moved(gameId, before, after, pits);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param state the state with the player seated.
+     */
+    default void joined(String gameId, KalahGameState state, KalahPlayer player) {
+    }
+
+    /**
+     * @param before the state before the moves.
+     * @param after  the state after the moves, ended if the moves ended the game.
+     * @param pits   the pits moved, one after the other. In a single player game the player's move and the
+     *               computer's moves after it are two changes. The list may change afterwards.
+     */
+    default void moved(String gameId, KalahGameState before, KalahGameState after, List<Integer> pits) {
+    }
+}
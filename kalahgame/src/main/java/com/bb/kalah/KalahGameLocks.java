@@ -0,0 +1,60 @@
+package com.bb.kalah;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks that serialize the requests for the same game without a global lock.
+ * A game always maps to the same stripe, so two requests for one game never run at the same time,
+ * while requests for games on different stripes run fully in parallel.
+ */
+final class KalahGameLocks {
+    static final int DEFAULT_STRIPES = 1024;
+
+    private final Lock[] stripes;
+
+    KalahGameLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of locks, rounded up to a power of two.
+     */
+    KalahGameLocks(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param gameId ID of the game
+     * @return the lock that has to be held while reading or changing the game.
+     */
+    Lock lockFor(String gameId) {
+        int hash = gameId.hashCode();
+        // Spread the high bits, as only the low ones pick the stripe.
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    /**
+     * Takes every lock, always in the same order, so nothing changes in any game until {@link #unlockAll()}.
+     */
+    void lockAll() {
+        for (Lock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    int size() {
+        return stripes.length;
+    }
+}
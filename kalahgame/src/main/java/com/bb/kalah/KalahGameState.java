@@ -0,0 +1,145 @@
+package com.bb.kalah;
+
+import com.bb.kalah.exception.GameFullException;
+import com.bb.kalah.exception.IllegalMoveException;
+import com.bb.kalah.exception.UnauthorizedPitAccessException;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Immutable snapshot of everything that changes during a game: the players, the board, whose turn it is
+ * and the result. Every change returns a new snapshot and leaves this one as it was, and the board
+ * of a snapshot is never changed once the snapshot is built, so a snapshot can be read by any thread
+ * without locking and is always consistent.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+final class KalahGameState {
+    static final String IN_PROGRESS = "In Progress";
+
+    private final KalahPlayer player1;
+    private final KalahPlayer player2;
+
+    @Getter(AccessLevel.NONE)
+    private final boolean playerTwoToMove;
+
+    private final KalahBoard board;
+    private final String result;
+
+    /**
+     * Moves made so far, the computer's included. Only ever grows, so clients can tell whether they have
+     * seen the latest move.
+     */
+    private final int moveNumber;
+
+    /**
+     * @param player2 the second player, if the seat is taken from the start, or null.
+     */
+    static KalahGameState start(KalahBoard board, KalahPlayer player2) {
+        return new KalahGameState(null, player2, false, board, IN_PROGRESS, 0);
+    }
+
+    /**
+     * @return the state with the player in the first free seat.
+     * @throws GameFullException if both seats are taken
+     */
+    KalahGameState seat(String gameId, KalahPlayer player) {
+        if (player1 == null) {
+            return withPlayer1(player);
+        }
+        if (player2 == null) {
+            return withPlayer2(player);
+        }
+        throw new GameFullException(gameId);
+    }
+
+    /**
+     * The first player always moves first.
+     */
+    KalahGameState withPlayer1(KalahPlayer player) {
+        return new KalahGameState(player, player2, false, board, result, moveNumber);
+    }
+
+    KalahGameState withPlayer2(KalahPlayer player) {
+        return new KalahGameState(player1, player, playerTwoToMove, board, result, moveNumber);
+    }
+
+    /**
+     * @return the player to move, null until the first player joins.
+     */
+    KalahPlayer getCurrentPlayer() {
+        return playerTwoToMove ? player2 : player1;
+    }
+
+    boolean isPlayerTwoToMove() {
+        return playerTwoToMove;
+    }
+
+    boolean hasStarted() {
+        return player1 != null && player2 != null;
+    }
+
+    /**
+     * @return true if either player has no stones left in their houses.
+     */
+    boolean hasGameEnded() {
+        return board.getPlayerOneStoneCount() == 0 || board.getPlayerTwoStoneCount() == 0;
+    }
+
+    /**
+     * Makes the move on a copy of the board, also under the game's lock, as the readers of the game and the
+     * snapshots read the current state without the lock. See {@code KalahBoardBench} for what the copy costs.
+     * @param pitNum index of the pit to pick stones
+     * @return the state after the move of the current player.
+     * @throws UnauthorizedPitAccessException If the current player doesn't own the pitNum.
+     * @throws IllegalMoveException           if an illegal move is made by the player.
+     */
+    KalahGameState move(String gameId, int pitNum) {
+        if (!isPitOwnedByCurrentPlayer(pitNum)) {
+            throw new UnauthorizedPitAccessException(gameId, getCurrentPlayer().getId(), pitNum);
+        }
+
+        KalahBoard next = new KalahBoard(board);
+        switch (next.makeMove(pitNum)) {
+            case CAPTURE:
+            case CONTINUE:
+                return new KalahGameState(player1, player2, !playerTwoToMove, next, result, moveNumber + 1);
+            case PLAY_AGAIN:
+                return new KalahGameState(player1, player2, playerTwoToMove, next, result, moveNumber + 1);
+            default:
+                throw new IllegalMoveException(gameId, getCurrentPlayer().getId());
+        }
+    }
+
+    /**
+     * @return the state with all the stones collected into the stores and the result. Winner or Draw.
+     */
+    KalahGameState end() {
+        KalahBoard next = new KalahBoard(board);
+        next.endGame();
+        return new KalahGameState(player1, player2, playerTwoToMove, next, result(player1, player2, next),
+                moveNumber);
+    }
+
+    /**
+     * @return the result of a game that ended with the board. Winner or Draw.
+     */
+    static String result(KalahPlayer player1, KalahPlayer player2, KalahBoard finalBoard) {
+        int player1Score = finalBoard.getPlayerOneScore();
+        int player2Score = finalBoard.getPlayerTwoScore();
+        if (player1Score > player2Score) {
+            return player1.getName() + " Wins";
+        } else if (player2Score > player1Score) {
+            return player2.getName() + " Wins";
+        }
+        return "Draw";
+    }
+
+    private boolean isPitOwnedByCurrentPlayer(int pitNum) {
+        if (!playerTwoToMove) {
+            return pitNum <= board.getPitsPerPlayer();
+        }
+        return pitNum >= board.getPitsPerPlayer() + 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.bb.kalah;
+
+import java.util.function.Consumer;
+
+/**
+ * Keeps the games in progress by their ID. Implementations are thread safe.
+ */
+interface KalahGameStore {
+
+    void put(KalahGame game);
+
+    /**
+     * Counts as a request for the game, so it is not idle any more.
+     *
+     * @return the game, or null if it doesn't exist or has been evicted.
+     */
+    KalahGame get(String gameId);
+
+    void remove(String gameId);
+
+    /**
+     * Replaces the state of a game taken from this store, if it is still the expected one.
+     *
+     * @return false if the state has changed since, or the game is no longer in the store.
+     */
+    default boolean replace(KalahGame game, KalahGameState expected, KalahGameState next) {
+        return game.compareAndSet(expected, next);
+    }
+
+    /**
+     * Keeps the computer's transposition table set on a game taken from this store, for the next time the game
+     * is taken. Stores that keep the game objects keep the table with them.
+     */
+    default void keepSearchTable(KalahGame game) {
+    }
+
+    /**
+     * Hands every game in the store to the action, in no particular order. Games added or removed
+     * meanwhile may or may not be seen.
+     */
+    void forEach(Consumer<KalahGame> action);
+
+    /**
+     * @return number of games in the store.
+     */
+    int size();
+
+    /**
+     * @return games evicted since the start, always 0 for stores that don't evict.
+     */
+    default long getEvictedIdleWaiting() {
+        return 0L;
+    }
+
+    default long getEvictedIdleInProgress() {
+        return 0L;
+    }
+
+    default long getEvictedForSize() {
+        return 0L;
+    }
+
+    /**
+     * @return games evicted for size that had started, part of {@link #getEvictedForSize}.
+     */
+    default long getEvictedForSizeInProgress() {
+        return 0L;
+    }
+
+    /**
+     * @return bytes of direct memory taken by the store, always 0 for stores on the heap.
+     */
+    default long getOffHeapBytes() {
+        return 0L;
+    }
+
+    /**
+     * Stops any background work of the store.
+     */
+    default void close() {
+    }
+}
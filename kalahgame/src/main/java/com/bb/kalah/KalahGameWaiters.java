@@ -0,0 +1,137 @@
+package com.bb.kalah;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Requests waiting for the next change of a game. A request is held without a thread until the game
+ * changes, and then answered with the game right after the change, or with the game as it was last seen
+ * when the wait times out. Clients poll once per move instead of asking again and again.
+ */
+@Component
+@ManagedResource(objectName = "kalah:type=Waiters,name=KalahGameWaiters")
+public class KalahGameWaiters implements KalahGameListener {
+    private final ConcurrentHashMap<String, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    public KalahGameWaiters(KalahServiceProperties properties) {
+        this.timeoutMillis = properties.getEvents().getAwaitTimeoutMillis();
+    }
+
+    /**
+     * Waits until the game has more moves than the client has seen, or changes in any other way. The game is
+     * read only once, so a game that ends and is dropped while the client waits is still answered.
+     * @param gameId ID of the game
+     * @param afterMove move number the client has seen
+     * @param game reads the game, and throws if it doesn't exist any more
+     * @return the result the game is set on
+     */
+    public DeferredResult<KalahGame> await(String gameId, int afterMove, Supplier<KalahGame> game) {
+        Waiter waiter = new Waiter(timeoutMillis);
+        waiter.onTimeout(() -> {
+            unregister(gameId, waiter);
+            waiter.timedOut();
+        });
+        waiter.onCompletion(() -> unregister(gameId, waiter));
+        // Registered before the game is read, so a change in between is not missed.
+        waiters.computeIfAbsent(gameId, id -> ConcurrentHashMap.newKeySet()).add(waiter);
+        KalahGame current;
+        try {
+            current = game.get();
+        } catch (RuntimeException e) {
+            unregister(gameId, waiter);
+            throw e;
+        }
+        if (!waiter.seen(current) && (current.getMoveNumber() > afterMove || current.hasGameEnded())) {
+            unregister(gameId, waiter);
+            waiter.setResult(current);
+        }
+        return waiter;
+    }
+
+    @Override
+    public void joined(String gameId, KalahGameState state, KalahPlayer player) {
+        wake(gameId, state);
+    }
+
+    @Override
+    public void moved(String gameId, KalahGameState before, KalahGameState after, List<Integer> pits) {
+        wake(gameId, after);
+    }
+
+    @ManagedAttribute(description = "Requests waiting for the next change of a game")
+    public int getWaiting() {
+        return waiters.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private void wake(String gameId, KalahGameState state) {
+        Set<Waiter> woken = waiters.remove(gameId);
+        if (woken == null) {
+            return;
+        }
+        for (Waiter waiter : woken) {
+            waiter.woken(state);
+        }
+    }
+
+    private void unregister(String gameId, Waiter waiter) {
+        waiters.computeIfPresent(gameId, (id, set) -> {
+            set.remove(waiter);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static final class Waiter extends DeferredResult<KalahGame> {
+        // The game as it was read, which answers a timeout and gives the ID and name to the states of changes.
+        private KalahGame game;
+        // A change that came before the game was read.
+        private KalahGameState early;
+
+        private Waiter(long timeoutMillis) {
+            super(timeoutMillis);
+        }
+
+        /**
+         * @return true if a change already answered the waiter.
+         */
+        private boolean seen(KalahGame game) {
+            KalahGameState state;
+            synchronized (this) {
+                this.game = game;
+                state = early;
+            }
+            if (state == null) {
+                return false;
+            }
+            setResult(game.snapshot(state));
+            return true;
+        }
+
+        private void woken(KalahGameState state) {
+            KalahGame seen;
+            synchronized (this) {
+                seen = game;
+                if (seen == null) {
+                    early = state;
+                    return;
+                }
+            }
+            setResult(seen.snapshot(state));
+        }
+
+        private void timedOut() {
+            KalahGame seen;
+            synchronized (this) {
+                seen = game;
+            }
+            setResult(seen);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.bb.kalah;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts values into buckets with fixed upper bounds, for metrics. Recording finds the bucket with a binary
+ * search and adds to counters made up front, so it never allocates and never blocks.
+ */
+final class KalahHistogram {
+    private final long[] bounds;
+    // One more than the bounds, for the values above the highest bound.
+    private final LongAdder[] counts;
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param bounds the inclusive upper bounds of the buckets, ascending
+     */
+    KalahHistogram(long[] bounds) {
+        this.bounds = bounds.clone();
+        this.counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return a histogram whose bounds start at the first bound and double up to the bucket count.
+     */
+    static KalahHistogram doubling(long first, int buckets) {
+        long[] bounds = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            bounds[i] = first << i;
+        }
+        return new KalahHistogram(bounds);
+    }
+
+    void record(long value) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bounds[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        counts[low].increment();
+        sum.add(value);
+    }
+
+    long[] getBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * @return the count of every bucket, the last one for the values above the highest bound. Values recorded
+     * meanwhile may or may not be counted.
+     */
+    long[] getCounts() {
+        long[] snapshot = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+        return snapshot;
+    }
+
+    long getCount() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the upper bound of the bucket the percentile falls into, the highest bound if it is above, and 0
+     * if nothing was recorded.
+     */
+    long percentile(double percentile) {
+        long[] snapshot = getCounts();
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return bounds[i];
+            }
+        }
+        return bounds[bounds.length - 1];
+    }
+}
@@ -0,0 +1,581 @@
+package com.bb.kalah;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of the changes to the games, so they can be rebuilt after a restart.
+ * <p>
+ * A change is appended to the batch in memory and its caller then waits until the batch is on the disk,
+ * or is called back by the writer once it is.
+ * A single writer thread writes each batch, everything appended while the last batch was forced to the disk,
+ * with one write and one fsync, so the cost of the fsync is shared by all the changes in the batch.
+ * <p>
+ * The journal is split into numbered segments, {@code journal-<n>.log}. A segment is a sequence of batches,
+ * each an int length and the CRC32 of its records, then the records. A record is its type, the game ID as
+ * two longs and what changed: a move is just the pit, 18 bytes in all. A batch that was only partly written
+ * when the process died fails its check and is skipped, it was never acknowledged.
+ * <p>
+ * After {@code snapshotRecords} changes all games are written to a {@link KalahSnapshot},
+ * {@code snapshot-<n>.bin}, which holds everything in the segments before segment n, and those segments are
+ * deleted. On start the newest snapshot is mapped, and the segments after it are replayed through
+ * {@link KalahGameState#move}, which moves with {@link KalahBoard#makeMove}. Only the games the replayed
+ * segments change are read from the snapshot, the others stay there until they are asked for.
+ */
+@Slf4j
+final class KalahJournal implements Closeable {
+    private static final byte CREATED = 1;
+    private static final byte SEATED = 2;
+    private static final byte MOVED = 3;
+
+    private static final int BATCH_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 17;
+    private static final int INITIAL_BATCH_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long snapshotRecords;
+    private final boolean fsync;
+    private final Runnable snapshotDue;
+
+    // Guarded by this.
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BATCH_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BATCH_BYTES);
+    private long appended;
+    private long durable;
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;
+    private long recordsSinceSnapshot;
+    private boolean snapshotRequested;
+    private final Queue<Waiter> waiters = new ArrayDeque<>();
+
+    // Only used by the writer, or while it waits for appends.
+    private FileChannel channel;
+    private long segment;
+
+    private Thread writer;
+
+    /**
+     * @param snapshotDue called when a snapshot should be taken, it must not block.
+     */
+    KalahJournal(KalahServiceProperties.Journal settings, Runnable snapshotDue) {
+        this.directory = Paths.get(settings.getDirectory());
+        this.segmentBytes = settings.getSegmentBytes();
+        this.snapshotRecords = settings.getSnapshotRecords();
+        this.fsync = settings.isFsync();
+        this.snapshotDue = snapshotDue;
+    }
+
+    /**
+     * Maps the newest snapshot and replays the segments after it, then starts a new segment.
+     *
+     * @param restored gets every game the replayed segments changed and that has not ended.
+     * @return the snapshot with the games the segments didn't change, or null if there is none.
+     */
+    KalahSnapshot open(Consumer<KalahGame> restored) throws IOException {
+        Files.createDirectories(directory);
+        KalahSnapshot snapshot = null;
+        long from = 0;
+        List<Long> snapshots = numbers("snapshot-", ".bin");
+        Collections.reverse(snapshots);
+        for (long number : snapshots) {
+            try {
+                snapshot = KalahSnapshot.open(file("snapshot-", number, ".bin"));
+                from = number;
+                break;
+            } catch (IOException e) {
+                log.warn("Skipping snapshot {}: {}", number, e.getMessage());
+            }
+        }
+        Map<String, KalahGame> games = new LinkedHashMap<>();
+        long last = from - 1;
+        long replayed = 0;
+        for (long number : numbers("journal-", ".log")) {
+            if (number >= from) {
+                replayed += replay(file("journal-", number, ".log"), games, snapshot);
+                last = number;
+            }
+        }
+        log.info("Restored {} games from snapshot {} and {} journal records, {} more are read when asked for",
+                games.size(), from, replayed, snapshot == null ? 0 : snapshot.remaining());
+        games.values().forEach(restored);
+
+        openSegment(last + 1);
+        writer = new Thread(this::writeBatches, "kalah-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        return snapshot;
+    }
+
+    /**
+     * Records a new game, with the players seated from the start.
+     *
+     * @return position to {@link #await} before the game is handed out.
+     */
+    long created(KalahGame game) {
+        KalahGameState state = game.getState();
+        KalahBoard board = state.getBoard();
+        byte[] name = bytes(game.getName());
+        synchronized (this) {
+            ByteBuffer buffer = record(CREATED, game.getGameId(), 8 + length(name));
+            buffer.put((byte) game.getGameType().ordinal());
+            buffer.put((byte) board.getRules().getCode());
+            buffer.putShort((short) board.getStonesPerPit());
+            putBytes(buffer, name);
+            if (state.getPlayer1() != null) {
+                seated(game.getGameId(), 1, state.getPlayer1());
+            }
+            if (state.getPlayer2() != null) {
+                seated(game.getGameId(), 2, state.getPlayer2());
+            }
+            return appended;
+        }
+    }
+
+    /**
+     * @param seat 1 or 2
+     */
+    synchronized long seated(String gameId, int seat, KalahPlayer player) {
+        byte[] name = bytes(player.getName());
+        UUID id = UUID.fromString(player.getId());
+        ByteBuffer buffer = record(SEATED, gameId, 21 + length(name));
+        buffer.put((byte) seat);
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        putBytes(buffer, name);
+        return appended;
+    }
+
+    /**
+     * @param pits the pits moved, one after the other.
+     */
+    synchronized long moved(String gameId, List<Integer> pits) {
+        for (int pit : pits) {
+            record(MOVED, gameId, 1).put((byte) pit);
+        }
+        return appended;
+    }
+
+    /**
+     * Waits until everything up to the position is on the disk.
+     *
+     * @throws UncheckedIOException if the journal can't be written.
+     */
+    synchronized void await(long position) {
+        boolean interrupted = false;
+        while (durable < position && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (durable < position) {
+            throw new UncheckedIOException("Journal could not be written", failure);
+        }
+    }
+
+    /**
+     * Like {@link #await}, without blocking. The future is completed by the writer thread, so whatever
+     * depends on it must be quick or move on to another thread.
+     *
+     * @return a future completed once everything up to the position is on the disk, or with an
+     * {@link UncheckedIOException} if the journal can't be written.
+     */
+    synchronized CompletableFuture<Void> durable(long position) {
+        if (durable >= position) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (failure != null) {
+            future.completeExceptionally(new UncheckedIOException("Journal could not be written", failure));
+        } else {
+            waiters.add(new Waiter(position, future));
+        }
+        return future;
+    }
+
+    /**
+     * Writes what is pending and goes on in a new segment. Nothing may be appended meanwhile.
+     *
+     * @return number of the new segment, which a snapshot of the games as they are now can take.
+     */
+    synchronized long roll() throws IOException {
+        boolean interrupted = false;
+        while ((flushing || pending.position() > 0) && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        openSegment(segment + 1);
+        recordsSinceSnapshot = 0;
+        snapshotRequested = false;
+        return segment;
+    }
+
+    /**
+     * Writes the snapshot that replaces all segments before the given one, then deletes them.
+     * A snapshot that is still mapped may outlive its file.
+     *
+     * @param games     the games in the store.
+     * @param base      the snapshot the games that were never asked for are still in, or null.
+     * @param baseTaken the games of the base that were in the store when the games were collected.
+     */
+    void writeSnapshot(long number, List<KalahGame> games, KalahSnapshot base, long[] baseTaken) throws IOException {
+        Path target = file("snapshot-", number, ".bin");
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        KalahSnapshot.write(temporary, games, base, baseTaken);
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (long old : numbers("journal-", ".log")) {
+            if (old < number) {
+                Files.deleteIfExists(file("journal-", old, ".log"));
+            }
+        }
+        for (long old : numbers("snapshot-", ".bin")) {
+            if (old < number) {
+                try {
+                    Files.deleteIfExists(file("snapshot-", old, ".bin"));
+                } catch (IOException e) {
+                    // Some systems keep files that are mapped, the next snapshot deletes it.
+                    log.debug("Snapshot {} not deleted yet: {}", old, e.getMessage());
+                }
+            }
+        }
+        log.info("Wrote snapshot {} with {} games from the store", number, games.size());
+    }
+
+    /**
+     * Writes what is pending and stops the writer.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void writeBatches() {
+        while (true) {
+            ByteBuffer batch;
+            long end;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only close stops the writer.
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                end = appended;
+                flushing = true;
+            }
+
+            try {
+                write(batch);
+            } catch (IOException e) {
+                log.error("Journal could not be written, changes are no longer accepted", e);
+                List<Waiter> failed;
+                synchronized (this) {
+                    failure = e;
+                    flushing = false;
+                    notifyAll();
+                    failed = new ArrayList<>(waiters);
+                    waiters.clear();
+                }
+                UncheckedIOException error = new UncheckedIOException("Journal could not be written", e);
+                failed.forEach(waiter -> waiter.future.completeExceptionally(error));
+                return;
+            }
+
+            boolean due;
+            List<Waiter> done = null;
+            synchronized (this) {
+                batch.clear();
+                durable = end;
+                flushing = false;
+                due = !snapshotRequested && recordsSinceSnapshot >= snapshotRecords;
+                snapshotRequested |= due;
+                notifyAll();
+                // Waiters come in about the order of their positions, but not exactly.
+                for (int i = waiters.size(); i > 0; i--) {
+                    Waiter waiter = waiters.remove();
+                    if (waiter.position <= durable) {
+                        if (done == null) {
+                            done = new ArrayList<>();
+                        }
+                        done.add(waiter);
+                    } else {
+                        waiters.add(waiter);
+                    }
+                }
+            }
+            if (done != null) {
+                done.forEach(waiter -> waiter.future.complete(null));
+            }
+            if (due) {
+                snapshotDue.run();
+            }
+        }
+    }
+
+    private void write(ByteBuffer batch) throws IOException {
+        batch.flip();
+        CRC32 crc = new CRC32();
+        crc.update(batch.array(), 0, batch.limit());
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_BYTES);
+        header.putInt(batch.limit()).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] buffers = {header, batch};
+        while (batch.hasRemaining()) {
+            channel.write(buffers);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        if (channel.position() >= segmentBytes) {
+            openSegment(segment + 1);
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(file("journal-", number, ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        segment = number;
+    }
+
+    /**
+     * @return the buffer to write the rest of the record to, which has room for it.
+     */
+    private ByteBuffer record(byte type, String gameId, int bytes) {
+        if (pending.remaining() < RECORD_HEADER_BYTES + bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+                    pending.position() + RECORD_HEADER_BYTES + bytes));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        UUID id = UUID.fromString(gameId);
+        pending.put(type);
+        pending.putLong(id.getMostSignificantBits());
+        pending.putLong(id.getLeastSignificantBits());
+        appended += RECORD_HEADER_BYTES + bytes;
+        recordsSinceSnapshot++;
+        notifyAll();
+        return pending;
+    }
+
+    /**
+     * @return records replayed from the segment.
+     */
+    private long replay(Path file, Map<String, KalahGame> games, KalahSnapshot snapshot) throws IOException {
+        long records = 0;
+        long remaining = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (remaining >= BATCH_HEADER_BYTES) {
+                int length = in.readInt();
+                int crc = in.readInt();
+                remaining -= BATCH_HEADER_BYTES;
+                if (length < 0 || length > remaining) {
+                    log.warn("Skipping the rest of {}, its last batch was not written completely", file.getFileName());
+                    break;
+                }
+                byte[] batch = new byte[length];
+                in.readFully(batch);
+                remaining -= length;
+                CRC32 check = new CRC32();
+                check.update(batch);
+                if ((int) check.getValue() != crc) {
+                    log.warn("Skipping the rest of {}, a batch does not match its checksum", file.getFileName());
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                boolean readable = true;
+                try {
+                    while (buffer.hasRemaining() && (readable = apply(buffer, games, snapshot))) {
+                        records++;
+                    }
+                } catch (BufferUnderflowException e) {
+                    readable = false;
+                }
+                if (!readable) {
+                    // Where the next record starts is unknown, so nothing after it can be trusted.
+                    log.warn("Skipping the rest of {}, a batch holds a record that can't be read", file.getFileName());
+                    break;
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return false if the record is of a type the journal doesn't write, so the batch is corrupt.
+     * @throws BufferUnderflowException if the batch ends within the record.
+     */
+    private static boolean apply(ByteBuffer buffer, Map<String, KalahGame> games, KalahSnapshot snapshot) {
+        byte type = buffer.get();
+        if (type != CREATED && type != SEATED && type != MOVED) {
+            return false;
+        }
+        String gameId = new UUID(buffer.getLong(), buffer.getLong()).toString();
+        if (type == CREATED) {
+            KalahGameType gameType = KalahGameType.values()[buffer.get()];
+            KalahRuleSet rules = KalahRuleSet.forCode(buffer.get() & 0xFF);
+            int stones = buffer.getShort();
+            String name = getString(buffer);
+            games.put(gameId, KalahGame.restore(gameId, name, gameType,
+                    KalahGameState.start(new KalahBoard(rules, stones), null)));
+            return true;
+        }
+
+        KalahGame game = games.get(gameId);
+        if (game == null && snapshot != null) {
+            game = snapshot.take(gameId);
+            if (game != null) {
+                games.put(gameId, game);
+            }
+        }
+        KalahGameState state = game == null ? null : game.getState();
+        try {
+            if (type == SEATED) {
+                int seat = buffer.get();
+                String playerId = new UUID(buffer.getLong(), buffer.getLong()).toString();
+                KalahPlayer player = new KalahPlayer(getString(buffer), playerId);
+                if (state != null) {
+                    game.setState(seat == 1 ? state.withPlayer1(player) : state.withPlayer2(player));
+                }
+            } else {
+                int pit = buffer.get();
+                if (state != null) {
+                    KalahGameState next = state.move(gameId, pit);
+                    if (next.hasGameEnded()) {
+                        games.remove(gameId);
+                    } else {
+                        game.setState(next);
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            log.warn("Dropping game {}, its journal does not replay: {}", gameId, e.getMessage());
+            games.remove(gameId);
+        }
+        return true;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private List<Long> numbers(String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .forEach(name -> {
+                        try {
+                            numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                        } catch (NumberFormatException e) {
+                            log.warn("Ignoring {} in the journal directory", name);
+                        }
+                    });
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path file(String prefix, long number, String suffix) {
+        return directory.resolve(String.format("%s%019d%s", prefix, number, suffix));
+    }
+
+    private static final class Waiter {
+        private final long position;
+        private final CompletableFuture<Void> future;
+
+        private Waiter(long position, CompletableFuture<Void> future) {
+            this.position = position;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.bb.kalah;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every game until it is removed.
+ */
+final class KalahMapGameStore implements KalahGameStore {
+    private final Map<String, KalahGame> games = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(KalahGame game) {
+        games.put(game.getGameId(), game);
+    }
+
+    @Override
+    public KalahGame get(String gameId) {
+        return games.get(gameId);
+    }
+
+    @Override
+    public void remove(String gameId) {
+        games.remove(gameId);
+    }
+
+    @Override
+    public void forEach(Consumer<KalahGame> action) {
+        games.values().forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return games.size();
+    }
+}
@@ -0,0 +1,194 @@
+package com.bb.kalah;
+
+import com.bb.kalah.exception.UnsupportedVariantException;
+import com.bb.kalah.request.CreateGameResponse;
+import lombok.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pairs players who want a game with anyone into new games, so nobody has to hand a game ID around.
+ * Players are kept apart by the variant they asked for and by rating band, ratings beyond the configured
+ * range counting as its lowest or highest, so there are only ever a few bands. Every band holds at most
+ * one waiting player in a single slot: a player finding the slot empty takes it and waits, a player finding
+ * it taken empties it and is paired with the one who waited. Both are compare-and-sets, so enqueueing never takes a lock and bands
+ * don't contend with each other. The game is then made with {@link KalahService#createGameAsync} and
+ * {@link KalahService#assignPlayerAsync}, the waiting player in the first seat, and both requests are
+ * answered once it is in the journal.
+ * <p>
+ * A waiting request holds no thread. It is answered without a game after the timeout, so no player waits
+ * longer than that for an opponent, and the client asks again.
+ */
+@Component
+@ManagedResource(objectName = "kalah:type=Matchmaking,name=KalahMatchmaker")
+public class KalahMatchmaker {
+    private static final int UNRATED = Integer.MIN_VALUE;
+
+    private final ConcurrentHashMap<Band, AtomicReference<Ticket>> bands = new ConcurrentHashMap<>();
+    private final KalahService kalahService;
+    private final long timeoutMillis;
+    private final int ratingBand;
+    private final int minRating;
+    private final int maxRating;
+
+    private final LongAdder pairs = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder pairingNanos = new LongAdder();
+    private final AtomicLong maxPairingNanos = new AtomicLong();
+
+    public KalahMatchmaker(KalahService kalahService, KalahServiceProperties properties) {
+        this.kalahService = kalahService;
+        this.timeoutMillis = properties.getMatchmaking().getTimeoutMillis();
+        this.ratingBand = properties.getMatchmaking().getRatingBand();
+        this.minRating = properties.getMatchmaking().getMinRating();
+        this.maxRating = Math.max(minRating, properties.getMatchmaking().getMaxRating());
+    }
+
+    /**
+     * Waits for an opponent of the same rating band, for a game of standard Kalah.
+     * @param playerName name of the player
+     * @param rating rating of the player, or null
+     * @return the result the new game's ID and the player's ID are set on, or no content after the timeout.
+     */
+    public DeferredResult<ResponseEntity<CreateGameResponse>> enqueue(String playerName, Integer rating) {
+        return enqueue(playerName, rating, KalahVariant.STANDARD);
+    }
+
+    /**
+     * Waits for an opponent of the same rating band who asked for the same variant.
+     * @param playerName name of the player
+     * @param rating rating of the player, or null
+     * @param variant board and rules of the game
+     * @return the result the new game's ID and the player's ID are set on, or no content after the timeout.
+     * @throws UnsupportedVariantException if games can't be played with the variant
+     */
+    public DeferredResult<ResponseEntity<CreateGameResponse>> enqueue(String playerName, Integer rating,
+                                                                      KalahVariant variant) {
+        kalahService.checkVariant(KalahGameType.MULTI_PLAYER, variant);
+        AtomicReference<Ticket> slot = bands.computeIfAbsent(new Band(variant, band(rating)),
+                band -> new AtomicReference<>());
+        Ticket ticket = new Ticket(playerName, variant, timeoutMillis);
+        while (true) {
+            Ticket waiting = slot.get();
+            if (waiting == null) {
+                if (slot.compareAndSet(null, ticket)) {
+                    ticket.onTimeout(() -> expire(slot, ticket));
+                    return ticket;
+                }
+            } else if (slot.compareAndSet(waiting, null) && waiting.claim()) {
+                ticket.claim();
+                pair(waiting, ticket);
+                return ticket;
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "Players waiting for an opponent")
+    public int getWaitingPlayers() {
+        int waiting = 0;
+        for (AtomicReference<Ticket> slot : bands.values()) {
+            if (slot.get() != null) {
+                waiting++;
+            }
+        }
+        return waiting;
+    }
+
+    @ManagedAttribute(description = "Pairs of players put into a game")
+    public long getPairs() {
+        return pairs.sum();
+    }
+
+    @ManagedAttribute(description = "Players answered without a game because nobody came within the timeout")
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    @ManagedAttribute(description = "Mean time the first player of a pair waited for the second, in milliseconds")
+    public double getMeanPairingMillis() {
+        long count = pairs.sum();
+        return count == 0 ? 0 : pairingNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedAttribute(description = "Longest time the first player of a pair waited for the second, in milliseconds")
+    public double getMaxPairingMillis() {
+        return maxPairingNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private int band(Integer rating) {
+        if (rating == null) {
+            return UNRATED;
+        }
+        return ratingBand <= 0 ? 0 : Math.floorDiv(Math.min(Math.max(rating, minRating), maxRating), ratingBand);
+    }
+
+    private void pair(Ticket first, Ticket second) {
+        long waited = System.nanoTime() - first.enqueued;
+        pairs.increment();
+        pairingNanos.add(waited);
+        maxPairingNanos.accumulateAndGet(waited, Math::max);
+
+        String name = first.playerName + " vs " + second.playerName;
+        kalahService.createGameAsync(name, KalahGameType.MULTI_PLAYER, first.variant)
+                .thenCompose(gameId -> seat(gameId, first)
+                        .thenCompose(ignored -> seat(gameId, second)))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        first.setErrorResult(cause);
+                        second.setErrorResult(cause);
+                    }
+                });
+    }
+
+    private CompletableFuture<Void> seat(String gameId, Ticket ticket) {
+        return kalahService.assignPlayerAsync(gameId, ticket.playerName)
+                .thenAccept(playerId -> ticket.setResult(ResponseEntity.ok(
+                        CreateGameResponse.builder().gameId(gameId).playerId(playerId).build())));
+    }
+
+    private void expire(AtomicReference<Ticket> slot, Ticket ticket) {
+        // Paired just now, the game is on its way.
+        if (ticket.claim()) {
+            slot.compareAndSet(ticket, null);
+            timedOut.increment();
+            ticket.setResult(ResponseEntity.noContent().build());
+        }
+    }
+
+    @Value
+    private static class Band {
+        KalahVariant variant;
+        int rating;
+    }
+
+    private static final class Ticket extends DeferredResult<ResponseEntity<CreateGameResponse>> {
+        private final String playerName;
+        private final KalahVariant variant;
+        private final long enqueued = System.nanoTime();
+        // Taken by whoever gets to answer a waiting ticket, the player paired with it or the timeout.
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Ticket(String playerName, KalahVariant variant, long timeoutMillis) {
+            super(timeoutMillis);
+            this.playerName = playerName;
+            this.variant = variant;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.bb.kalah;
+
+import com.bb.kalah.request.CreateGameResponse;
+import com.bb.kalah.request.MatchRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Endpoint for players who want a game with anyone. The request is held, without a thread, until an
+ * opponent comes, and answered with the new game's ID and the player's ID as if the player had created or
+ * joined it, or with no content if nobody came in time.
+ */
+@RestController
+@RequestMapping("/api/v1/game")
+public class KalahMatchmakingController {
+    private KalahMatchmaker kalahMatchmaker;
+
+    public KalahMatchmakingController(KalahMatchmaker kalahMatchmaker) {
+        this.kalahMatchmaker = kalahMatchmaker;
+    }
+
+    @RequestMapping(value = "/match", method = RequestMethod.POST)
+    public DeferredResult<ResponseEntity<CreateGameResponse>> match(@RequestBody MatchRequest matchRequest) {
+        return kalahMatchmaker.enqueue(matchRequest.getPlayerName(), matchRequest.getRating(),
+                KalahVariant.of(matchRequest.getPitsPerPlayer(), matchRequest.getStonesPerPit(),
+                        matchRequest.getCaptures(), matchRequest.getEmptyCaptures()));
+    }
+}
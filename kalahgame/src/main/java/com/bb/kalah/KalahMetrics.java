@@ -0,0 +1,240 @@
+package com.bb.kalah;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of the service: how long creating games, joining them and moving take, how moves turn out and how
+ * many stones they sow, which errors requests get and how many games wait for a player or are played.
+ * Everything is counted into {@link LongAdder}s and {@link KalahHistogram}s made up front, so recording on
+ * the request threads never allocates or blocks. They are read over JMX, and by {@link #scrape} in the text
+ * format Prometheus scrapes.
+ */
+@Component
+@ManagedResource(objectName = "kalah:type=Metrics,name=KalahMetrics")
+public class KalahMetrics {
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Stones a move picks up, one bucket for each up to 16, then coarser.
+     */
+    private static final long[] SOWN_BOUNDS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+            20, 24, 32, 48, 64, 96, 128};
+
+    enum Operation {
+        CREATE_GAME, ASSIGN_PLAYER, MAKE_MOVE
+    }
+
+    // From a microsecond up to about 17 seconds, in nanoseconds.
+    private final KalahHistogram[] latencies = new KalahHistogram[Operation.values().length];
+    private final LongAdder[] moves = new LongAdder[KalahGameMove.values().length];
+    private final KalahHistogram sown = new KalahHistogram(SOWN_BOUNDS);
+    private final ConcurrentHashMap<Class<?>, LongAdder> errors = new ConcurrentHashMap<>();
+
+    // Games that were added and have not started, and started games that have not ended, evictions not counted.
+    private final LongAdder waiting = new LongAdder();
+    private final LongAdder inProgress = new LongAdder();
+    private volatile LongSupplier waitingGames = waiting::sum;
+    private volatile LongSupplier inProgressGames = inProgress::sum;
+
+    public KalahMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = KalahHistogram.doubling(TimeUnit.MICROSECONDS.toNanos(1), 25);
+        }
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the time since the start of the operation.
+     */
+    void timed(Operation operation, long startNanos) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records how the move that led to the board turned out and the stones it sowed.
+     */
+    void moved(KalahBoard after) {
+        sown.record(after.getLastSown());
+        moves[after.getLastMove().ordinal()].increment();
+    }
+
+    void illegalMove() {
+        moves[KalahGameMove.ILLEGAL.ordinal()].increment();
+    }
+
+    /**
+     * Counts an error a request was answered with, by the type of the exception.
+     */
+    public void error(Exception ex) {
+        errors.computeIfAbsent(ex.getClass(), type -> new LongAdder()).increment();
+    }
+
+    void gameAdded(KalahGameState state) {
+        (state.hasStarted() ? inProgress : waiting).increment();
+    }
+
+    void gameStarted() {
+        waiting.decrement();
+        inProgress.increment();
+    }
+
+    void gameEnded() {
+        inProgress.decrement();
+    }
+
+    /**
+     * Lets the owner of the games tell how many are waiting and in progress, taking off the ones it evicted.
+     */
+    void gauges(LongSupplier waitingGames, LongSupplier inProgressGames) {
+        this.waitingGames = waitingGames;
+        this.inProgressGames = inProgressGames;
+    }
+
+    long getAddedWaiting() {
+        return waiting.sum();
+    }
+
+    long getAddedInProgress() {
+        return inProgress.sum();
+    }
+
+    @ManagedAttribute(description = "Games waiting for a player")
+    public long getWaitingGames() {
+        return waitingGames.getAsLong();
+    }
+
+    @ManagedAttribute(description = "Games started and not ended")
+    public long getInProgressGames() {
+        return inProgressGames.getAsLong();
+    }
+
+    @ManagedAttribute(description = "Moves made, by how they turned out")
+    public Map<String, Long> getMoves() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (KalahGameMove move : KalahGameMove.values()) {
+            counts.put(move.name(), moves[move.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @ManagedAttribute(description = "Errors requests were answered with, by exception")
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new TreeMap<>();
+        errors.forEach((type, count) -> counts.merge(type.getSimpleName(), count.sum(), Long::sum));
+        return counts;
+    }
+
+    @ManagedAttribute(description = "Mean stones sown by a move")
+    public double getMeanStonesSown() {
+        long count = sown.getCount();
+        return count == 0 ? 0 : sown.getSum() / (double) count;
+    }
+
+    @ManagedAttribute(description = "Calls made, by operation")
+    public Map<String, Long> getCalls() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Operation operation : Operation.values()) {
+            counts.put(name(operation), latencies[operation.ordinal()].getCount());
+        }
+        return counts;
+    }
+
+    @ManagedAttribute(description = "Median time of a call in microseconds, by operation, as the bucket's upper bound")
+    public Map<String, Long> getMedianMicros() {
+        return percentileMicros(50);
+    }
+
+    @ManagedAttribute(description = "99th percentile time of a call in microseconds, by operation, as the bucket's upper bound")
+    public Map<String, Long> getP99Micros() {
+        return percentileMicros(99);
+    }
+
+    /**
+     * @return all metrics in the Prometheus text format.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        type(out, "kalah_operation_seconds", "histogram", "Time to answer a call, journal included");
+        for (Operation operation : Operation.values()) {
+            histogram(out, "kalah_operation_seconds", "operation=\"" + name(operation) + "\"",
+                    latencies[operation.ordinal()], 1e-9);
+        }
+        type(out, "kalah_moves_total", "counter", "Moves made, the computer's included, by how they turned out");
+        for (KalahGameMove move : KalahGameMove.values()) {
+            sample(out, "kalah_moves_total", "outcome=\"" + move.name().toLowerCase() + "\"",
+                    moves[move.ordinal()].sum());
+        }
+        type(out, "kalah_stones_sown", "histogram", "Stones picked up and sown by a move");
+        histogram(out, "kalah_stones_sown", "", sown, 1);
+        type(out, "kalah_errors_total", "counter", "Errors requests were answered with, by exception");
+        getErrors().forEach((type, count) -> sample(out, "kalah_errors_total", "exception=\"" + type + "\"", count));
+        type(out, "kalah_games", "gauge", "Games in the store, by state");
+        sample(out, "kalah_games", "state=\"waiting\"", getWaitingGames());
+        sample(out, "kalah_games", "state=\"in_progress\"", getInProgressGames());
+        return out.toString();
+    }
+
+    private Map<String, Long> percentileMicros(double percentile) {
+        Map<String, Long> micros = new TreeMap<>();
+        for (Operation operation : Operation.values()) {
+            micros.put(name(operation),
+                    TimeUnit.NANOSECONDS.toMicros(latencies[operation.ordinal()].percentile(percentile)));
+        }
+        return micros;
+    }
+
+    private static String name(Operation operation) {
+        return operation.name().toLowerCase();
+    }
+
+    private static void type(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Writes the buckets cumulative, as Prometheus has them, with the bounds and the sum in the unit.
+     */
+    private static void histogram(StringBuilder out, String name, String labels, KalahHistogram histogram,
+                                  double unit) {
+        long[] bounds = histogram.getBounds();
+        long[] counts = histogram.getCounts();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            sample(out, name + "_bucket", prefix + "le=\"" + bound(bounds[i] * unit) + "\"", cumulative);
+        }
+        cumulative += counts[bounds.length];
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+        out.append(name).append("_sum");
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(bound(histogram.getSum() * unit)).append('\n');
+        sample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String bound(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+}
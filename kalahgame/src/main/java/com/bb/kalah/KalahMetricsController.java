@@ -0,0 +1,23 @@
+package com.bb.kalah;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Endpoint Prometheus scrapes the metrics from. The same metrics are read over JMX.
+ */
+@RestController
+@RequestMapping("/api/v1/metrics")
+public class KalahMetricsController {
+    private KalahMetrics kalahMetrics;
+
+    public KalahMetricsController(KalahMetrics kalahMetrics) {
+        this.kalahMetrics = kalahMetrics;
+    }
+
+    @RequestMapping(value = "", method = RequestMethod.GET, produces = KalahMetrics.CONTENT_TYPE)
+    public String scrape() {
+        return kalahMetrics.scrape();
+    }
+}
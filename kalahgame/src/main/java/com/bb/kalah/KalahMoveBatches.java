@@ -0,0 +1,152 @@
+package com.bb.kalah;
+
+import com.bb.kalah.exception.BatchTooLargeException;
+import com.bb.kalah.exception.ExceptionHandlingController;
+import com.bb.kalah.exception.ExceptionResponse;
+import com.bb.kalah.exception.GameNotFoundException;
+import com.bb.kalah.exception.MalformedMoveException;
+import com.bb.kalah.request.BatchMoveResponse;
+import com.bb.kalah.request.GameMoveRequest;
+import com.bb.kalah.request.GameMoveResult;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes many moves sent in one request, so bots don't pay a round-trip per move. The moves of a game are
+ * made one after the other in the order they were sent, and different games are played at the same time.
+ * Every move goes through {@link KalahService#makeMove} and gets the answer it would have got on its own,
+ * so one bad move fails only itself and the moves after it in the same game are still tried. A move without
+ * a game or a player is answered as a bad request without being tried.
+ */
+@Component
+public class KalahMoveBatches {
+    private final KalahService kalahService;
+    private final ExceptionHandlingController exceptions;
+    private final ExecutorService executor;
+    private final int maxMoves;
+
+    public KalahMoveBatches(KalahService kalahService, ExceptionHandlingController exceptions,
+                            KalahServiceProperties properties) {
+        this.kalahService = kalahService;
+        this.exceptions = exceptions;
+        this.maxMoves = properties.getBatch().getMaxMoves();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getBatch().getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "kalah-batch-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @param moves the moves, in the order they are made within each game
+     * @return the result of every move in the order of the moves, and the games after their moves.
+     * @throws BatchTooLargeException if there are more moves than allowed in one batch
+     */
+    public BatchMoveResponse<KalahGame> makeMoves(List<GameMoveRequest> moves) {
+        try {
+            return makeMovesAsync(moves).join();
+        } catch (CompletionException e) {
+            // Only errors that are no game exception get here, and fail the whole batch.
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Like {@link #makeMoves}, without waiting for the moves to be made.
+     * @throws BatchTooLargeException if there are more moves than allowed in one batch
+     * @throws MalformedMoveException if there are no moves at all
+     */
+    public CompletableFuture<BatchMoveResponse<KalahGame>> makeMovesAsync(List<GameMoveRequest> moves) {
+        if (moves == null) {
+            throw new MalformedMoveException("no moves");
+        }
+        if (moves.size() > maxMoves) {
+            throw new BatchTooLargeException(moves.size(), maxMoves);
+        }
+        GameMoveResult[] results = new GameMoveResult[moves.size()];
+        Map<String, List<Integer>> byGame = new LinkedHashMap<>();
+        for (int i = 0; i < moves.size(); i++) {
+            GameMoveRequest move = moves.get(i);
+            if (move == null) {
+                results[i] = failed(GameMoveResult.builder(), new MalformedMoveException("no move"));
+            } else if (move.getGameId() == null) {
+                results[i] = failed(GameMoveResult.builder().pitIndex(move.getPitIndex()),
+                        new MalformedMoveException("no game"));
+            } else if (move.getPlayerId() == null) {
+                results[i] = failed(GameMoveResult.builder().gameId(move.getGameId()).pitIndex(move.getPitIndex()),
+                        new MalformedMoveException("no player"));
+            } else {
+                byGame.computeIfAbsent(move.getGameId(), gameId -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Map<String, KalahGame> games = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] played = byGame.entrySet().stream()
+                .map(game -> CompletableFuture.runAsync(
+                        () -> play(game.getKey(), game.getValue(), moves, results, games), executor))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(played).thenApply(ignored -> {
+            Map<String, KalahGame> ordered = new LinkedHashMap<>();
+            for (String gameId : byGame.keySet()) {
+                KalahGame game = games.get(gameId);
+                if (game != null) {
+                    ordered.put(gameId, game);
+                }
+            }
+            return BatchMoveResponse.<KalahGame>builder().results(Arrays.asList(results)).games(ordered).build();
+        });
+    }
+
+    private void play(String gameId, List<Integer> indices, List<GameMoveRequest> moves,
+                      GameMoveResult[] results, Map<String, KalahGame> games) {
+        KalahGame last = null;
+        for (int index : indices) {
+            GameMoveRequest move = moves.get(index);
+            GameMoveResult.GameMoveResultBuilder result = GameMoveResult.builder()
+                    .gameId(gameId)
+                    .pitIndex(move.getPitIndex());
+            try {
+                last = kalahService.makeMove(gameId, move.getPlayerId(), move.getPitIndex());
+                results[index] = result.status(HttpStatus.OK.value()).moveNumber(last.getMoveNumber()).build();
+            } catch (RuntimeException e) {
+                results[index] = failed(result, e);
+            }
+        }
+        if (last == null) {
+            try {
+                last = kalahService.getGame(gameId).snapshot();
+            } catch (GameNotFoundException e) {
+                return;
+            }
+        }
+        games.put(gameId, last);
+    }
+
+    private GameMoveResult failed(GameMoveResult.GameMoveResultBuilder result, RuntimeException e) {
+        ResponseEntity<ExceptionResponse> response = exceptions.handle(e);
+        return result.status(response.getStatusCodeValue())
+                .errorCode(response.getBody().getErrorCode())
+                .errorMessage(response.getBody().getErrorMessage())
+                .build();
+    }
+}
@@ -0,0 +1,81 @@
+package com.bb.kalah;
+
+import com.bb.kalah.request.BatchMoveRequest;
+import com.bb.kalah.request.BatchMoveResponse;
+import com.bb.kalah.request.CreateGameRequest;
+import com.bb.kalah.request.CreateGameResponse;
+import com.bb.kalah.request.MoveRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The game endpoints of {@link KalahController}, with the same requests, answers and errors, that hand
+ * the request back to the container instead of holding its thread. A change is answered by the journal's
+ * writer once it is on the disk, and the computer's moves are searched on threads of their own, so request
+ * threads only ever parse requests and make changes in memory.
+ */
+@RestController
+@ConditionalOnProperty(prefix = "kalah.service", name = "non-blocking", havingValue = "true")
+@RequestMapping("/api/v1/game")
+public class KalahNonBlockingController {
+    private KalahService kalahService;
+    private KalahMoveBatches kalahMoveBatches;
+    private ExecutorService search;
+
+    public KalahNonBlockingController(KalahService kalahService, KalahMoveBatches kalahMoveBatches) {
+        this.kalahService = kalahService;
+        this.kalahMoveBatches = kalahMoveBatches;
+        AtomicInteger threads = new AtomicInteger();
+        this.search = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "kalah-move-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        search.shutdown();
+    }
+
+    @RequestMapping(value = "", method = RequestMethod.POST)
+    public CompletableFuture<CreateGameResponse> createGame(@RequestBody CreateGameRequest createGameRequest) {
+        return kalahService.createGameAsync(createGameRequest.getGameName(), createGameRequest.getGameType(),
+                KalahVariant.of(createGameRequest.getPitsPerPlayer(), createGameRequest.getStonesPerPit(),
+                        createGameRequest.getCaptures(), createGameRequest.getEmptyCaptures()))
+                .thenCompose(gameId -> kalahService.assignPlayerAsync(gameId, createGameRequest.getPlayerName())
+                        .thenApply(playerId -> CreateGameResponse.builder().gameId(gameId).playerId(playerId).build()));
+    }
+
+    @RequestMapping(value = "/join/{gameId}", method = RequestMethod.POST)
+    public CompletableFuture<String> joinGame(@PathVariable("gameId") String gameId, @RequestBody String playerName) {
+        return kalahService.assignPlayerAsync(gameId, playerName);
+    }
+
+    @RequestMapping(value = "/move/{gameId}", method = RequestMethod.POST)
+    public CompletableFuture<KalahGame> makeMove(@PathVariable("gameId") String gameId,
+                                                 @RequestBody MoveRequest moveRequest) {
+        if (kalahService.getGame(gameId).getGameType() == KalahGameType.SINGLE_PLAYER) {
+            return CompletableFuture.supplyAsync(() -> kalahService.makeMoveAsync(gameId,
+                    moveRequest.getPlayerId(), moveRequest.getPitIndex()), search)
+                    .thenCompose(move -> move);
+        }
+        return kalahService.makeMoveAsync(gameId, moveRequest.getPlayerId(), moveRequest.getPitIndex());
+    }
+
+    @RequestMapping(value = "/moves", method = RequestMethod.POST)
+    public CompletableFuture<BatchMoveResponse<KalahGame>> makeMoves(@RequestBody BatchMoveRequest batchMoveRequest) {
+        return kalahMoveBatches.makeMovesAsync(batchMoveRequest.getMoves());
+    }
+
+    @RequestMapping(value = "/{gameId}", method = RequestMethod.GET)
+    public KalahGame getGame(@PathVariable("gameId") String gameId) {
+        return kalahService.getGame(gameId).snapshot();
+    }
+}
@@ -0,0 +1,479 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahTranspositionTable;
+import com.bb.kalah.exception.StoreFullException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Game store that packs every game into a fixed size slot of direct memory, so millions of games cost the
+ * garbage collector next to nothing. {@link #get} turns the slot into a {@link KalahGame} that only lives
+ * for the request, and {@link #replace} writes the next state back into the slot.
+ * <p>
+ * A slot holds the game ID and the player IDs as two longs each, the flags, one byte per pit, the move number
+ * and the names.
+ * Names of up to {@value #NAME_INLINE_BYTES} bytes are kept in the slot, longer ones on the heap.
+ * The store is split into segments by the hash of the game ID, each with its own lock, slots and
+ * {@link KalahSlotIndex}. Games whose board doesn't fit into a slot, or whose ID is no UUID, are kept
+ * on the heap instead. So are the transposition tables of the computer's games, by slot.
+ */
+final class KalahOffHeapGameStore implements KalahGameStore {
+    private static final int SEGMENT_BITS = 6;
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_SHIFT;
+
+    private static final int ID_HIGH = 0;
+    private static final int ID_LOW = 8;
+    private static final int PLAYER1_HIGH = 16;
+    private static final int PLAYER2_HIGH = 32;
+    private static final int FLAGS = 48;
+    private static final int PITS_PER_PLAYER = 49;
+    private static final int STONES_PER_PIT = 50;
+    private static final int PITS = 51;
+
+    private static final int PLAYER_ONE_SEATED = 1;
+    private static final int PLAYER_TWO_SEATED = 1 << 1;
+    private static final int PLAYER_TWO_TO_MOVE = 1 << 2;
+    private static final int ENDED = 1 << 3;
+    private static final int SINGLE_PLAYER = 1 << 4;
+
+    private static final int GAME_NAME = 0;
+    private static final int PLAYER1_NAME = 1;
+    private static final int PLAYER2_NAME = 2;
+    private static final int NAME_BYTES = 24;
+    private static final int NAME_INLINE_BYTES = NAME_BYTES - 1;
+    private static final byte NO_NAME = (byte) 0xFE;
+    private static final byte LONG_NAME = (byte) 0xFF;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+    private final ConcurrentMap<Long, String> longNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, KalahTranspositionTable> searchTables = new ConcurrentHashMap<>();
+    private final KalahMapGameStore oversized = new KalahMapGameStore();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int maxGames;
+    private final int slotPitsPerPlayer;
+    private final int moveNumberOffset;
+    private final int namesOffset;
+    private final int slotBytes;
+
+    KalahOffHeapGameStore(KalahServiceProperties.Store settings) {
+        this.maxGames = settings.getMaxGames();
+        this.slotPitsPerPlayer = Math.min(settings.getSlotPitsPerPlayer(), KalahBoard.MAX_PITS_PER_PLAYER);
+        this.moveNumberOffset = PITS + 2 * slotPitsPerPlayer + 2;
+        this.namesOffset = moveNumberOffset + 4;
+        // Rounded up to 8 bytes, so the longs of every slot are aligned.
+        this.slotBytes = (namesOffset + 3 * NAME_BYTES + 7) & ~7;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(i);
+        }
+    }
+
+    @Override
+    public void put(KalahGame game) {
+        UUID id = parse(game.getGameId());
+        if (id == null || !fits(game.getState().getBoard())) {
+            oversized.put(game);
+            return;
+        }
+        Segment segment = segmentFor(id);
+        segment.lock.writeLock().lock();
+        try {
+            int slot = segment.index.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot == KalahSlotIndex.ABSENT) {
+                slot = allocate(segment);
+                segment.index.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), slot);
+            }
+            write(segment, slot, id, game);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public KalahGame get(String gameId) {
+        UUID id = parse(gameId);
+        if (id == null) {
+            return oversized.get(gameId);
+        }
+        Segment segment = segmentFor(id);
+        segment.lock.readLock().lock();
+        try {
+            int slot = segment.index.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot != KalahSlotIndex.ABSENT) {
+                return read(segment, slot);
+            }
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+        return oversized.get(gameId);
+    }
+
+    @Override
+    public void remove(String gameId) {
+        UUID id = parse(gameId);
+        if (id != null) {
+            Segment segment = segmentFor(id);
+            segment.lock.writeLock().lock();
+            try {
+                int slot = segment.index.remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+                if (slot != KalahSlotIndex.ABSENT) {
+                    for (int name = GAME_NAME; name <= PLAYER2_NAME; name++) {
+                        longNames.remove(nameKey(segment, slot, name));
+                    }
+                    searchTables.remove(slotKey(segment, slot));
+                    segment.release(slot);
+                    size.decrementAndGet();
+                    return;
+                }
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+        oversized.remove(gameId);
+    }
+
+    /**
+     * The state in the slot is the expected one if the same players are seated, the same player is to move
+     * and the pits hold the same stones. The names can't have changed without the player IDs changing.
+     */
+    @Override
+    public boolean replace(KalahGame game, KalahGameState expected, KalahGameState next) {
+        UUID id = parse(game.getGameId());
+        if (id != null) {
+            Segment segment = segmentFor(id);
+            segment.lock.writeLock().lock();
+            try {
+                int slot = segment.index.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+                if (slot != KalahSlotIndex.ABSENT) {
+                    if (!matches(segment, slot, game.getGameType(), expected)) {
+                        return false;
+                    }
+                    writeState(segment, slot, game.getGameType(), next);
+                    game.setState(next);
+                    return true;
+                }
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+        return oversized.get(game.getGameId()) != null && game.compareAndSet(expected, next);
+    }
+
+    @Override
+    public void keepSearchTable(KalahGame game) {
+        UUID id = parse(game.getGameId());
+        if (id == null || game.getSearchTable() == null) {
+            return;
+        }
+        Segment segment = segmentFor(id);
+        segment.lock.writeLock().lock();
+        try {
+            int slot = segment.index.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot != KalahSlotIndex.ABSENT) {
+                searchTables.put(slotKey(segment, slot), game.getSearchTable());
+            }
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<KalahGame> action) {
+        for (Segment segment : segments) {
+            List<KalahGame> games = new ArrayList<>(segment.index.size());
+            segment.lock.readLock().lock();
+            try {
+                segment.index.forEach(slot -> games.add(read(segment, slot)));
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+            games.forEach(action);
+        }
+        oversized.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return size.get() + oversized.size();
+    }
+
+    /**
+     * Free slots are included.
+     */
+    @Override
+    public long getOffHeapBytes() {
+        long chunks = 0;
+        for (Segment segment : segments) {
+            segment.lock.readLock().lock();
+            try {
+                chunks += segment.chunks.size();
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+        return chunks * CHUNK_SLOTS * slotBytes;
+    }
+
+    int getSlotBytes() {
+        return slotBytes;
+    }
+
+    private boolean fits(KalahBoard board) {
+        return board.getPitsPerPlayer() <= slotPitsPerPlayer
+                && 2 * board.getPitsPerPlayer() * board.getStonesPerPit() <= 0xFF;
+    }
+
+    private int allocate(Segment segment) {
+        if (size.incrementAndGet() > maxGames) {
+            size.decrementAndGet();
+            throw new StoreFullException(maxGames);
+        }
+        return segment.allocate(slotBytes);
+    }
+
+    private void write(Segment segment, int slot, UUID id, KalahGame game) {
+        ByteBuffer buffer = segment.chunk(slot);
+        int offset = segment.offset(slot, slotBytes);
+        buffer.putLong(offset + ID_HIGH, id.getMostSignificantBits());
+        buffer.putLong(offset + ID_LOW, id.getLeastSignificantBits());
+        writeName(buffer, offset + namesOffset + GAME_NAME * NAME_BYTES, nameKey(segment, slot, GAME_NAME),
+                game.getName());
+        writeState(segment, slot, game.getGameType(), game.getState());
+    }
+
+    private void writeState(Segment segment, int slot, KalahGameType gameType, KalahGameState state) {
+        ByteBuffer buffer = segment.chunk(slot);
+        int offset = segment.offset(slot, slotBytes);
+        buffer.put(offset + FLAGS, flags(gameType, state));
+        writePlayer(buffer, offset + PLAYER1_HIGH, offset + namesOffset + PLAYER1_NAME * NAME_BYTES,
+                nameKey(segment, slot, PLAYER1_NAME), state.getPlayer1());
+        writePlayer(buffer, offset + PLAYER2_HIGH, offset + namesOffset + PLAYER2_NAME * NAME_BYTES,
+                nameKey(segment, slot, PLAYER2_NAME), state.getPlayer2());
+        KalahBoard board = state.getBoard();
+        buffer.put(offset + PITS_PER_PLAYER, (byte) board.getRules().getCode());
+        buffer.put(offset + STONES_PER_PIT, (byte) board.getStonesPerPit());
+        int[] pits = board.getPits();
+        for (int i = 0; i < pits.length; i++) {
+            buffer.put(offset + PITS + i, (byte) pits[i]);
+        }
+        buffer.putInt(offset + moveNumberOffset, state.getMoveNumber());
+    }
+
+    private void writePlayer(ByteBuffer buffer, int idOffset, int nameOffset, long nameKey, KalahPlayer player) {
+        if (player == null) {
+            buffer.putLong(idOffset, 0L);
+            buffer.putLong(idOffset + 8, 0L);
+            writeName(buffer, nameOffset, nameKey, null);
+            return;
+        }
+        UUID id = UUID.fromString(player.getId());
+        buffer.putLong(idOffset, id.getMostSignificantBits());
+        buffer.putLong(idOffset + 8, id.getLeastSignificantBits());
+        writeName(buffer, nameOffset, nameKey, player.getName());
+    }
+
+    private void writeName(ByteBuffer buffer, int offset, long nameKey, String name) {
+        if (name == null) {
+            buffer.put(offset, NO_NAME);
+            longNames.remove(nameKey);
+            return;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > NAME_INLINE_BYTES) {
+            buffer.put(offset, LONG_NAME);
+            longNames.put(nameKey, name);
+            return;
+        }
+        buffer.put(offset, (byte) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + 1 + i, bytes[i]);
+        }
+        longNames.remove(nameKey);
+    }
+
+    private KalahGame read(Segment segment, int slot) {
+        ByteBuffer buffer = segment.chunk(slot);
+        int offset = segment.offset(slot, slotBytes);
+        int flags = buffer.get(offset + FLAGS);
+        KalahPlayer player1 = (flags & PLAYER_ONE_SEATED) == 0 ? null
+                : readPlayer(buffer, offset + PLAYER1_HIGH, offset + namesOffset + PLAYER1_NAME * NAME_BYTES,
+                nameKey(segment, slot, PLAYER1_NAME));
+        KalahPlayer player2 = (flags & PLAYER_TWO_SEATED) == 0 ? null
+                : readPlayer(buffer, offset + PLAYER2_HIGH, offset + namesOffset + PLAYER2_NAME * NAME_BYTES,
+                nameKey(segment, slot, PLAYER2_NAME));
+
+        KalahRuleSet rules = KalahRuleSet.forCode(buffer.get(offset + PITS_PER_PLAYER) & 0xFF);
+        int[] pits = new int[2 * rules.getPitsPerPlayer() + 2];
+        for (int i = 0; i < pits.length; i++) {
+            pits[i] = buffer.get(offset + PITS + i) & 0xFF;
+        }
+        KalahBoard board = new KalahBoard(rules, buffer.get(offset + STONES_PER_PIT) & 0xFF, pits);
+        String result = (flags & ENDED) == 0
+                ? KalahGameState.IN_PROGRESS
+                : KalahGameState.result(player1, player2, board);
+        KalahGameState state = new KalahGameState(player1, player2, (flags & PLAYER_TWO_TO_MOVE) != 0, board, result,
+                buffer.getInt(offset + moveNumberOffset));
+
+        String gameId = new UUID(buffer.getLong(offset + ID_HIGH), buffer.getLong(offset + ID_LOW)).toString();
+        String name = readName(buffer, offset + namesOffset + GAME_NAME * NAME_BYTES,
+                nameKey(segment, slot, GAME_NAME));
+        KalahGameType gameType = (flags & SINGLE_PLAYER) != 0 ? KalahGameType.SINGLE_PLAYER : KalahGameType.MULTI_PLAYER;
+        KalahGame game = KalahGame.restore(gameId, name, gameType, state);
+        game.setSearchTable(searchTables.get(slotKey(segment, slot)));
+        return game;
+    }
+
+    private KalahPlayer readPlayer(ByteBuffer buffer, int idOffset, int nameOffset, long nameKey) {
+        UUID id = new UUID(buffer.getLong(idOffset), buffer.getLong(idOffset + 8));
+        return new KalahPlayer(readName(buffer, nameOffset, nameKey), id.toString());
+    }
+
+    private String readName(ByteBuffer buffer, int offset, long nameKey) {
+        byte length = buffer.get(offset);
+        if (length == NO_NAME) {
+            return null;
+        }
+        if (length == LONG_NAME) {
+            return longNames.get(nameKey);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 1 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean matches(Segment segment, int slot, KalahGameType gameType, KalahGameState expected) {
+        ByteBuffer buffer = segment.chunk(slot);
+        int offset = segment.offset(slot, slotBytes);
+        if (buffer.get(offset + FLAGS) != flags(gameType, expected)
+                || buffer.getInt(offset + moveNumberOffset) != expected.getMoveNumber()
+                || !matches(buffer, offset + PLAYER1_HIGH, expected.getPlayer1())
+                || !matches(buffer, offset + PLAYER2_HIGH, expected.getPlayer2())) {
+            return false;
+        }
+        int[] pits = expected.getBoard().getPits();
+        if ((buffer.get(offset + PITS_PER_PLAYER) & 0xFF) != expected.getBoard().getRules().getCode()) {
+            return false;
+        }
+        for (int i = 0; i < pits.length; i++) {
+            if ((buffer.get(offset + PITS + i) & 0xFF) != pits[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int idOffset, KalahPlayer player) {
+        if (player == null) {
+            // Whether the seat is taken is part of the flags.
+            return true;
+        }
+        UUID id = UUID.fromString(player.getId());
+        return buffer.getLong(idOffset) == id.getMostSignificantBits()
+                && buffer.getLong(idOffset + 8) == id.getLeastSignificantBits();
+    }
+
+    private static byte flags(KalahGameType gameType, KalahGameState state) {
+        int flags = 0;
+        if (state.getPlayer1() != null) {
+            flags |= PLAYER_ONE_SEATED;
+        }
+        if (state.getPlayer2() != null) {
+            flags |= PLAYER_TWO_SEATED;
+        }
+        if (state.isPlayerTwoToMove()) {
+            flags |= PLAYER_TWO_TO_MOVE;
+        }
+        if (!KalahGameState.IN_PROGRESS.equals(state.getResult())) {
+            flags |= ENDED;
+        }
+        if (gameType == KalahGameType.SINGLE_PLAYER) {
+            flags |= SINGLE_PLAYER;
+        }
+        return (byte) flags;
+    }
+
+    private static long nameKey(Segment segment, int slot, int name) {
+        return ((long) segment.number << 40) | ((long) slot << 2) | name;
+    }
+
+    private static long slotKey(Segment segment, int slot) {
+        return ((long) segment.number << 32) | slot;
+    }
+
+    private Segment segmentFor(UUID id) {
+        // The top bits of the hash pick the segment, the index uses the bottom ones.
+        long hash = KalahSlotIndex.hash(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return segments[(int) (hash >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    /**
+     * @return the ID, or null if it is no UUID.
+     */
+    private static UUID parse(String gameId) {
+        if (gameId == null) {
+            return null;
+        }
+        try {
+            UUID id = UUID.fromString(gameId);
+            // Only the canonical form, so the ID comes out of the slot as it went in.
+            return id.toString().equals(gameId) ? id : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Segment {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final KalahSlotIndex index = new KalahSlotIndex();
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private final int number;
+
+        private int[] free = new int[16];
+        private int freeCount;
+        private int used;
+
+        private Segment(int number) {
+            this.number = number;
+        }
+
+        private int allocate(int slotBytes) {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            int slot = used++;
+            if (slot >>> CHUNK_SHIFT == chunks.size()) {
+                chunks.add(ByteBuffer.allocateDirect(CHUNK_SLOTS * slotBytes));
+            }
+            return slot;
+        }
+
+        private void release(int slot) {
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = slot;
+        }
+
+        private ByteBuffer chunk(int slot) {
+            return chunks.get(slot >>> CHUNK_SHIFT);
+        }
+
+        private int offset(int slot, int slotBytes) {
+            return (slot & (CHUNK_SLOTS - 1)) * slotBytes;
+        }
+    }
+}
@@ -11,7 +11,11 @@ public class KalahPlayer {
     private String id;
 
     KalahPlayer(String name) {
-        this.id = UUID.randomUUID().toString();
+        this(name, UUID.randomUUID().toString());
+    }
+
+    KalahPlayer(String name, String id) {
+        this.id = id;
         this.name = name;
     }
 }
@@ -0,0 +1,161 @@
+package com.bb.kalah;
+
+/**
+ * The rules of a board variant compiled into lookup tables: the pit each side sows into next, which passes
+ * over the other side's store, the house across the board from every house, the side owning every pit and
+ * where the last stone of a side may capture. Sowing and capturing only read the tables, so they never
+ * branch on how the variant is configured. There is one rule set for every variant, shared by all its boards.
+ * <p>
+ * A rule set is stored as its code, the pits per player in the low five bits, which is all
+ * {@link KalahBoard#MAX_PITS_PER_PLAYER} takes, and the rules that differ from standard Kalah in the bits
+ * above. Games stored before the rules could be changed thus read as standard games.
+ */
+final class KalahRuleSet {
+    static final int NO_CAPTURES = 1 << 5;
+    static final int NO_EMPTY_CAPTURES = 1 << 6;
+
+    private static final int PITS_MASK = NO_CAPTURES - 1;
+    private static final KalahRuleSet[] RULE_SETS = new KalahRuleSet[NO_EMPTY_CAPTURES << 1];
+
+    static {
+        for (int code = 0; code < RULE_SETS.length; code++) {
+            int pitsPerPlayer = code & PITS_MASK;
+            // Without captures there is nothing to capture from an empty house either, so that is the one code.
+            boolean canonical = (code & NO_CAPTURES) == 0 || (code & NO_EMPTY_CAPTURES) != 0;
+            if (pitsPerPlayer >= 1 && pitsPerPlayer <= KalahBoard.MAX_PITS_PER_PLAYER && canonical) {
+                RULE_SETS[code] = new KalahRuleSet(code);
+            }
+        }
+    }
+
+    private final int code;
+    private final int pitsPerPlayer;
+    private final int[] stores;
+    private final int[] owner;
+    private final int[][] next;
+    private final int[] opposite;
+    private final boolean[][] captures;
+    // Fewest stones the house across has to hold for the last stone to capture them.
+    private final int fewestCaptured;
+
+    private KalahRuleSet(int code) {
+        this.code = code;
+        this.pitsPerPlayer = code & PITS_MASK;
+        int pitCount = (pitsPerPlayer + 1) * 2;
+        stores = new int[]{pitsPerPlayer, pitCount - 1};
+        owner = new int[pitCount];
+        opposite = new int[pitCount];
+        next = new int[2][pitCount];
+        captures = new boolean[2][pitCount];
+        for (int i = 0; i < pitCount; i++) {
+            owner[i] = i <= pitsPerPlayer ? 0 : 1;
+            boolean store = i == stores[0] || i == stores[1];
+            opposite[i] = store ? i : pitsPerPlayer * 2 - i;
+            for (int side = 0; side < 2; side++) {
+                int following = (i + 1) % pitCount;
+                next[side][i] = following == stores[side ^ 1] ? (following + 1) % pitCount : following;
+                captures[side][i] = (code & NO_CAPTURES) == 0 && !store && owner[i] == side;
+            }
+        }
+        fewestCaptured = (code & NO_EMPTY_CAPTURES) == 0 ? 0 : 1;
+    }
+
+    /**
+     * @return standard Kalah on the board, capturing the last stone and the house across even if it is empty.
+     * @throws IllegalArgumentException if the pits per player are out of range.
+     */
+    static KalahRuleSet standard(int pitsPerPlayer) {
+        return of(pitsPerPlayer, true, true);
+    }
+
+    /**
+     * @param captures      whether the last stone landing in an own empty house captures
+     * @param emptyCaptures whether it also captures when the house across is empty, only with captures
+     * @throws IllegalArgumentException if the pits per player are out of range.
+     */
+    static KalahRuleSet of(int pitsPerPlayer, boolean captures, boolean emptyCaptures) {
+        if (pitsPerPlayer < 1 || pitsPerPlayer > KalahBoard.MAX_PITS_PER_PLAYER) {
+            throw new IllegalArgumentException("Pits per player must be between 1 and "
+                    + KalahBoard.MAX_PITS_PER_PLAYER);
+        }
+        return RULE_SETS[pitsPerPlayer | (captures ? 0 : NO_CAPTURES)
+                | (captures && emptyCaptures ? 0 : NO_EMPTY_CAPTURES)];
+    }
+
+    /**
+     * @throws IllegalArgumentException if the code is no rule set.
+     */
+    static KalahRuleSet forCode(int code) {
+        KalahRuleSet rules = code >= 0 && code < RULE_SETS.length ? RULE_SETS[code] : null;
+        if (rules == null) {
+            throw new IllegalArgumentException("No rules with code " + code);
+        }
+        return rules;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    int getPitsPerPlayer() {
+        return pitsPerPlayer;
+    }
+
+    boolean isCaptures() {
+        return (code & NO_CAPTURES) == 0;
+    }
+
+    boolean isEmptyCaptures() {
+        return (code & NO_EMPTY_CAPTURES) == 0;
+    }
+
+    boolean isStandard() {
+        return code == pitsPerPlayer;
+    }
+
+    /**
+     * Picks all the stones of a legal move and sows them, capturing if the rules let the last stone capture.
+     * Every full lap adds one stone to each pit except the opponents store in a single pass, so a move
+     * costs O(pits) instead of O(stones).
+     *
+     * @param pits   all the pits of a board of the rule set, changed in place.
+     * @param pitNum the index of the pit to pick stones, which has to be a legal move.
+     * @return the GameMove for deciding next move.
+     */
+    KalahGameMove sow(int[] pits, int pitNum) {
+        int side = owner[pitNum];
+        int ownStore = stores[side];
+
+        int stones = pits[pitNum];
+        pits[pitNum] = 0;
+
+        int laps = stones / (pits.length - 1);
+        int remainder = stones % (pits.length - 1);
+        if (laps > 0) {
+            for (int i = 0; i < pits.length; i++) {
+                pits[i] += laps;
+            }
+            pits[stores[side ^ 1]] -= laps;
+        }
+
+        // Sow the remaining stones one by one. A full last lap ends in the selected pit itself.
+        int[] following = next[side];
+        int index = pitNum;
+        for (; remainder > 0; remainder--) {
+            index = following[index];
+            pits[index]++;
+        }
+
+        if (index == ownStore) {
+            return KalahGameMove.PLAY_AGAIN;
+        }
+        int across = opposite[index];
+        if (pits[index] == 1 && captures[side][index] && pits[across] >= fewestCaptured) {
+            pits[ownStore] += 1 + pits[across];
+            pits[index] = 0;
+            pits[across] = 0;
+            return KalahGameMove.CAPTURE;
+        }
+        return KalahGameMove.CONTINUE;
+    }
+}
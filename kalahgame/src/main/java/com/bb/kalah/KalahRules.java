@@ -0,0 +1,98 @@
+package com.bb.kalah;
+
+/**
+ * The Kalah rules, applied directly to a pits array laid out as in {@link KalahBoard}.
+ * Shared by the game board and the search engine so both always play the same game.
+ */
+public final class KalahRules {
+
+    private KalahRules() {
+    }
+
+    /**
+     * @return true if the pit is a house on the board that has stones in it.
+     */
+    public static boolean isLegalMove(int[] pits, int pitsPerPlayer, int pitNum) {
+        return pitNum >= 0 && pitNum < pits.length && !isStore(pitsPerPlayer, pitNum) && pits[pitNum] != 0;
+    }
+
+    /**
+     * @return bitmask of the legal moves, bit i is set if pit i is a house with stones in it.
+     */
+    public static long legalMoves(int[] pits, int pitsPerPlayer) {
+        long moves = 0L;
+        for (int i = 0; i < pits.length; i++) {
+            if (pits[i] != 0 && !isStore(pitsPerPlayer, i)) {
+                moves |= 1L << i;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * @return bitmask with a bit set for each house owned by the player.
+     */
+    public static long houseMask(int pitsPerPlayer, boolean playerOne) {
+        long houses = (1L << pitsPerPlayer) - 1;
+        return playerOne ? houses : houses << (pitsPerPlayer + 1);
+    }
+
+    /**
+     * Picks all the stones of a legal move and sows them, capturing if the last stone lands in an own empty house.
+     * Sows by the standard rules' {@link KalahRuleSet}.
+     *
+     * @param pitNum the index of the pit to pick stones, which has to be a legal move.
+     * @return the GameMove for deciding next move.
+     */
+    public static KalahGameMove sow(int[] pits, int pitsPerPlayer, int pitNum) {
+        return KalahRuleSet.standard(pitsPerPlayer).sow(pits, pitNum);
+    }
+
+    /**
+     * @return true if sowing the pit ends in the own store, without changing the board.
+     */
+    public static boolean isPlayAgain(int[] pits, int pitsPerPlayer, int pitNum) {
+        int store = pitNum < pitsPerPlayer ? pitsPerPlayer : pits.length - 1;
+        return pits[pitNum] % (pits.length - 1) == store - pitNum;
+    }
+
+    /**
+     * @return count The total number of stones in all the houses of the player.
+     */
+    public static int houseStones(int[] pits, int pitsPerPlayer, boolean playerOne) {
+        int from = playerOne ? 0 : pitsPerPlayer + 1;
+        int count = 0;
+        for (int i = from; i < from + pitsPerPlayer; i++) {
+            count += pits[i];
+        }
+        return count;
+    }
+
+    /**
+     * @return true if either player has no stones left in their houses.
+     */
+    public static boolean hasGameEnded(int[] pits, int pitsPerPlayer) {
+        return houseStones(pits, pitsPerPlayer, true) == 0 || houseStones(pits, pitsPerPlayer, false) == 0;
+    }
+
+    /**
+     * Ends the game by collecting all the stones in the pits and collecting it in the respective kalah / store.
+     */
+    public static void endGame(int[] pits, int pitsPerPlayer) {
+        pits[pitsPerPlayer] += pickHouses(pits, 0, pitsPerPlayer);
+        pits[pits.length - 1] += pickHouses(pits, pitsPerPlayer + 1, pits.length - 1);
+    }
+
+    private static boolean isStore(int pitsPerPlayer, int index) {
+        return index == pitsPerPlayer || index == (pitsPerPlayer * 2) + 1;
+    }
+
+    private static int pickHouses(int[] pits, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            count += pits[i];
+            pits[i] = 0;
+        }
+        return count;
+    }
+}
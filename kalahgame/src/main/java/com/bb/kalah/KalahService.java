@@ -1,27 +1,258 @@
 package com.bb.kalah;
 
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.engine.KalahPosition;
 import com.bb.kalah.exception.GameFullException;
 import com.bb.kalah.exception.GameNotFoundException;
 import com.bb.kalah.exception.GameNotStartedException;
 import com.bb.kalah.exception.GameWrongTurnException;
+import com.bb.kalah.exception.IllegalMoveException;
+import com.bb.kalah.exception.UnsupportedVariantException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
 
+/**
+ * Keeps the games in progress. Every change to a game computes its next {@link KalahGameState} from the
+ * current one. Depending on {@link KalahServiceProperties.Concurrency}, changes to the same game are either
+ * made one after the other under the game's lock from {@link KalahGameLocks}, or computed without a lock
+ * and installed with a compare-and-set. Either way readers never block and always see a whole snapshot.
+ * The games are kept in a {@link KalahGameStore}, which by default evicts abandoned games, and every change
+ * is handed back to the store, as stores off the heap keep no game objects.
+ * With the {@link KalahJournal} on, every change is journaled under the game's lock and only answered
+ * once it is on the disk, and the games are rebuilt from the journal on start.
+ * Every change is also handed to the {@link KalahGameListener} right after it is installed.
+ * The {@code Async} variants make the same changes, but hand back a future instead of waiting for the
+ * journal, so no thread waits for the disk.
+ */
+@Slf4j
 @Service
+@ManagedResource(objectName = "kalah:type=Service,name=KalahService")
 public class KalahService {
-    private Map<String, KalahGame> games = new ConcurrentHashMap<>();
+    private final KalahGameStore games;
+
+    private final KalahEngine engine;
+    private final KalahServiceProperties.Concurrency concurrency;
+    private final KalahGameLocks locks;
+    private final KalahJournal journal;
+    private final ExecutorService snapshots;
+    // Games nobody asked for since the start are read from here on first access.
+    private final KalahSnapshot snapshot;
+    private final KalahGameListener listener;
+    private final KalahMetrics metrics;
+    private final KalahServiceProperties.Variants variants;
+
+    private final LongAdder conflicts = new LongAdder();
+    // Set while a snapshot collects the games.
+    private volatile Cut cut;
+
+    public KalahService() {
+        this(new KalahEngine());
+    }
+
+    public KalahService(KalahEngine engine) {
+        this(engine, new KalahServiceProperties());
+    }
+
+    public KalahService(KalahEngine engine, KalahServiceProperties properties) {
+        this(engine, properties, KalahGameListener.NONE);
+    }
+
+    @Autowired
+    KalahService(KalahEngine engine, KalahServiceProperties properties, List<KalahGameListener> listeners,
+                 KalahMetrics metrics) {
+        this(engine, properties, KalahGameListener.of(listeners), metrics);
+    }
+
+    KalahService(KalahEngine engine, KalahServiceProperties properties, KalahGameListener listener) {
+        this(engine, properties, listener, new KalahMetrics());
+    }
+
+    KalahService(KalahEngine engine, KalahServiceProperties properties, KalahGameListener listener,
+                 KalahMetrics metrics) {
+        this.engine = engine;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.concurrency = properties.getConcurrency();
+        this.variants = properties.getVariants();
+        this.locks = new KalahGameLocks(properties.getLockStripes());
+        this.games = store(properties.getStore());
+        if (properties.getJournal().isEnabled()) {
+            this.snapshots = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "kalah-journal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.journal = new KalahJournal(properties.getJournal(), () -> snapshots.execute(this::takeSnapshot));
+            try {
+                this.snapshot = journal.open(game -> {
+                    games.put(game);
+                    metrics.gameAdded(game.getState());
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Journal could not be opened", e);
+            }
+        } else {
+            this.snapshots = null;
+            this.journal = null;
+            this.snapshot = null;
+        }
+        metrics.gauges(this::getWaitingGames, this::getInProgressGames);
+    }
+
+    private static KalahGameStore store(KalahServiceProperties.Store settings) {
+        switch (settings.getType()) {
+            case EVICTING:
+                return new KalahEvictingGameStore(settings, System::nanoTime, true);
+            case OFF_HEAP:
+                return new KalahOffHeapGameStore(settings);
+            default:
+                return new KalahMapGameStore();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        games.close();
+        if (journal != null) {
+            snapshots.shutdown();
+            try {
+                journal.close();
+                if (snapshot != null) {
+                    snapshot.close();
+                }
+            } catch (IOException e) {
+                log.error("Journal could not be closed", e);
+            }
+        }
+    }
 
     /**
-     * Creates a new game and adds it to the in memory data store(map).
+     * Creates a new multi player game and adds it to the game store.
      * @param name name of the game to be created
      * @return id the new game's UUID
      */
     public String createGame(String name) {
-        KalahGame game = new KalahGame(name);
-        games.put(game.getGameId(), game);
-        return game.getGameId();
+        return createGame(name, KalahGameType.MULTI_PLAYER);
+    }
+
+    /**
+     * Creates a new game of standard Kalah and adds it to the game store.
+     * @param name name of the game to be created
+     * @param gameType single player against the computer or multi player, multi player if null
+     * @return id the new game's UUID
+     */
+    public String createGame(String name, KalahGameType gameType) {
+        return createGame(name, gameType, KalahVariant.STANDARD);
+    }
+
+    /**
+     * Creates a new game and adds it to the game store.
+     * @param name name of the game to be created
+     * @param gameType single player against the computer or multi player, multi player if null
+     * @param variant board and rules of the game
+     * @return id the new game's UUID
+     * @throws UnsupportedVariantException if games of the type can't be played with the variant
+     */
+    public String createGame(String name, KalahGameType gameType, KalahVariant variant) {
+        long start = System.nanoTime();
+        try {
+            KalahGame game = newGame(name, gameType, variant);
+            long position = add(game);
+            if (journal != null) {
+                journal.await(position);
+            }
+            return game.getGameId();
+        } finally {
+            metrics.timed(KalahMetrics.Operation.CREATE_GAME, start);
+        }
+    }
+
+    /**
+     * Like {@link #createGame(String, KalahGameType)}, without waiting for the journal.
+     * @return future of the new game's UUID
+     */
+    public CompletableFuture<String> createGameAsync(String name, KalahGameType gameType) {
+        return createGameAsync(name, gameType, KalahVariant.STANDARD);
+    }
+
+    /**
+     * Like {@link #createGame(String, KalahGameType, KalahVariant)}, without waiting for the journal.
+     * @return future of the new game's UUID
+     * @throws UnsupportedVariantException if games of the type can't be played with the variant
+     */
+    public CompletableFuture<String> createGameAsync(String name, KalahGameType gameType, KalahVariant variant) {
+        long start = System.nanoTime();
+        try {
+            KalahGame game = newGame(name, gameType, variant);
+            return timed(KalahMetrics.Operation.CREATE_GAME, start,
+                    durable(add(game)).thenApply(ignored -> game.getGameId()));
+        } catch (RuntimeException e) {
+            metrics.timed(KalahMetrics.Operation.CREATE_GAME, start);
+            throw e;
+        }
+    }
+
+    /**
+     * @throws UnsupportedVariantException if the board is larger than allowed, or if the rules are not the
+     * standard ones in a single player game, as the computer only plays those
+     */
+    public void checkVariant(KalahGameType gameType, KalahVariant variant) {
+        int maxPitsPerPlayer = Math.min(variants.getMaxPitsPerPlayer(), KalahBoard.MAX_PITS_PER_PLAYER);
+        if (variant.getPitsPerPlayer() < 1 || variant.getPitsPerPlayer() > maxPitsPerPlayer) {
+            throw new UnsupportedVariantException("pits per player must be between 1 and " + maxPitsPerPlayer);
+        }
+        if (variant.getStonesPerPit() < 1 || variant.getStonesPerPit() > variants.getMaxStonesPerPit()) {
+            throw new UnsupportedVariantException("stones per pit must be between 1 and "
+                    + variants.getMaxStonesPerPit());
+        }
+        if (gameType == KalahGameType.SINGLE_PLAYER && !variant.hasStandardRules()) {
+            throw new UnsupportedVariantException("the computer only plays by the standard rules");
+        }
+    }
+
+    private KalahGame newGame(String name, KalahGameType gameType, KalahVariant variant) {
+        KalahGameType type = gameType == null ? KalahGameType.MULTI_PLAYER : gameType;
+        checkVariant(type, variant);
+        return new KalahGame(name, type, variant);
+    }
+
+    /**
+     * @return position in the journal to wait for, 0 without a journal.
+     */
+    private long add(KalahGame game) {
+        if (journal == null) {
+            games.put(game);
+            metrics.gameAdded(game.getState());
+            return 0;
+        }
+        Lock lock = locks.lockFor(game.getGameId());
+        lock.lock();
+        try {
+            games.put(game);
+            added(game.getGameId());
+            metrics.gameAdded(game.getState());
+            return journal.created(game);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -33,55 +264,455 @@ public class KalahService {
      * @throws GameFullException if the game is already full
      */
     public String assignPlayer(String gameId, String playerName) {
-        KalahGame game = getGame(gameId);
-
-        if (game.getPlayer1() == null) {
-            return game.setPlayer1(playerName);
+        long start = System.nanoTime();
+        try {
+            KalahPlayer player = new KalahPlayer(playerName);
+            await(seat(gameId, player));
+            return player.getId();
+        } finally {
+            metrics.timed(KalahMetrics.Operation.ASSIGN_PLAYER, start);
         }
-        if (game.getPlayer2() == null) {
-            return game.setPlayer2(playerName);
+    }
+
+    /**
+     * Like {@link #assignPlayer}, without waiting for the journal.
+     * @return future of the player's ID
+     * @throws GameNotFoundException if the game doesn't exist
+     * @throws GameFullException if the game is already full
+     */
+    public CompletableFuture<String> assignPlayerAsync(String gameId, String playerName) {
+        long start = System.nanoTime();
+        try {
+            KalahPlayer player = new KalahPlayer(playerName);
+            return timed(KalahMetrics.Operation.ASSIGN_PLAYER, start,
+                    durable(seat(gameId, player)).thenApply(state -> player.getId()));
+        } catch (RuntimeException e) {
+            metrics.timed(KalahMetrics.Operation.ASSIGN_PLAYER, start);
+            throw e;
         }
-        throw new GameFullException(gameId);
+    }
+
+    private Installed seat(String gameId, KalahPlayer player) {
+        return update(gameId, (game, state) -> state.seat(gameId, player), (before, next) -> {
+            if (!before.hasStarted() && next.hasStarted()) {
+                metrics.gameStarted();
+            }
+            listener.joined(gameId, next, player);
+            return journal == null ? 0 : journal.seated(gameId, next.getPlayer1() == player ? 1 : 2, player);
+        });
     }
 
     /**
-     * Makes the next move, and remove the game, if it was finished
+     * Makes the next move, followed by the computer's moves in a single player game,
+     * and remove the game, if it was finished
      * @param gameId ID of the current game
      * @param playerId ID of the player making the move
      * @param pitIndex Index of pit to be picked
-     * @return current state of the game
+     * @return state of the game right after the move
      * @throws GameNotStartedException if the game has not yet started
      * @throws GameWrongTurnException if it is the turn of the other player to move
+     * @throws GameNotFoundException if the game doesn't exist or has been finished by a move before
      */
     public KalahGame makeMove(String gameId, String playerId, int pitIndex) {
-        KalahGame game = getGame(gameId);
-
-        if (!game.hasStarted()) {
-            throw new GameNotStartedException(gameId);
+        long start = System.nanoTime();
+        try {
+            KalahGame game = getGame(gameId);
+            return game.snapshot(await(move(gameId, playerId, pitIndex)));
+        } finally {
+            metrics.timed(KalahMetrics.Operation.MAKE_MOVE, start);
         }
+    }
 
-        if (!game.getCurrentPlayer().getId().equals(playerId)) {
-            throw new GameWrongTurnException(gameId, playerId);
+    /**
+     * Like {@link #makeMove}, without waiting for the journal. The computer's moves in a single player game
+     * are still searched by the calling thread.
+     * @return future of the state of the game right after the move
+     * @throws GameNotStartedException if the game has not yet started
+     * @throws GameWrongTurnException if it is the turn of the other player to move
+     * @throws GameNotFoundException if the game doesn't exist or has been finished by a move before
+     */
+    public CompletableFuture<KalahGame> makeMoveAsync(String gameId, String playerId, int pitIndex) {
+        long start = System.nanoTime();
+        try {
+            KalahGame game = getGame(gameId);
+            return timed(KalahMetrics.Operation.MAKE_MOVE, start,
+                    durable(move(gameId, playerId, pitIndex)).thenApply(game::snapshot));
+        } catch (RuntimeException e) {
+            metrics.timed(KalahMetrics.Operation.MAKE_MOVE, start);
+            throw e;
         }
+    }
 
-        game.makeMove(pitIndex);
-        if (game.hasGameEnded()) {
-            game.endGame();
+    private Installed move(String gameId, String playerId, int pitIndex) {
+        List<Integer> pits = Collections.singletonList(pitIndex);
+        Installed installed;
+        try {
+            installed = update(gameId, (game, state) -> {
+                if (state.hasGameEnded()) {
+                    throw new GameNotFoundException(gameId);
+                }
+                if (!state.hasStarted()) {
+                    throw new GameNotStartedException(gameId);
+                }
+                if (!state.getCurrentPlayer().getId().equals(playerId)) {
+                    throw new GameWrongTurnException(gameId, playerId);
+                }
+                KalahGameState moved = state.move(gameId, pitIndex);
+                return moved.hasGameEnded() ? moved.end() : moved;
+            }, (before, moved) -> moved(gameId, before, moved, pits,
+                    Collections.singletonList(moved.getBoard())));
+        } catch (IllegalMoveException e) {
+            metrics.illegalMove();
+            throw e;
+        }
+        installed = playComputerMoves(gameId, installed);
+        if (installed.next.hasGameEnded()) {
             games.remove(gameId);
         }
-        return game;
+        return installed;
+    }
+
+    /**
+     * @param boards the board after each of the moves, which tells the metrics how it turned out
+     */
+    private long moved(String gameId, KalahGameState before, KalahGameState moved, List<Integer> pits,
+                       List<KalahBoard> boards) {
+        for (int i = 0; i < boards.size(); i++) {
+            metrics.moved(boards.get(i));
+        }
+        if (moved.hasGameEnded()) {
+            metrics.gameEnded();
+        }
+        listener.moved(gameId, before, moved, pits);
+        return journal == null ? 0 : journal.moved(gameId, pits);
+    }
+
+    /**
+     * Lets the computer move until it is the other player's turn again. The moves are searched without
+     * holding the game's lock, each within the engine's time budget, and installed together once the search
+     * is done. If the game changed in the meantime, the moves are searched again from where it is now.
+     * @param installed the player's move
+     * @return the computer's moves, or the player's move if the computer is not to move after it
+     * @throws GameNotFoundException if the game doesn't exist any more
+     */
+    private Installed playComputerMoves(String gameId, Installed installed) {
+        KalahGameState from = installed.next;
+        while (!from.hasGameEnded()) {
+            KalahGame game = getGame(gameId);
+            if (!game.isComputerTurn(from)) {
+                break;
+            }
+            List<Integer> pits = new ArrayList<>();
+            List<KalahBoard> boards = new ArrayList<>();
+            KalahGameState searched = search(game, from, pits, boards);
+            KalahGameState moved = searched.hasGameEnded() ? searched.end() : searched;
+            int moveNumber = from.getMoveNumber();
+            Installed computer = update(gameId,
+                    (current, state) -> state.getMoveNumber() == moveNumber ? moved : null,
+                    (before, next) -> moved(gameId, before, next, pits, boards));
+            if (computer != null) {
+                return computer;
+            }
+            from = getGame(gameId).getState();
+        }
+        return installed;
+    }
+
+    /**
+     * Searches the computer's moves until it is the other player's turn again.
+     * @param game the current game
+     * @param state the state to search from, with the computer to move
+     * @param pits gets the pits the computer moved
+     * @param boards gets the board after each of the moves
+     * @return the state after the computer's moves
+     */
+    private KalahGameState search(KalahGame game, KalahGameState state, List<Integer> pits,
+                                  List<KalahBoard> boards) {
+        while (game.isComputerTurn(state) && !state.hasGameEnded()) {
+            KalahBoard board = state.getBoard();
+            if (game.getSearchTable() == null) {
+                game.setSearchTable(engine.tableFor(board.getPitsPerPlayer(), board.getStonesPerPit()));
+                games.keepSearchTable(game);
+            }
+            int pit = engine.bestMove(board.getPits(), board.getPitsPerPlayer(),
+                    board.getStonesPerPit(), KalahPosition.PLAYER_TWO, game.getSearchTable());
+            state = state.move(game.getGameId(), pit);
+            pits.add(pit);
+            boards.add(state.getBoard());
+        }
+        return state;
+    }
+
+    /**
+     * Replaces the game's state with the next one computed by the transition.
+     * With optimistic concurrency the transition may run more than once, so it must not have side effects.
+     * It only checks and applies a change worked out beforehand, such as the computer's searched moves, as it
+     * runs under the lock or again on every conflict.
+     * The change is handed on once it is installed, under the lock. Optimistic changes are handed on right
+     * after the compare-and-set, so two changes to the same game at the same time may be handed on in either
+     * order.
+     * @return the state that was installed, and the position in the journal to wait for, or null if the
+     * transition had nothing to install
+     * @throws GameNotFoundException if the game doesn't exist.
+     */
+    private Installed update(String gameId, Transition transition, Change change) {
+        if (concurrency == KalahServiceProperties.Concurrency.OPTIMISTIC && journal == null) {
+            while (true) {
+                // Stores that don't keep the game objects hand out a new one every time.
+                KalahGame game = getGame(gameId);
+                KalahGameState current = game.getState();
+                KalahGameState next = transition.apply(game, current);
+                if (next == null) {
+                    return null;
+                }
+                if (games.replace(game, current, next)) {
+                    change.installed(current, next);
+                    return new Installed(next, 0);
+                }
+                conflicts.increment();
+            }
+        }
+
+        KalahGameState next;
+        long position = 0;
+        Lock lock = locks.lockFor(gameId);
+        lock.lock();
+        try {
+            KalahGame game = getGame(gameId);
+            KalahGameState current = game.getState();
+            next = transition.apply(game, current);
+            if (next == null) {
+                return null;
+            }
+            if (!games.replace(game, current, next)) {
+                // Only a game removed or evicted in the meantime can have changed under the lock.
+                throw new GameNotFoundException(gameId);
+            }
+            Cut snapshotting = cut;
+            if (snapshotting != null) {
+                snapshotting.changed(gameId, current);
+            }
+            position = change.installed(current, next);
+        } finally {
+            lock.unlock();
+        }
+        return new Installed(next, position);
+    }
+
+    private KalahGameState await(Installed installed) {
+        if (journal != null) {
+            journal.await(installed.position);
+        }
+        return installed.next;
+    }
+
+    private CompletableFuture<KalahGameState> durable(Installed installed) {
+        return durable(installed.position).thenApply(ignored -> installed.next);
+    }
+
+    private CompletableFuture<Void> durable(long position) {
+        return journal == null ? CompletableFuture.completedFuture(null) : journal.durable(position);
+    }
+
+    /**
+     * Records the time of the operation once the future completes.
+     */
+    private <T> CompletableFuture<T> timed(KalahMetrics.Operation operation, long start, CompletableFuture<T> future) {
+        return future.whenComplete((result, e) -> metrics.timed(operation, start));
+    }
+
+    /**
+     * Writes a snapshot of all games that have not ended to the journal. Changes are held back only while the
+     * journal goes on in a new segment. The games are then collected one by one under their own locks, each as
+     * it was when the segment started, so the snapshot holds exactly the changes before that segment.
+     */
+    void takeSnapshot() {
+        List<KalahGame> live = new ArrayList<>(games.size());
+        long segment;
+        long[] taken;
+        Cut collecting = new Cut();
+        locks.lockAll();
+        try {
+            segment = journal.roll();
+            taken = snapshot == null ? null : snapshot.takenSoFar();
+            cut = collecting;
+        } catch (IOException e) {
+            log.error("Journal could not go on in a new segment, no snapshot taken", e);
+            return;
+        } finally {
+            locks.unlockAll();
+        }
+        try {
+            games.forEach(game -> {
+                KalahGameState state;
+                Lock lock = locks.lockFor(game.getGameId());
+                lock.lock();
+                try {
+                    state = collecting.stateAtCut(game);
+                } finally {
+                    lock.unlock();
+                }
+                if (state != null && !state.hasGameEnded()) {
+                    live.add(game.snapshot(state));
+                }
+            });
+        } finally {
+            cut = null;
+        }
+        try {
+            journal.writeSnapshot(segment, live, snapshot, taken);
+        } catch (IOException e) {
+            log.error("Snapshot could not be written, the journal is kept", e);
+        }
+    }
+
+    @ManagedAttribute(description = "Optimistic changes that had to start over because another change got in first")
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    @ManagedAttribute(description = "Games in the store")
+    public int getGames() {
+        return games.size() + (snapshot == null ? 0 : snapshot.remaining());
+    }
+
+    /**
+     * Games nobody asked for since they were read from a snapshot are not counted, see {@link #getGames}.
+     */
+    @ManagedAttribute(description = "Games waiting for a player")
+    public long getWaitingGames() {
+        long evictedForSizeWaiting = games.getEvictedForSize() - games.getEvictedForSizeInProgress();
+        return metrics.getAddedWaiting() - games.getEvictedIdleWaiting() - evictedForSizeWaiting;
+    }
+
+    @ManagedAttribute(description = "Games started and not ended")
+    public long getInProgressGames() {
+        return metrics.getAddedInProgress() - games.getEvictedIdleInProgress() - games.getEvictedForSizeInProgress();
+    }
+
+    @ManagedAttribute(description = "Games evicted while waiting for a player, after their idle time")
+    public long getEvictedIdleWaiting() {
+        return games.getEvictedIdleWaiting();
+    }
+
+    @ManagedAttribute(description = "Started games evicted after their idle time")
+    public long getEvictedIdleInProgress() {
+        return games.getEvictedIdleInProgress();
+    }
+
+    @ManagedAttribute(description = "Games evicted to make room for new ones")
+    public long getEvictedForSize() {
+        return games.getEvictedForSize();
+    }
+
+    @ManagedAttribute(description = "Bytes of direct memory taken by the game store")
+    public long getOffHeapBytes() {
+        return games.getOffHeapBytes();
     }
 
     /**
      *
      * @param gameId ID of the game
      * @return current state of the game
-     * @throws GameNotFoundException if the game doesn't exist.
+     * @throws GameNotFoundException if the game doesn't exist or has been evicted.
      */
     public KalahGame getGame(String gameId) {
-        if (games.containsKey(gameId)) {
-            return games.get(gameId);
+        KalahGame game = games.get(gameId);
+        if (game == null && snapshot != null) {
+            game = takeFromSnapshot(gameId);
+        }
+        if (game != null) {
+            return game;
         }
         throw new GameNotFoundException(gameId);
     }
+
+    /**
+     * Moves the game from the snapshot into the store, under its lock, so nothing can change it meanwhile.
+     * @return the game, or null if the snapshot doesn't have it any more.
+     */
+    private KalahGame takeFromSnapshot(String gameId) {
+        Lock lock = locks.lockFor(gameId);
+        lock.lock();
+        try {
+            KalahGame game = games.get(gameId);
+            if (game == null) {
+                game = snapshot.take(gameId);
+                if (game != null) {
+                    games.put(game);
+                    added(gameId);
+                    metrics.gameAdded(game.getState());
+                }
+            }
+            return game;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells a snapshot collecting the games that the game was added after its segment started. Called under the
+     * game's lock.
+     */
+    private void added(String gameId) {
+        Cut snapshotting = cut;
+        if (snapshotting != null) {
+            snapshotting.added(gameId);
+        }
+    }
+
+    /**
+     * The games as they were when the journal went on in the segment of a snapshot, while the snapshot collects
+     * them. The first change of a game after that keeps the state it replaced, under the game's lock.
+     */
+    private static final class Cut {
+        private final ConcurrentMap<String, KalahGameState> before = new ConcurrentHashMap<>();
+        // Created, or taken from the last snapshot, which the snapshot copies on its own.
+        private final Set<String> added = ConcurrentHashMap.newKeySet();
+
+        private void changed(String gameId, KalahGameState replaced) {
+            before.putIfAbsent(gameId, replaced);
+        }
+
+        private void added(String gameId) {
+            added.add(gameId);
+        }
+
+        /**
+         * Called under the game's lock.
+         * @return the state of the game at the cut, or null if it was added later.
+         */
+        private KalahGameState stateAtCut(KalahGame game) {
+            if (added.contains(game.getGameId())) {
+                return null;
+            }
+            KalahGameState replaced = before.get(game.getGameId());
+            return replaced != null ? replaced : game.getState();
+        }
+    }
+
+    private static final class Installed {
+        private final KalahGameState next;
+        private final long position;
+
+        private Installed(KalahGameState next, long position) {
+            this.next = next;
+            this.position = position;
+        }
+    }
+
+    private interface Transition {
+        /**
+         * @return the next state, or null to leave the current one as it is.
+         */
+        KalahGameState apply(KalahGame game, KalahGameState state);
+    }
+
+    private interface Change {
+        /**
+         * Tells the listener and the journal about the state that was installed.
+         * @return position in the journal to wait for, 0 without a journal.
+         */
+        long installed(KalahGameState before, KalahGameState next);
+    }
 }
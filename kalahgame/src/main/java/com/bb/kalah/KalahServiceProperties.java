@@ -0,0 +1,276 @@
+package com.bb.kalah;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "kalah.service")
+public class KalahServiceProperties {
+    /**
+     * How concurrent changes to the same game are applied.
+     */
+    private Concurrency concurrency = Concurrency.LOCKING;
+
+    /**
+     * Whether the game endpoints hand their requests back to the container while they wait, for the journal
+     * or the computer's search, instead of holding a request thread.
+     */
+    private boolean nonBlocking = false;
+
+    /**
+     * Locks shared by all games, if changes are made under a lock, rounded up to a power of two.
+     */
+    private int lockStripes = KalahGameLocks.DEFAULT_STRIPES;
+
+    /**
+     * Where the games in progress are kept and when they are dropped.
+     */
+    private Store store = new Store();
+
+    /**
+     * Where changes to games are written, so the games survive a restart.
+     */
+    private Journal journal = new Journal();
+
+    /**
+     * How changes are pushed to the clients that subscribed to a game.
+     */
+    private Events events = new Events();
+
+    /**
+     * How moves sent together are made.
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * How players waiting for an opponent are paired.
+     */
+    private Matchmaking matchmaking = new Matchmaking();
+
+    /**
+     * Where finished games are kept.
+     */
+    private Archive archive = new Archive();
+
+    /**
+     * Which boards and rules games may be created with.
+     */
+    private Variants variants = new Variants();
+
+    @Data
+    public static class Variants {
+        /**
+         * Most houses a player may have, at most 31.
+         */
+        private int maxPitsPerPlayer = 12;
+
+        /**
+         * Most stones a house may start with.
+         */
+        private int maxStonesPerPit = 12;
+    }
+
+    @Data
+    public static class Archive {
+        /**
+         * Whether games are written to the archive when they end.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the archive's files.
+         */
+        private String directory = "archive";
+
+        /**
+         * Buckets of the index by game and player ID, rounded up to a power of two. Each takes 8 bytes on the
+         * disk, and a lookup reads all entries of its bucket newer than the games it finds.
+         */
+        private int idBuckets = 1 << 20;
+
+        /**
+         * Most games a page of a query holds.
+         */
+        private int maxPageSize = 100;
+    }
+
+    @Data
+    public static class Matchmaking {
+        /**
+         * Time a player waits for an opponent before being answered without a game, to ask again.
+         */
+        private long timeoutMillis = TimeUnit.SECONDS.toMillis(30);
+
+        /**
+         * Width of the rating bands players are paired within, 0 to pair rated players regardless of rating.
+         */
+        private int ratingBand = 200;
+
+        /**
+         * Lowest rating with a band of its own. Lower ratings are paired in the band of this one, so clients
+         * can't make a band for every rating they send.
+         */
+        private int minRating = 0;
+
+        /**
+         * Highest rating with a band of its own. Higher ratings are paired in the band of this one.
+         */
+        private int maxRating = 3000;
+    }
+
+    @Data
+    public static class Batch {
+        /**
+         * Threads that make the moves of different games of a batch at the same time.
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Most moves a batch may hold.
+         */
+        private int maxMoves = 10_000;
+    }
+
+    @Data
+    public static class Events {
+        /**
+         * Time after which a subscription ends and the client has to subscribe again.
+         */
+        private long timeoutMillis = TimeUnit.MINUTES.toMillis(30);
+
+        /**
+         * Time a request waiting for the next move is held before it is answered with the game as it is.
+         */
+        private long awaitTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+
+        /**
+         * Threads that send the events. The events of a game are always sent by the same thread, in order.
+         */
+        private int dispatchers = 2;
+
+        /**
+         * Events waiting to be sent per thread. When a thread falls that far behind, the subscriptions of the
+         * game whose event doesn't fit are ended, and their clients start over from the whole game.
+         */
+        private int queueSize = 10_000;
+    }
+
+    @Data
+    public static class Journal {
+        /**
+         * Whether every change is written to the journal before it is answered. With the journal on, changes
+         * to a game are always made under its lock, so they reach the journal in the order they were made.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the journal segments and the snapshots.
+         */
+        private String directory = "journal";
+
+        /**
+         * Size after which the journal goes on in a new segment.
+         */
+        private long segmentBytes = 64L * 1024 * 1024;
+
+        /**
+         * Changes written after which all games are written to a snapshot, and older segments are deleted.
+         */
+        private long snapshotRecords = 1_000_000;
+
+        /**
+         * Whether writes are forced to the disk before they count as done. Without, a crash of the machine,
+         * not just of the process, can lose the last changes.
+         */
+        private boolean fsync = true;
+    }
+
+    @Data
+    public static class Store {
+        /**
+         * Kind of store. Games are only dropped when they end unless an evicting store is chosen, which also
+         * drops abandoned games.
+         */
+        private StoreType type = StoreType.UNBOUNDED;
+
+        /**
+         * Most games an evicting or off heap store keeps at once. Adding a game beyond that evicts another one
+         * first, or is refused by the off heap store.
+         */
+        private int maxGames = 1_000_000;
+
+        /**
+         * Time a game that is still waiting for a player is kept without any request for it.
+         */
+        private long waitingIdleMillis = TimeUnit.MINUTES.toMillis(30);
+
+        /**
+         * Time a started game is kept without any request for it.
+         */
+        private long inProgressIdleMillis = TimeUnit.HOURS.toMillis(2);
+
+        /**
+         * Which games go first when the store is full.
+         */
+        private SizeEviction sizeEviction = SizeEviction.WAITING_FIRST;
+
+        /**
+         * How often idle games are looked for. Games are evicted up to one tick after their idle time ran out.
+         */
+        private long tickMillis = 1000;
+
+        /**
+         * Pits per player an off heap slot has room for. Games with bigger boards, or with more than 255 stones,
+         * are kept on the heap.
+         */
+        private int slotPitsPerPlayer = 6;
+    }
+
+    public enum StoreType {
+        /**
+         * Games are only removed when they end.
+         */
+        UNBOUNDED,
+
+        /**
+         * Idle games are evicted after their idle time and the store never holds more than the most games.
+         */
+        EVICTING,
+
+        /**
+         * Games are packed into fixed size slots outside the heap, and only turned into objects while a request
+         * uses them. Games are only removed when they end, and no games can be added beyond the most games.
+         */
+        OFF_HEAP
+    }
+
+    public enum SizeEviction {
+        /**
+         * Of the sampled games, the least recently used one still waiting for a player goes first,
+         * a started game only if none of the samples is waiting.
+         */
+        WAITING_FIRST,
+
+        /**
+         * Of the sampled games, the least recently used one goes first.
+         */
+        LEAST_RECENTLY_USED
+    }
+
+    public enum Concurrency {
+        /**
+         * Changes to a game are made one after the other while holding the game's striped lock.
+         */
+        LOCKING,
+
+        /**
+         * Changes are computed from the current snapshot without a lock and installed with a compare-and-set,
+         * starting over from the new snapshot if another change got in first.
+         */
+        OPTIMISTIC
+    }
+}
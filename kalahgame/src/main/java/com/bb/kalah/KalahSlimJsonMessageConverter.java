@@ -0,0 +1,71 @@
+package com.bb.kalah;
+
+import com.bb.kalah.request.GameView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Writes games as {@link GameView}, for clients that ask for {@value #MEDIA_TYPE} by name. As the type
+ * is JSON, it has to come before the general JSON converter, so it only takes requests asking for it
+ * exactly and never those that accept anything.
+ */
+class KalahSlimJsonMessageConverter extends AbstractHttpMessageConverter<KalahGame> {
+    static final String MEDIA_TYPE = "application/vnd.kalah.slim+json";
+
+    private final ObjectMapper objectMapper;
+
+    KalahSlimJsonMessageConverter(ObjectMapper objectMapper) {
+        super(MediaType.valueOf(MEDIA_TYPE));
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == KalahGame.class;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return mediaType != null && !mediaType.isWildcardType() && !mediaType.isWildcardSubtype()
+                && super.canWrite(clazz, mediaType);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected KalahGame readInternal(Class<? extends KalahGame> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Games are not read as " + MEDIA_TYPE);
+    }
+
+    @Override
+    protected void writeInternal(KalahGame game, HttpOutputMessage outputMessage) throws IOException {
+        objectMapper.writeValue(outputMessage.getBody(), view(game));
+    }
+
+    static GameView view(KalahGame game) {
+        KalahGameState state = game.getState();
+        KalahPlayer current = state.getCurrentPlayer();
+        return GameView.builder()
+                .gameId(game.getGameId())
+                .name(game.getName())
+                .gameType(game.getGameType().name())
+                .player1Id(state.getPlayer1() == null ? null : state.getPlayer1().getId())
+                .player1Name(state.getPlayer1() == null ? null : state.getPlayer1().getName())
+                .player2Id(state.getPlayer2() == null ? null : state.getPlayer2().getId())
+                .player2Name(state.getPlayer2() == null ? null : state.getPlayer2().getName())
+                .currentPlayerId(current == null ? null : current.getId())
+                .pits(state.getBoard().getPits())
+                .moveNumber(state.getMoveNumber())
+                .result(state.getResult())
+                .build();
+    }
+}
@@ -0,0 +1,150 @@
+package com.bb.kalah;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Open addressing hash map from 128 bit keys, two longs, to slot numbers, kept in primitive arrays so it
+ * costs no object per entry. Collisions are resolved by linear probing, and removing an entry shifts the
+ * entries behind it back, so there are no tombstones. Not thread safe.
+ */
+final class KalahSlotIndex {
+    static final int ABSENT = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] highs;
+    private long[] lows;
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    KalahSlotIndex() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @return the slot of the key, or {@link #ABSENT}.
+     */
+    int get(long high, long low) {
+        for (int i = home(high, low); slots[i] != ABSENT; i = (i + 1) & mask) {
+            if (highs[i] == high && lows[i] == low) {
+                return slots[i];
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * @return the slot the key had before, or {@link #ABSENT}.
+     */
+    int put(long high, long low, int slot) {
+        int i = home(high, low);
+        for (; slots[i] != ABSENT; i = (i + 1) & mask) {
+            if (highs[i] == high && lows[i] == low) {
+                int previous = slots[i];
+                slots[i] = slot;
+                return previous;
+            }
+        }
+        highs[i] = high;
+        lows[i] = low;
+        slots[i] = slot;
+        // Kept at most half full, so probe sequences stay short.
+        if (++size > slots.length >> 1) {
+            rehash(slots.length << 1);
+        }
+        return ABSENT;
+    }
+
+    /**
+     * @return the slot the key had, or {@link #ABSENT}.
+     */
+    int remove(long high, long low) {
+        int i = home(high, low);
+        for (; slots[i] != ABSENT; i = (i + 1) & mask) {
+            if (highs[i] == high && lows[i] == low) {
+                int removed = slots[i];
+                shiftBack(i);
+                size--;
+                return removed;
+            }
+        }
+        return ABSENT;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(IntConsumer action) {
+        for (int slot : slots) {
+            if (slot != ABSENT) {
+                action.accept(slot);
+            }
+        }
+    }
+
+    /**
+     * Moves every entry after the hole, up to the next empty bucket, into the hole if the hole lies between
+     * the entry's home and where it is now.
+     */
+    private void shiftBack(int hole) {
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (slots[i] == ABSENT) {
+                break;
+            }
+            int home = home(highs[i], lows[i]);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                highs[hole] = highs[i];
+                lows[hole] = lows[i];
+                slots[hole] = slots[i];
+                hole = i;
+            }
+        }
+        slots[hole] = ABSENT;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        int[] oldSlots = slots;
+        allocate(capacity);
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != ABSENT) {
+                int j = home(oldHighs[i], oldLows[i]);
+                while (slots[j] != ABSENT) {
+                    j = (j + 1) & mask;
+                }
+                highs[j] = oldHighs[i];
+                lows[j] = oldLows[i];
+                slots[j] = oldSlots[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, ABSENT);
+        mask = capacity - 1;
+    }
+
+    private int home(long high, long low) {
+        return (int) (hash(high, low) & mask);
+    }
+
+    /**
+     * Mixes both halves of the key, so keys that only differ in a few bits still spread over the table.
+     */
+    static long hash(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,471 @@
+package com.bb.kalah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Snapshot of all games in a memory mapped file, read one game at a time when it is first asked for.
+ * Opening a snapshot only reads its header and maps the file, so it takes the same time however many
+ * games it holds, and games nobody asks for are never read at all.
+ * <p>
+ * The file starts with a header, then one fixed size record per game, sorted by game ID so a game is
+ * found by binary search, then the names. A record holds the game and player IDs as two longs each, the
+ * offsets of the names, the flags, the board size and rules, the move number and the pits. A name is its length and
+ * its UTF-8 bytes, and never crosses a boundary of {@value #HEAP_CHUNK_BYTES} bytes, so each chunk of names
+ * is mapped on its own.
+ * <p>
+ * Every game is handed out by {@link #take} only once. From then on the game lives in the store, and the
+ * snapshot counts it as gone, also when the next snapshot is written.
+ */
+final class KalahSnapshot implements Closeable {
+    static final int MAGIC = 0x4B534E50;
+    static final int VERSION = 3;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int HEAP_CHUNK_BYTES = 1 << 30;
+    private static final int NO_NAME = -1;
+
+    private static final int ID_HIGH = 0;
+    private static final int ID_LOW = 8;
+    private static final int PLAYER1_HIGH = 16;
+    private static final int PLAYER2_HIGH = 32;
+    private static final int GAME_NAME = 48;
+    private static final int PLAYER1_NAME = 56;
+    private static final int PLAYER2_NAME = 64;
+    private static final int FLAGS = 72;
+    private static final int GAME_TYPE = 73;
+    private static final int PITS_PER_PLAYER = 74;
+    private static final int STONES_PER_PIT = 76;
+    private static final int MOVE_NUMBER = 80;
+    private static final int PITS = 84;
+
+    private static final int PLAYER_ONE_SEATED = 1;
+    private static final int PLAYER_TWO_SEATED = 1 << 1;
+    private static final int PLAYER_TWO_TO_MOVE = 1 << 2;
+
+    private final FileChannel channel;
+    private final int count;
+    private final int recordBytes;
+    private final int recordsPerChunk;
+    private final long heapOffset;
+    private final MappedByteBuffer[] records;
+    private final MappedByteBuffer[] heap;
+
+    private final AtomicLongArray taken;
+    private final AtomicInteger remaining;
+
+    private KalahSnapshot(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // Read until the header is complete or the file ends.
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a snapshot of version " + VERSION);
+        }
+        this.recordBytes = header.getInt();
+        this.count = header.getInt();
+        this.heapOffset = header.getLong();
+        long heapBytes = header.getLong();
+        if (recordBytes < PITS || count < 0 || heapOffset != HEADER_BYTES + (long) count * recordBytes
+                || channel.size() != heapOffset + heapBytes) {
+            throw new IOException("Snapshot is not complete");
+        }
+
+        this.recordsPerChunk = HEAP_CHUNK_BYTES / recordBytes;
+        this.records = new MappedByteBuffer[(count + recordsPerChunk - 1) / recordsPerChunk];
+        for (int i = 0; i < records.length; i++) {
+            long from = HEADER_BYTES + (long) i * recordsPerChunk * recordBytes;
+            long size = (long) Math.min(recordsPerChunk, count - i * recordsPerChunk) * recordBytes;
+            records[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+        }
+        this.heap = new MappedByteBuffer[(int) ((heapBytes + HEAP_CHUNK_BYTES - 1) / HEAP_CHUNK_BYTES)];
+        for (int i = 0; i < heap.length; i++) {
+            long from = (long) i * HEAP_CHUNK_BYTES;
+            heap[i] = channel.map(FileChannel.MapMode.READ_ONLY, heapOffset + from,
+                    Math.min(HEAP_CHUNK_BYTES, heapBytes - from));
+        }
+        this.taken = new AtomicLongArray((count + 63) >>> 6);
+        this.remaining = new AtomicInteger(count);
+    }
+
+    /**
+     * Maps the snapshot, without reading any of its games.
+     */
+    static KalahSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new KalahSnapshot(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the game, if the snapshot holds it and it has not been taken before, else null.
+     */
+    KalahGame take(String gameId) {
+        UUID id = parse(gameId);
+        int index = id == null ? -1 : find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (index < 0 || !markTaken(index)) {
+            return null;
+        }
+        return read(index);
+    }
+
+    /**
+     * @return games that have not been taken yet.
+     */
+    int remaining() {
+        return remaining.get();
+    }
+
+    /**
+     * @return which games have been taken so far, bit i for game i, which no later take changes.
+     */
+    long[] takenSoFar() {
+        long[] bits = new long[taken.length()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = taken.get(i);
+        }
+        return bits;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes the games, and those of the base snapshot that were not taken by then, as a new snapshot.
+     *
+     * @param base      the snapshot the games not asked for since are still in, or null.
+     * @param baseTaken {@link #takenSoFar()} of the base, taken at the same time the games were collected.
+     */
+    static void write(Path file, List<KalahGame> games, KalahSnapshot base, long[] baseTaken) throws IOException {
+        List<Entry> entries = new ArrayList<>(games.size());
+        int pitsPerPlayer = base == null ? 1 : base.pitsPerPlayer();
+        for (KalahGame game : games) {
+            entries.add(new Entry(game));
+            pitsPerPlayer = Math.max(pitsPerPlayer, game.getState().getBoard().getPitsPerPlayer());
+        }
+        entries.sort(Comparator.comparingLong((Entry entry) -> entry.high).thenComparingLong(entry -> entry.low));
+        int recordBytes = (PITS + 4 * (2 * pitsPerPlayer + 2) + 7) & ~7;
+
+        int count = entries.size();
+        if (base != null) {
+            for (int i = 0; i < base.count; i++) {
+                if ((baseTaken[i >>> 6] & (1L << i)) == 0) {
+                    count++;
+                }
+            }
+        }
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(out, HEADER_BYTES + (long) count * recordBytes, recordBytes);
+            // Both lists are sorted by ID, so merging them keeps the records sorted.
+            int next = 0;
+            for (int i = 0; base != null && i < base.count; i++) {
+                if ((baseTaken[i >>> 6] & (1L << i)) != 0) {
+                    continue;
+                }
+                ByteBuffer record = base.record(i);
+                int offset = base.offset(i);
+                long high = record.getLong(offset + ID_HIGH);
+                long low = record.getLong(offset + ID_LOW);
+                while (next < entries.size() && entries.get(next).before(high, low)) {
+                    writer.write(entries.get(next++));
+                }
+                writer.copy(base, i);
+            }
+            while (next < entries.size()) {
+                writer.write(entries.get(next++));
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(recordBytes).putInt(count)
+                    .putLong(HEADER_BYTES + (long) count * recordBytes).putLong(writer.finish()).flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += out.write(header, position);
+            }
+            out.force(true);
+        }
+    }
+
+    private int pitsPerPlayer() {
+        return (recordBytes - PITS) / 8 - 1;
+    }
+
+    private boolean markTaken(int index) {
+        long bit = 1L << index;
+        while (true) {
+            long bits = taken.get(index >>> 6);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+            if (taken.compareAndSet(index >>> 6, bits, bits | bit)) {
+                remaining.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private int find(long high, long low) {
+        int from = 0;
+        int to = count - 1;
+        while (from <= to) {
+            int middle = (from + to) >>> 1;
+            ByteBuffer record = record(middle);
+            int offset = offset(middle);
+            int compared = Long.compare(record.getLong(offset + ID_HIGH), high);
+            if (compared == 0) {
+                compared = Long.compare(record.getLong(offset + ID_LOW), low);
+            }
+            if (compared < 0) {
+                from = middle + 1;
+            } else if (compared > 0) {
+                to = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private KalahGame read(int index) {
+        ByteBuffer record = record(index);
+        int offset = offset(index);
+        int flags = record.get(offset + FLAGS);
+        KalahPlayer player1 = (flags & PLAYER_ONE_SEATED) == 0 ? null
+                : new KalahPlayer(name(record.getLong(offset + PLAYER1_NAME)), id(record, offset + PLAYER1_HIGH));
+        KalahPlayer player2 = (flags & PLAYER_TWO_SEATED) == 0 ? null
+                : new KalahPlayer(name(record.getLong(offset + PLAYER2_NAME)), id(record, offset + PLAYER2_HIGH));
+        KalahRuleSet rules = KalahRuleSet.forCode(record.get(offset + PITS_PER_PLAYER) & 0xFF);
+        int[] pits = new int[2 * rules.getPitsPerPlayer() + 2];
+        for (int i = 0; i < pits.length; i++) {
+            pits[i] = record.getInt(offset + PITS + 4 * i);
+        }
+        KalahBoard board = new KalahBoard(rules, record.getInt(offset + STONES_PER_PIT), pits);
+        KalahGameState state = new KalahGameState(player1, player2, (flags & PLAYER_TWO_TO_MOVE) != 0, board,
+                KalahGameState.IN_PROGRESS, record.getInt(offset + MOVE_NUMBER));
+        return KalahGame.restore(id(record, offset + ID_HIGH), name(record.getLong(offset + GAME_NAME)),
+                KalahGameType.values()[record.get(offset + GAME_TYPE)], state);
+    }
+
+    private static String id(ByteBuffer record, int offset) {
+        return new UUID(record.getLong(offset), record.getLong(offset + 8)).toString();
+    }
+
+    private String name(long position) {
+        if (position == NO_NAME) {
+            return null;
+        }
+        ByteBuffer chunk = heap[(int) (position / HEAP_CHUNK_BYTES)].duplicate();
+        chunk.position((int) (position % HEAP_CHUNK_BYTES));
+        byte[] bytes = new byte[chunk.getInt()];
+        chunk.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer record(int index) {
+        return records[index / recordsPerChunk];
+    }
+
+    private int offset(int index) {
+        return (index % recordsPerChunk) * recordBytes;
+    }
+
+    private static UUID parse(String gameId) {
+        try {
+            return gameId == null ? null : UUID.fromString(gameId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A game to write, with its ID as the two longs it is sorted by.
+     */
+    private static final class Entry {
+        private final KalahGame game;
+        private final long high;
+        private final long low;
+
+        private Entry(KalahGame game) {
+            UUID id = UUID.fromString(game.getGameId());
+            this.game = game;
+            this.high = id.getMostSignificantBits();
+            this.low = id.getLeastSignificantBits();
+        }
+
+        private boolean before(long high, long low) {
+            int compared = Long.compare(this.high, high);
+            return compared < 0 || compared == 0 && Long.compare(this.low, low) < 0;
+        }
+    }
+
+    /**
+     * Writes the records one after the other from behind the header, and the names from behind the records.
+     */
+    private static final class Writer {
+        private static final int BUFFER_BYTES = 1 << 20;
+
+        private final FileChannel out;
+        private final long heapOffset;
+        private final int recordBytes;
+        private final ByteBuffer records = ByteBuffer.allocate(BUFFER_BYTES);
+        private final ByteBuffer names = ByteBuffer.allocate(BUFFER_BYTES);
+        private long recordPosition = HEADER_BYTES;
+        private long heapPosition;
+        private long heapFlushed;
+
+        private Writer(FileChannel out, long heapOffset, int recordBytes) {
+            this.out = out;
+            this.heapOffset = heapOffset;
+            this.recordBytes = recordBytes;
+        }
+
+        private void write(Entry entry) throws IOException {
+            KalahGameState state = entry.game.getState();
+            KalahBoard board = state.getBoard();
+            ByteBuffer record = startRecord();
+            int start = record.position();
+            record.putLong(entry.high).putLong(entry.low);
+            putId(record, state.getPlayer1());
+            putId(record, state.getPlayer2());
+            record.putLong(name(entry.game.getName()));
+            record.putLong(state.getPlayer1() == null ? NO_NAME : name(state.getPlayer1().getName()));
+            record.putLong(state.getPlayer2() == null ? NO_NAME : name(state.getPlayer2().getName()));
+            int flags = (state.getPlayer1() != null ? PLAYER_ONE_SEATED : 0)
+                    | (state.getPlayer2() != null ? PLAYER_TWO_SEATED : 0)
+                    | (state.isPlayerTwoToMove() ? PLAYER_TWO_TO_MOVE : 0);
+            record.put((byte) flags);
+            record.put((byte) entry.game.getGameType().ordinal());
+            record.put((byte) board.getRules().getCode());
+            record.put((byte) 0);
+            record.putInt(board.getStonesPerPit());
+            record.putInt(state.getMoveNumber());
+            for (int stones : board.getPits()) {
+                record.putInt(stones);
+            }
+            record.position(start + recordBytes);
+        }
+
+        private void copy(KalahSnapshot base, int index) throws IOException {
+            ByteBuffer source = base.record(index);
+            int offset = base.offset(index);
+            ByteBuffer record = startRecord();
+            int start = record.position();
+            for (int i = 0; i < GAME_NAME; i++) {
+                record.put(source.get(offset + i));
+            }
+            record.putLong(name(base, source.getLong(offset + GAME_NAME)));
+            record.putLong(name(base, source.getLong(offset + PLAYER1_NAME)));
+            record.putLong(name(base, source.getLong(offset + PLAYER2_NAME)));
+            int pitsPerPlayer = KalahRuleSet.forCode(source.get(offset + PITS_PER_PLAYER) & 0xFF).getPitsPerPlayer();
+            int pitsEnd = PITS + 4 * (2 * pitsPerPlayer + 2);
+            for (int i = FLAGS; i < pitsEnd; i++) {
+                record.put(source.get(offset + i));
+            }
+            record.position(start + recordBytes);
+        }
+
+        /**
+         * @return bytes taken by the names.
+         */
+        private long finish() throws IOException {
+            flushRecords();
+            flushNames();
+            return heapPosition;
+        }
+
+        private ByteBuffer startRecord() throws IOException {
+            if (records.remaining() < recordBytes) {
+                flushRecords();
+            }
+            // Unused pits stay zero.
+            for (int i = records.position(); i < records.position() + recordBytes; i++) {
+                records.put(i, (byte) 0);
+            }
+            return records;
+        }
+
+        private static void putId(ByteBuffer record, KalahPlayer player) {
+            if (player == null) {
+                record.putLong(0L).putLong(0L);
+            } else {
+                UUID id = UUID.fromString(player.getId());
+                record.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+            }
+        }
+
+        private long name(KalahSnapshot base, long position) throws IOException {
+            return position == NO_NAME ? NO_NAME : name(base.name(position));
+        }
+
+        /**
+         * @return position of the name among the names.
+         */
+        private long name(String name) throws IOException {
+            if (name == null) {
+                return NO_NAME;
+            }
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int length = 4 + bytes.length;
+            long left = HEAP_CHUNK_BYTES - heapPosition % HEAP_CHUNK_BYTES;
+            if (left < length) {
+                // Names don't cross chunks, the rest of this one stays empty.
+                heapPosition += left;
+                flushNames();
+            }
+            if (names.remaining() < length) {
+                flushNames();
+            }
+            long position = heapPosition;
+            if (names.remaining() < length) {
+                writeFully(ByteBuffer.allocate(length).putInt(bytes.length).put(bytes), heapOffset + position);
+                heapFlushed += length;
+            } else {
+                names.putInt(bytes.length).put(bytes);
+            }
+            heapPosition += length;
+            return position;
+        }
+
+        private void flushRecords() throws IOException {
+            int bytes = records.position();
+            writeFully(records, recordPosition);
+            recordPosition += bytes;
+        }
+
+        private void flushNames() throws IOException {
+            long from = heapOffset + heapFlushed;
+            writeFully(names, from);
+            heapFlushed = heapPosition;
+        }
+
+        private void writeFully(ByteBuffer buffer, long position) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.bb.kalah;
+
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Endpoints that hold a request until a game changes. They never hold a request thread meanwhile,
+ * whichever way the game endpoints answer.
+ */
+@RestController
+@RequestMapping("/api/v1/game")
+public class KalahUpdatesController {
+    private KalahService kalahService;
+    private KalahGameEvents kalahGameEvents;
+    private KalahGameWaiters kalahGameWaiters;
+
+    public KalahUpdatesController(KalahService kalahService, KalahGameEvents kalahGameEvents,
+                                  KalahGameWaiters kalahGameWaiters) {
+        this.kalahService = kalahService;
+        this.kalahGameEvents = kalahGameEvents;
+        this.kalahGameWaiters = kalahGameWaiters;
+    }
+
+    @RequestMapping(value = "/{gameId}/events", method = RequestMethod.GET)
+    public SseEmitter subscribe(@PathVariable("gameId") String gameId) {
+        kalahService.getGame(gameId);
+        return kalahGameEvents.subscribe(gameId, () -> kalahService.getGame(gameId).snapshot());
+    }
+
+    @RequestMapping(value = "/{gameId}/await", method = RequestMethod.GET)
+    public DeferredResult<KalahGame> awaitMove(@PathVariable("gameId") String gameId,
+                                               @RequestParam("afterMove") int afterMove) {
+        return kalahGameWaiters.await(gameId, afterMove, () -> kalahService.getGame(gameId).snapshot());
+    }
+}
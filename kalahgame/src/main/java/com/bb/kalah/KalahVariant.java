@@ -0,0 +1,55 @@
+package com.bb.kalah;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * The board a game is played on and the rules it is played by, as asked for when the game is created.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class KalahVariant {
+    public static final KalahVariant STANDARD = new KalahVariant(6, 6, true, true);
+
+    int pitsPerPlayer;
+
+    int stonesPerPit;
+
+    /**
+     * Whether the last stone landing in an own empty house captures the stones in the house across.
+     */
+    boolean captures;
+
+    /**
+     * Whether the last stone also captures when the house across is empty, only with captures.
+     */
+    boolean emptyCaptures;
+
+    /**
+     * @return the variant, with what is not given as in {@link #STANDARD}.
+     */
+    public static KalahVariant of(Integer pitsPerPlayer, Integer stonesPerPit, Boolean captures,
+                                  Boolean emptyCaptures) {
+        boolean capturing = captures == null ? STANDARD.captures : captures;
+        return new KalahVariant(
+                pitsPerPlayer == null ? STANDARD.pitsPerPlayer : pitsPerPlayer,
+                stonesPerPit == null ? STANDARD.stonesPerPit : stonesPerPit,
+                capturing,
+                capturing && (emptyCaptures == null ? STANDARD.emptyCaptures : emptyCaptures));
+    }
+
+    /**
+     * @return true if the rules are those of standard Kalah, whatever the size of the board.
+     */
+    public boolean hasStandardRules() {
+        return captures == STANDARD.captures && emptyCaptures == STANDARD.emptyCaptures;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pits per player are out of range.
+     */
+    KalahRuleSet rules() {
+        return KalahRuleSet.of(pitsPerPlayer, captures, emptyCaptures);
+    }
+}
@@ -0,0 +1,27 @@
+package com.bb.kalah;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.List;
+
+/**
+ * Adds the compact forms of games next to the JSON every client gets unless it asks otherwise.
+ */
+@Configuration
+public class KalahWebConfiguration extends WebMvcConfigurerAdapter {
+    private final ObjectMapper objectMapper;
+
+    public KalahWebConfiguration(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new KalahSlimJsonMessageConverter(objectMapper));
+        // Last, so it is only picked when asked for.
+        converters.add(new KalahBinaryMessageConverter());
+    }
+}
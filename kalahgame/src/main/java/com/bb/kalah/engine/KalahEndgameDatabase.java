@@ -0,0 +1,156 @@
+package com.bb.kalah.engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exact values of all the positions with up to maxStones stones left in the houses, generated by
+ * {@link KalahEndgameGenerator}. The value of a position is the most the side to move can gain on the
+ * opponent from here on, so stones already in the stores don't matter and aren't part of the position.
+ * <p>
+ * Positions are indexed by their combinatorial rank: the houses of the side to move followed by the
+ * opponent's houses split the stones into a composition, which stars and bars turn into a combination
+ * of bar positions. The rank within all the positions with the same number of stones is the combination's
+ * index in the combinatorial number system, offset by the count of all the positions with fewer stones.
+ * <p>
+ * The file is a small header followed by one signed byte per position. It is memory mapped on the first
+ * probe and read in place, so opening the database costs nothing at startup.
+ */
+public final class KalahEndgameDatabase {
+    static final int MAGIC = 0x4B454442;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    private final Path file;
+    private final int pitsPerPlayer;
+    private final int maxStones;
+    private final long[][] binomials;
+    private final long[] offsets;
+
+    private volatile MappedByteBuffer values;
+
+    private KalahEndgameDatabase(Path file, int pitsPerPlayer, int maxStones) {
+        this.file = file;
+        this.pitsPerPlayer = pitsPerPlayer;
+        this.maxStones = maxStones;
+        int houses = pitsPerPlayer * 2;
+        this.binomials = binomials(maxStones + houses);
+        this.offsets = new long[maxStones + 2];
+        for (int stones = 0; stones <= maxStones; stones++) {
+            offsets[stones + 1] = offsets[stones] + binomials[stones + houses - 1][houses - 1];
+        }
+    }
+
+    /**
+     * Reads the header of a database file, the values are only mapped on the first probe.
+     */
+    public static KalahEndgameDatabase open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends.
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException("Not a Kalah endgame database : " + file);
+            }
+            return new KalahEndgameDatabase(file, header.getInt(), header.getInt());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return layout of a database with the number of houses per player and stones, without any values.
+     */
+    static KalahEndgameDatabase layout(int pitsPerPlayer, int maxStones) {
+        return new KalahEndgameDatabase(null, pitsPerPlayer, maxStones);
+    }
+
+    public int getPitsPerPlayer() {
+        return pitsPerPlayer;
+    }
+
+    public int getMaxStones() {
+        return maxStones;
+    }
+
+    /**
+     * @return number of positions in the database.
+     */
+    public long size() {
+        return offsets[maxStones + 1];
+    }
+
+    /**
+     * @param houseStones stones left in all the houses.
+     * @return true if the database has the exact value of positions with this many stones.
+     */
+    public boolean covers(int houseStones) {
+        return houseStones <= maxStones;
+    }
+
+    /**
+     * @param pits all the pits on the board, stores are ignored.
+     * @param side the side to move, PLAYER_ONE or PLAYER_TWO.
+     * @return the most the side to move can gain on the opponent from here on, with perfect play by both.
+     */
+    public int value(int[] pits, int side) {
+        return values().get(HEADER_BYTES + (int) rank(pits, side));
+    }
+
+    /**
+     * @return index of the position, the houses of the side to move first.
+     */
+    long rank(int[] pits, int side) {
+        int moverStart = side == KalahPosition.PLAYER_ONE ? 0 : pitsPerPlayer + 1;
+        int opponentStart = side == KalahPosition.PLAYER_ONE ? pitsPerPlayer + 1 : 0;
+        int houses = pitsPerPlayer * 2;
+        long rank = 0;
+        int stones = 0;
+        for (int i = 0; i < houses - 1; i++) {
+            stones += i < pitsPerPlayer ? pits[moverStart + i] : pits[opponentStart + i - pitsPerPlayer];
+            rank += binomials[stones + i][i + 1];
+        }
+        stones += pits[opponentStart + pitsPerPlayer - 1];
+        return offsets[stones] + rank;
+    }
+
+    private MappedByteBuffer values() {
+        MappedByteBuffer mapped = values;
+        if (mapped == null) {
+            synchronized (this) {
+                mapped = values;
+                if (mapped == null) {
+                    mapped = map();
+                    values = mapped;
+                }
+            }
+        }
+        return mapped;
+    }
+
+    private MappedByteBuffer map() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES + size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long[][] binomials(int n) {
+        long[][] binomials = new long[n + 1][n + 1];
+        for (int i = 0; i <= n; i++) {
+            binomials[i][0] = 1;
+            for (int k = 1; k <= i; k++) {
+                binomials[i][k] = binomials[i - 1][k - 1] + binomials[i - 1][k];
+            }
+        }
+        return binomials;
+    }
+}
@@ -0,0 +1,150 @@
+package com.bb.kalah.engine;
+
+import com.bb.kalah.KalahGameMove;
+import com.bb.kalah.KalahRules;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Builds a {@link KalahEndgameDatabase} offline, by retrograde analysis from the positions that end the game.
+ * Sowing never adds stones to the houses and every move that keeps them all in the houses brings them
+ * closer to the stores, so no position can repeat and every value only depends on the values of positions
+ * that are solved before it.
+ * <p>
+ * Run it with {@code mvn -Pendgame-database compile exec:java}, or directly with the file, the most stones
+ * and optionally the number of houses per player as arguments.
+ */
+@Slf4j
+public final class KalahEndgameGenerator {
+    private static final byte UNKNOWN = Byte.MIN_VALUE;
+
+    // Deep enough for the longest sequence of moves the recursion can follow.
+    private static final long STACK_BYTES = 1L << 28;
+
+    private final KalahEndgameDatabase layout;
+    private final int pitsPerPlayer;
+    private final byte[] values;
+
+    private KalahEndgameGenerator(int pitsPerPlayer, int maxStones) {
+        if (maxStones < 0 || maxStones > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Most stones must be between 0 and " + Byte.MAX_VALUE);
+        }
+        this.layout = KalahEndgameDatabase.layout(pitsPerPlayer, maxStones);
+        if (layout.size() > Integer.MAX_VALUE - KalahEndgameDatabase.HEADER_BYTES) {
+            throw new IllegalArgumentException("Too many positions for " + maxStones + " stones : " + layout.size());
+        }
+        this.pitsPerPlayer = pitsPerPlayer;
+        this.values = new byte[(int) layout.size()];
+        Arrays.fill(values, UNKNOWN);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "kalah-endgame.db");
+        int maxStones = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int pitsPerPlayer = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        Thread generator = new Thread(null, () -> generate(file, pitsPerPlayer, maxStones),
+                "kalah-endgame-generator", STACK_BYTES);
+        generator.start();
+        generator.join();
+    }
+
+    /**
+     * Solves every position with up to maxStones stones in the houses and writes the database file.
+     */
+    public static void generate(Path file, int pitsPerPlayer, int maxStones) {
+        long start = System.nanoTime();
+        KalahEndgameGenerator generator = new KalahEndgameGenerator(pitsPerPlayer, maxStones);
+        generator.solveAll(maxStones);
+        generator.write(file, maxStones);
+        log.info("Solved {} positions with up to {} stones in {} ms, written to {}", generator.values.length,
+                maxStones, (System.nanoTime() - start) / 1_000_000, file);
+    }
+
+    private void solveAll(int maxStones) {
+        int[] pits = new int[(pitsPerPlayer + 1) * 2];
+        for (int stones = 0; stones <= maxStones; stones++) {
+            solveAll(pits, 0, stones);
+        }
+    }
+
+    /**
+     * Solves all the ways to put the stones into the houses from the index onwards, player one to move.
+     */
+    private void solveAll(int[] pits, int house, int stones) {
+        int pitNum = house < pitsPerPlayer ? house : house + 1;
+        if (house == pitsPerPlayer * 2 - 1) {
+            pits[pitNum] = stones;
+            solve(pits, KalahPosition.PLAYER_ONE);
+            return;
+        }
+        for (int count = 0; count <= stones; count++) {
+            pits[pitNum] = count;
+            solveAll(pits, house + 1, stones - count);
+        }
+        pits[pitNum] = 0;
+    }
+
+    /**
+     * @param pits houses of the position, both stores empty.
+     * @return the most the side to move can gain on the opponent from here on.
+     */
+    private int solve(int[] pits, int side) {
+        int index = (int) layout.rank(pits, side);
+        if (values[index] != UNKNOWN) {
+            return values[index];
+        }
+
+        int ownStones = KalahRules.houseStones(pits, pitsPerPlayer, side == KalahPosition.PLAYER_ONE);
+        int opponentStones = KalahRules.houseStones(pits, pitsPerPlayer, side != KalahPosition.PLAYER_ONE);
+        int best;
+        if (ownStones == 0 || opponentStones == 0) {
+            best = ownStones - opponentStones;
+        } else {
+            int ownStore = side == KalahPosition.PLAYER_ONE ? pitsPerPlayer : pits.length - 1;
+            long legalMoves = KalahRules.legalMoves(pits, pitsPerPlayer)
+                    & KalahRules.houseMask(pitsPerPlayer, side == KalahPosition.PLAYER_ONE);
+            best = Integer.MIN_VALUE;
+            for (long remaining = legalMoves; remaining != 0; remaining &= remaining - 1) {
+                int[] child = pits.clone();
+                KalahGameMove move = KalahRules.sow(child, pitsPerPlayer, Long.numberOfTrailingZeros(remaining));
+                int gained = child[ownStore];
+                child[ownStore] = 0;
+                int score = move == KalahGameMove.PLAY_AGAIN
+                        ? gained + solve(child, side)
+                        : gained - solve(child, side ^ 1);
+                best = Math.max(best, score);
+            }
+        }
+        values[index] = (byte) best;
+        return best;
+    }
+
+    private void write(Path file, int maxStones) {
+        ByteBuffer header = ByteBuffer.allocate(KalahEndgameDatabase.HEADER_BYTES);
+        header.putInt(KalahEndgameDatabase.MAGIC)
+                .putInt(KalahEndgameDatabase.VERSION)
+                .putInt(pitsPerPlayer)
+                .putInt(maxStones)
+                .flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer body = ByteBuffer.wrap(values);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
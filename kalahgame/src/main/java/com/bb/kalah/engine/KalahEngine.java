@@ -0,0 +1,202 @@
+package com.bb.kalah.engine;
+
+import com.bb.kalah.KalahRules;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ResourceUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays the computer's moves in single player games.
+ * Zobrist keys and, unless every game gets its own table, transposition tables are shared by all
+ * the games with the same board configuration. With more than one search thread, the helper searches
+ * of all games run on a single fork/join pool. An endgame database, if configured, is opened at startup
+ * but only mapped into memory by the first search that reaches it. Positions in the opening book are
+ * answered without searching.
+ */
+@Slf4j
+@Component
+@ManagedResource(objectName = "kalah:type=Engine,name=KalahEngine")
+public class KalahEngine {
+    private final KalahEngineProperties properties;
+
+    private final ConcurrentMap<Long, KalahZobrist> zobristKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, KalahTranspositionTable> sharedTables = new ConcurrentHashMap<>();
+
+    private final LongAdder tableProbes = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder endgameHits = new LongAdder();
+    private final LongAdder bookHits = new LongAdder();
+    private final LongAdder bookMisses = new LongAdder();
+
+    private final ForkJoinPool searchPool;
+    private final KalahEndgameDatabase endgameDatabase;
+    private final KalahOpeningBook openingBook;
+
+    public KalahEngine() {
+        this(new KalahEngineProperties());
+    }
+
+    @Autowired
+    public KalahEngine(KalahEngineProperties properties) {
+        this.properties = properties;
+        this.searchPool = properties.getSearchThreads() > 1
+                ? new ForkJoinPool(properties.getPoolThreads(), KalahEngine::newSearchThread, null, false)
+                : null;
+        this.endgameDatabase = properties.getEndgameDatabase() == null || properties.getEndgameDatabase().isEmpty()
+                ? null
+                : KalahEndgameDatabase.open(Paths.get(properties.getEndgameDatabase()));
+        if (endgameDatabase != null) {
+            log.info("Endgame database for {} pits with up to {} stones, {} positions",
+                    endgameDatabase.getPitsPerPlayer(), endgameDatabase.getMaxStones(), endgameDatabase.size());
+        }
+        this.openingBook = properties.getOpeningBook() == null || properties.getOpeningBook().isEmpty()
+                ? null
+                : readOpeningBook(properties.getOpeningBook());
+        if (openingBook != null) {
+            log.info("Opening book for {} pits and {} stones up to ply {}, {} positions",
+                    openingBook.getPitsPerPlayer(), openingBook.getStonesPerPit(), openingBook.getPlies(),
+                    openingBook.size());
+        }
+    }
+
+    private static KalahOpeningBook readOpeningBook(String location) {
+        try (InputStream in = ResourceUtils.getURL(location).openStream()) {
+            return KalahOpeningBook.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ForkJoinWorkerThread newSearchThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("kalah-search-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (searchPool != null) {
+            searchPool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param pitsPerPlayer number of houses on each side of the board.
+     * @param stonesPerPit  number of stones in every house at the start of the game.
+     * @return the transposition table for a game, to be passed to every search of that game.
+     */
+    public KalahTranspositionTable tableFor(int pitsPerPlayer, int stonesPerPit) {
+        if (properties.getTableScope() == KalahEngineProperties.TableScope.GAME) {
+            return new KalahTranspositionTable(properties.getGameTableEntries());
+        }
+        return sharedTables.computeIfAbsent(configuration(pitsPerPlayer, stonesPerPit),
+                key -> new KalahTranspositionTable(properties.getTableEntries()));
+    }
+
+    /**
+     * @param pits          all the pits on the board, houses and stores included.
+     * @param pitsPerPlayer number of houses on each side of the board.
+     * @param stonesPerPit  number of stones in every house at the start of the game.
+     * @param side          the side to move, PLAYER_ONE or PLAYER_TWO.
+     * @param table         the game's transposition table.
+     * @return index of the pit to play within the configured time budget.
+     */
+    public int bestMove(int[] pits, int pitsPerPlayer, int stonesPerPit, int side, KalahTranspositionTable table) {
+        if (openingBook != null && openingBook.covers(pitsPerPlayer, stonesPerPit)) {
+            int move = openingBook.move(zobristFor(pitsPerPlayer, stonesPerPit).hash(pits, side));
+            long legalMoves = KalahRules.legalMoves(pits, pitsPerPlayer)
+                    & KalahRules.houseMask(pitsPerPlayer, side == KalahPosition.PLAYER_ONE);
+            if (move >= 0 && (legalMoves & (1L << move)) != 0) {
+                bookHits.increment();
+                log.debug("Engine plays pit {} from the opening book", move);
+                return move;
+            }
+            bookMisses.increment();
+        }
+        int helpers = searchPool == null ? 0 : properties.getSearchThreads() - 1;
+        KalahEndgameDatabase endgame = endgameDatabase != null && endgameDatabase.getPitsPerPlayer() == pitsPerPlayer
+                ? endgameDatabase
+                : null;
+        KalahParallelSearch search = new KalahParallelSearch(zobristFor(pitsPerPlayer, stonesPerPit), table,
+                endgame, properties.getMaxDepth(), helpers, searchPool);
+        int move = search.bestMove(pits, side, TimeUnit.MILLISECONDS.toNanos(properties.getMoveTimeMillis()));
+        tableProbes.add(search.getProbes());
+        tableHits.add(search.getHits());
+        endgameHits.add(search.getEndgameHits());
+        log.debug("Engine plays pit {} after {} nodes, depth {}", move, search.getNodes(), search.getCompletedDepth());
+        return move;
+    }
+
+    KalahZobrist zobristFor(int pitsPerPlayer, int stonesPerPit) {
+        return zobristKeys.computeIfAbsent(configuration(pitsPerPlayer, stonesPerPit),
+                key -> new KalahZobrist(pitsPerPlayer, pitsPerPlayer * stonesPerPit * 2));
+    }
+
+    private static long configuration(int pitsPerPlayer, int stonesPerPit) {
+        return ((long) pitsPerPlayer << 32) | stonesPerPit;
+    }
+
+    @ManagedAttribute(description = "Transposition table probes of all searches")
+    public long getTableProbes() {
+        return tableProbes.sum();
+    }
+
+    @ManagedAttribute(description = "Transposition table probes that found the position")
+    public long getTableHits() {
+        return tableHits.sum();
+    }
+
+    @ManagedAttribute(description = "Share of transposition table probes that found the position")
+    public double getTableHitRate() {
+        long probes = tableProbes.sum();
+        return probes == 0 ? 0.0 : (double) tableHits.sum() / probes;
+    }
+
+    @ManagedAttribute(description = "Positions of all searches scored from the endgame database")
+    public long getEndgameHits() {
+        return endgameHits.sum();
+    }
+
+    @ManagedAttribute(description = "Moves played from the opening book")
+    public long getBookHits() {
+        return bookHits.sum();
+    }
+
+    @ManagedAttribute(description = "Moves searched in games the opening book was made for")
+    public long getBookMisses() {
+        return bookMisses.sum();
+    }
+
+    @ManagedAttribute(description = "Share of the moves in games the opening book was made for played from the book")
+    public double getBookHitRate() {
+        long moves = bookHits.sum() + bookMisses.sum();
+        return moves == 0 ? 0.0 : (double) bookHits.sum() / moves;
+    }
+
+    @ManagedAttribute(description = "Bytes used by the tables shared between games")
+    public long getSharedTableMemoryBytes() {
+        return sharedTables.values().stream().mapToLong(KalahTranspositionTable::getMemoryBytes).sum();
+    }
+
+    @ManagedAttribute(description = "Bytes used by the table of each single player game, if tables are per game")
+    public long getGameTableMemoryBytes() {
+        return properties.getTableScope() == KalahEngineProperties.TableScope.GAME
+                ? KalahTranspositionTable.memoryBytes(properties.getGameTableEntries())
+                : 0L;
+    }
+}
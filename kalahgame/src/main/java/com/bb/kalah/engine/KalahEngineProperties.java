@@ -0,0 +1,60 @@
+package com.bb.kalah.engine;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "kalah.engine")
+public class KalahEngineProperties {
+    /**
+     * Time the computer player may think about a single move.
+     */
+    private long moveTimeMillis = 200;
+
+    /**
+     * Deepest iteration of the search, in plies.
+     */
+    private int maxDepth = 48;
+
+    /**
+     * Whether transposition tables are shared by all games with the same board configuration or kept per game.
+     */
+    private TableScope tableScope = TableScope.CONFIGURATION;
+
+    /**
+     * Entries of each shared transposition table, 16 bytes each, rounded up to a power of two.
+     */
+    private int tableEntries = 1 << 20;
+
+    /**
+     * Entries of the transposition table of each game, if tables are kept per game.
+     */
+    private int gameTableEntries = 1 << 14;
+
+    /**
+     * Threads searching each move of the computer player, more than one runs helper searches on the shared pool.
+     */
+    private int searchThreads = 1;
+
+    /**
+     * Threads of the pool shared by the helper searches of all games.
+     */
+    private int poolThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Endgame database file made by KalahEndgameGenerator, used by the games with the same number of houses.
+     * Searches solve the endgames themselves if it is not set.
+     */
+    private String endgameDatabase;
+
+    /**
+     * Opening book made by KalahOpeningBookGenerator, read once at startup. Empty to search every move.
+     */
+    private String openingBook = "classpath:kalah-opening-book.bin";
+
+    public enum TableScope {
+        GAME, CONFIGURATION
+    }
+}
@@ -0,0 +1,111 @@
+package com.bb.kalah.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Moves for the opening positions of one board configuration, made by {@link KalahOpeningBookGenerator}.
+ * Positions are identified by their {@link KalahZobrist} hash, which is stable between runs.
+ * <p>
+ * The binary format is a header with the board configuration and the number of positions,
+ * followed by the hashes in ascending order and then one byte per position with the move to play.
+ * The whole book is read into two arrays once, and a lookup is a binary search over the hashes.
+ */
+public final class KalahOpeningBook {
+    static final int MAGIC = 0x4B4F424B;
+    static final int VERSION = 1;
+
+    private final int pitsPerPlayer;
+    private final int stonesPerPit;
+    private final int plies;
+    private final long[] hashes;
+    private final byte[] moves;
+
+    /**
+     * @param hashes hashes of the positions, in ascending order.
+     * @param moves  pit to play in the position with the hash of the same index.
+     */
+    KalahOpeningBook(int pitsPerPlayer, int stonesPerPit, int plies, long[] hashes, byte[] moves) {
+        this.pitsPerPlayer = pitsPerPlayer;
+        this.stonesPerPit = stonesPerPit;
+        this.plies = plies;
+        this.hashes = hashes;
+        this.moves = moves;
+    }
+
+    public static KalahOpeningBook read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IllegalArgumentException("Not a Kalah opening book");
+        }
+        int pitsPerPlayer = in.readInt();
+        int stonesPerPit = in.readInt();
+        int plies = in.readInt();
+        long[] hashes = new long[in.readInt()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = in.readLong();
+        }
+        byte[] moves = new byte[hashes.length];
+        in.readFully(moves);
+        return new KalahOpeningBook(pitsPerPlayer, stonesPerPit, plies, hashes, moves);
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(pitsPerPlayer);
+        out.writeInt(stonesPerPit);
+        out.writeInt(plies);
+        out.writeInt(hashes.length);
+        for (long hash : hashes) {
+            out.writeLong(hash);
+        }
+        out.write(moves);
+        out.flush();
+    }
+
+    public int getPitsPerPlayer() {
+        return pitsPerPlayer;
+    }
+
+    public int getStonesPerPit() {
+        return stonesPerPit;
+    }
+
+    /**
+     * @return plies from the start of the game the book covers.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * @return number of positions in the book.
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    /**
+     * @return true if the book was made for games with this board configuration.
+     */
+    public boolean covers(int pitsPerPlayer, int stonesPerPit) {
+        return this.pitsPerPlayer == pitsPerPlayer && this.stonesPerPit == stonesPerPit;
+    }
+
+    /**
+     * @param hash {@link KalahZobrist} hash of the position, side to move included.
+     * @return pit to play, or -1 if the position is not in the book.
+     */
+    public int move(long hash) {
+        int index = Arrays.binarySearch(hashes, hash);
+        return index < 0 ? -1 : moves[index];
+    }
+}
@@ -0,0 +1,124 @@
+package com.bb.kalah.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a {@link KalahOpeningBook} offline: every position reachable within the given number of plies
+ * from the start of the game is searched to a fixed depth, so the book is the same on every run.
+ * <p>
+ * Run it with {@code mvn -Popening-book compile exec:java}, or directly with the file, the plies,
+ * the search depth and optionally the number of houses per player and stones per house as arguments.
+ */
+@Slf4j
+public final class KalahOpeningBookGenerator {
+    // Searches stop at the depth, never at the clock.
+    private static final long TIME_BUDGET = TimeUnit.DAYS.toNanos(1);
+
+    private final int pitsPerPlayer;
+    private final int stonesPerPit;
+    private final KalahZobrist zobrist;
+    private final Map<Long, int[]> positions = new HashMap<>();
+    private final Map<Long, Integer> exploredPlies = new HashMap<>();
+
+    private KalahOpeningBookGenerator(int pitsPerPlayer, int stonesPerPit) {
+        this.pitsPerPlayer = pitsPerPlayer;
+        this.stonesPerPit = stonesPerPit;
+        this.zobrist = new KalahZobrist(pitsPerPlayer, pitsPerPlayer * stonesPerPit * 2);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "kalah-opening-book.bin");
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+        int pitsPerPlayer = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+        int stonesPerPit = args.length > 4 ? Integer.parseInt(args[4]) : 6;
+
+        long start = System.nanoTime();
+        KalahOpeningBook book = generate(pitsPerPlayer, stonesPerPit, plies, depth);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            book.write(out);
+        }
+        log.info("Searched {} positions up to ply {} at depth {} in {} ms, written to {}", book.size(), plies, depth,
+                (System.nanoTime() - start) / 1_000_000, file);
+    }
+
+    /**
+     * @param plies moves from the start of the game the book covers, an extra turn counts as a ply of its own.
+     * @param depth depth of the search of every position, in plies.
+     */
+    public static KalahOpeningBook generate(int pitsPerPlayer, int stonesPerPit, int plies, int depth) {
+        KalahOpeningBookGenerator generator = new KalahOpeningBookGenerator(pitsPerPlayer, stonesPerPit);
+        KalahPosition position = new KalahPosition(generator.zobrist, Math.max(plies, 1));
+        position.load(startingPits(pitsPerPlayer, stonesPerPit), KalahPosition.PLAYER_ONE);
+        generator.collect(position, plies);
+        return generator.search(plies, depth);
+    }
+
+    private static int[] startingPits(int pitsPerPlayer, int stonesPerPit) {
+        int[] pits = new int[(pitsPerPlayer + 1) * 2];
+        Arrays.fill(pits, stonesPerPit);
+        pits[pitsPerPlayer] = 0;
+        pits[pits.length - 1] = 0;
+        return pits;
+    }
+
+    private void collect(KalahPosition position, int pliesLeft) {
+        if (pliesLeft == 0 || position.isGameOver()) {
+            return;
+        }
+        // Positions reached by different move orders are searched once, and explored again only if reached sooner.
+        Integer explored = exploredPlies.get(position.getHash());
+        if (explored != null && explored >= pliesLeft) {
+            return;
+        }
+        exploredPlies.put(position.getHash(), pliesLeft);
+        int[] pits = new int[(pitsPerPlayer + 1) * 2];
+        for (int i = 0; i < pits.length; i++) {
+            pits[i] = position.getStones(i);
+        }
+        positions.put(position.getHash(), withSide(pits, position.getSide()));
+        for (long moves = position.legalMoves(); moves != 0; moves &= moves - 1) {
+            position.make(Long.numberOfTrailingZeros(moves));
+            collect(position, pliesLeft - 1);
+            position.unmake();
+        }
+    }
+
+    private KalahOpeningBook search(int plies, int depth) {
+        KalahTranspositionTable table = new KalahTranspositionTable(1 << 22);
+        KalahSearch search = new KalahSearch(zobrist, table, depth);
+        long[] hashes = new long[positions.size()];
+        int index = 0;
+        for (long hash : positions.keySet()) {
+            hashes[index++] = hash;
+        }
+        Arrays.sort(hashes);
+        byte[] moves = new byte[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            int[] position = positions.get(hashes[i]);
+            int side = position[position.length - 1];
+            moves[i] = (byte) search.bestMove(Arrays.copyOf(position, position.length - 1), side, TIME_BUDGET);
+        }
+        return new KalahOpeningBook(pitsPerPlayer, stonesPerPit, plies, hashes, moves);
+    }
+
+    private static int[] withSide(int[] pits, int side) {
+        int[] position = Arrays.copyOf(pits, pits.length + 1);
+        position[pits.length] = side;
+        return position;
+    }
+}
@@ -0,0 +1,131 @@
+package com.bb.kalah.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lazy SMP search: helper searches run on a shared fork/join pool next to the main search, all of them
+ * on the same transposition table. The helpers start at alternating depths, so they fill the table
+ * with results the main search picks up instead of repeating the same work. Only the main search's
+ * move is played; the helpers are stopped as soon as it returns, and those the pool hasn't started yet by
+ * then never start.
+ */
+public final class KalahParallelSearch {
+    private final KalahTranspositionTable table;
+    private final KalahSearch main;
+    private final KalahSearch[] helpers;
+    private final ForkJoinTask<?>[] tasks;
+    private final AtomicIntegerArray started;
+    private final ForkJoinPool pool;
+
+    private long nodes;
+
+    /**
+     * @param zobrist  keys of the board configuration.
+     * @param table    transposition table shared by all the searches.
+     * @param maxDepth deepest iteration of the search, in plies.
+     * @param helpers  number of helper searches to run on the pool.
+     * @param pool     pool shared with the searches of other games.
+     */
+    public KalahParallelSearch(KalahZobrist zobrist, KalahTranspositionTable table, int maxDepth,
+                               int helpers, ForkJoinPool pool) {
+        this(zobrist, table, null, maxDepth, helpers, pool);
+    }
+
+    /**
+     * @param zobrist  keys of the board configuration.
+     * @param table    transposition table shared by all the searches.
+     * @param endgame endgame database with the same number of houses, or null.
+     * @param maxDepth deepest iteration of the search, in plies.
+     * @param helpers  number of helper searches to run on the pool.
+     * @param pool     pool shared with the searches of other games.
+     */
+    public KalahParallelSearch(KalahZobrist zobrist, KalahTranspositionTable table, KalahEndgameDatabase endgame,
+                               int maxDepth, int helpers, ForkJoinPool pool) {
+        this.table = table;
+        this.main = new KalahSearch(zobrist, table, endgame, maxDepth);
+        this.helpers = new KalahSearch[helpers];
+        for (int i = 0; i < helpers; i++) {
+            this.helpers[i] = new KalahSearch(zobrist, table, endgame, maxDepth);
+        }
+        this.tasks = new ForkJoinTask<?>[helpers];
+        this.started = new AtomicIntegerArray(helpers);
+        this.pool = pool;
+    }
+
+    /**
+     * Searches a single move, the instance can't be reused afterwards as its helpers stay stopped.
+     *
+     * @param pits            all the pits on the board, houses and stores included.
+     * @param side            the side to move, PLAYER_ONE or PLAYER_TWO.
+     * @param timeBudgetNanos time the search may take.
+     * @return index of the pit to play.
+     */
+    public int bestMove(int[] pits, int side, long timeBudgetNanos) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        table.newSearch();
+        for (int i = 0; i < helpers.length; i++) {
+            KalahSearch helper = helpers[i];
+            int index = i;
+            int firstDepth = 1 + ((i + 1) & 1);
+            tasks[i] = pool.submit(() -> {
+                if (started.compareAndSet(index, 0, 1)) {
+                    helper.search(pits, side, deadline, firstDepth);
+                }
+            });
+        }
+
+        int move = main.search(pits, side, deadline, 1);
+
+        nodes = main.getNodes();
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i].stop();
+        }
+        for (int i = 0; i < helpers.length; i++) {
+            // A helper still queued behind the searches of other games is dropped instead of waited for.
+            if (started.compareAndSet(i, 0, 1)) {
+                tasks[i].cancel(false);
+            } else {
+                tasks[i].quietlyJoin();
+                nodes += helpers[i].getNodes();
+            }
+        }
+        return move;
+    }
+
+    /**
+     * @return nodes searched by the main search and all the helpers.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int getCompletedDepth() {
+        return main.getCompletedDepth();
+    }
+
+    public long getProbes() {
+        long probes = main.getProbes();
+        for (KalahSearch helper : helpers) {
+            probes += helper.getProbes();
+        }
+        return probes;
+    }
+
+    public long getHits() {
+        long hits = main.getHits();
+        for (KalahSearch helper : helpers) {
+            hits += helper.getHits();
+        }
+        return hits;
+    }
+
+    public long getEndgameHits() {
+        long endgameHits = main.getEndgameHits();
+        for (KalahSearch helper : helpers) {
+            endgameHits += helper.getEndgameHits();
+        }
+        return endgameHits;
+    }
+}
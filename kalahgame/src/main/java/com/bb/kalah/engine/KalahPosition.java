@@ -0,0 +1,174 @@
+package com.bb.kalah.engine;
+
+import com.bb.kalah.KalahGameMove;
+import com.bb.kalah.KalahRules;
+
+/**
+ * Mutable position used by the search. Moves are made and unmade in place, and the pits before
+ * every move are kept in a preallocated history, so walking the game tree does not allocate.
+ * The Zobrist hash of the position is updated with every move from the pits that changed.
+ */
+public final class KalahPosition {
+    public static final int PLAYER_ONE = 0;
+    public static final int PLAYER_TWO = 1;
+
+    private final KalahZobrist zobrist;
+    private final int pitsPerPlayer;
+    private final int[] pits;
+    private final long[] houseMasks;
+
+    private final int[][] history;
+    private final int[] sideHistory;
+    private final long[] hashHistory;
+    private int ply;
+    private int side;
+    private long hash;
+    private int stones;
+
+    /**
+     * @param zobrist keys of the board configuration.
+     * @param maxPly  most moves that can be made before unmaking them again.
+     */
+    public KalahPosition(KalahZobrist zobrist, int maxPly) {
+        this.zobrist = zobrist;
+        this.pitsPerPlayer = zobrist.getPitsPerPlayer();
+        this.pits = new int[(pitsPerPlayer + 1) * 2];
+        this.houseMasks = new long[]{
+                KalahRules.houseMask(pitsPerPlayer, true),
+                KalahRules.houseMask(pitsPerPlayer, false)
+        };
+        this.history = new int[maxPly][pits.length];
+        this.sideHistory = new int[maxPly];
+        this.hashHistory = new long[maxPly];
+    }
+
+    /**
+     * Sets up the position from a board, discarding the move history.
+     *
+     * @param board      all the pits on the board, houses and stores included.
+     * @param sideToMove PLAYER_ONE or PLAYER_TWO.
+     */
+    public void load(int[] board, int sideToMove) {
+        int stones = 0;
+        for (int i = 0; i < pits.length; i++) {
+            stones += board[i];
+        }
+        if (stones > zobrist.getMaxStones()) {
+            throw new IllegalArgumentException("Board has more than " + zobrist.getMaxStones() + " stones");
+        }
+        System.arraycopy(board, 0, pits, 0, pits.length);
+        this.stones = stones;
+        side = sideToMove;
+        hash = zobrist.hash(pits, side);
+        ply = 0;
+    }
+
+    public int getPitsPerPlayer() {
+        return pitsPerPlayer;
+    }
+
+    public int getSide() {
+        return side;
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public int getStones(int pitNum) {
+        return pits[pitNum];
+    }
+
+    /**
+     * @return bitmask of the legal moves for the side to move.
+     */
+    public long legalMoves() {
+        return KalahRules.legalMoves(pits, pitsPerPlayer) & houseMasks[side];
+    }
+
+    /**
+     * @return true if the move ends in the own store and the side to move plays again.
+     */
+    public boolean isPlayAgain(int pitNum) {
+        return KalahRules.isPlayAgain(pits, pitsPerPlayer, pitNum);
+    }
+
+    /**
+     * Makes a legal move for the side to move.
+     *
+     * @return the GameMove, the side to move only changes if it is not PLAY_AGAIN.
+     */
+    public KalahGameMove make(int pitNum) {
+        int[] previous = history[ply];
+        System.arraycopy(pits, 0, previous, 0, pits.length);
+        sideHistory[ply] = side;
+        hashHistory[ply] = hash;
+        ply++;
+
+        KalahGameMove move = KalahRules.sow(pits, pitsPerPlayer, pitNum);
+        for (int i = 0; i < pits.length; i++) {
+            if (pits[i] != previous[i]) {
+                hash ^= zobrist.key(i, previous[i]) ^ zobrist.key(i, pits[i]);
+            }
+        }
+        if (move != KalahGameMove.PLAY_AGAIN) {
+            side ^= 1;
+            hash ^= zobrist.sideKey();
+        }
+        return move;
+    }
+
+    /**
+     * Takes back the last move made.
+     */
+    public void unmake() {
+        ply--;
+        System.arraycopy(history[ply], 0, pits, 0, pits.length);
+        side = sideHistory[ply];
+        hash = hashHistory[ply];
+    }
+
+    /**
+     * @return true if either player has no stones left in their houses.
+     */
+    public boolean isGameOver() {
+        return KalahRules.hasGameEnded(pits, pitsPerPlayer);
+    }
+
+    /**
+     * @return stones left in all the houses.
+     */
+    public int houseStones() {
+        return stones - pits[pitsPerPlayer] - pits[pits.length - 1];
+    }
+
+    /**
+     * @param database endgame database of the board configuration that covers the stones left in the houses.
+     * @return final store difference with perfect play from the point of view of the side to move.
+     */
+    public int endgameScore(KalahEndgameDatabase database) {
+        return score() + database.value(pits, side);
+    }
+
+    /**
+     * @return store difference from the point of view of the side to move.
+     */
+    public int score() {
+        int difference = pits[pitsPerPlayer] - pits[pits.length - 1];
+        return side == PLAYER_ONE ? difference : -difference;
+    }
+
+    /**
+     * @return final store difference from the point of view of the side to move, once the remaining
+     * stones in the houses are collected into their owners' stores.
+     */
+    public int finalScore() {
+        int difference = pits[pitsPerPlayer] + KalahRules.houseStones(pits, pitsPerPlayer, true)
+                - pits[pits.length - 1] - KalahRules.houseStones(pits, pitsPerPlayer, false);
+        return side == PLAYER_ONE ? difference : -difference;
+    }
+}
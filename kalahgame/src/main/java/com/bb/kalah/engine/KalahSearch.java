@@ -0,0 +1,268 @@
+package com.bb.kalah.engine;
+
+import lombok.Getter;
+
+/**
+ * Iterative deepening alpha-beta search over a {@link KalahPosition}.
+ * Moves that give an extra turn are tried first, after the best move of the previous iteration
+ * or the one remembered in the transposition table.
+ * A search instance is not thread safe, but it can be reused for consecutive moves of the same board configuration.
+ */
+public final class KalahSearch {
+    private static final int INFINITY = 1 << 20;
+
+    // The clock and the stop flag are checked once every 1024 nodes.
+    private static final int CLOCK_CHECK_MASK = 1023;
+
+    private final KalahPosition position;
+    private final KalahTranspositionTable table;
+    private final KalahEndgameDatabase endgame;
+    private final int maxDepth;
+    private final int[][] moves;
+
+    @Getter
+    private long nodes;
+
+    @Getter
+    private int completedDepth;
+
+    @Getter
+    private long probes;
+
+    @Getter
+    private long hits;
+
+    @Getter
+    private long endgameHits;
+
+    private long deadline;
+    private boolean aborted;
+    private boolean reachedHorizon;
+    private volatile boolean stopped;
+
+    /**
+     * @param zobrist  keys of the board configuration.
+     * @param table    transposition table, which may be shared with other searches.
+     * @param maxDepth deepest iteration of the search, in plies.
+     */
+    public KalahSearch(KalahZobrist zobrist, KalahTranspositionTable table, int maxDepth) {
+        this(zobrist, table, null, maxDepth);
+    }
+
+    /**
+     * @param zobrist  keys of the board configuration.
+     * @param table    transposition table, which may be shared with other searches.
+     * @param endgame  endgame database with the same number of houses, or null to search endgames too.
+     * @param maxDepth deepest iteration of the search, in plies.
+     */
+    public KalahSearch(KalahZobrist zobrist, KalahTranspositionTable table, KalahEndgameDatabase endgame,
+                       int maxDepth) {
+        if (endgame != null && endgame.getPitsPerPlayer() != zobrist.getPitsPerPlayer()) {
+            throw new IllegalArgumentException("Endgame database is for " + endgame.getPitsPerPlayer() + " pits");
+        }
+        this.position = new KalahPosition(zobrist, maxDepth);
+        this.table = table;
+        this.endgame = endgame;
+        this.maxDepth = maxDepth;
+        this.moves = new int[maxDepth][zobrist.getPitsPerPlayer()];
+    }
+
+    /**
+     * Searches deeper and deeper until the time budget is used up or the game is solved.
+     *
+     * @param pits            all the pits on the board, houses and stores included.
+     * @param side            the side to move, PLAYER_ONE or PLAYER_TWO.
+     * @param timeBudgetNanos time the search may take.
+     * @return index of the pit to play, from the last completed iteration.
+     */
+    public int bestMove(int[] pits, int side, long timeBudgetNanos) {
+        table.newSearch();
+        return search(pits, side, System.nanoTime() + timeBudgetNanos, 1);
+    }
+
+    /**
+     * Makes a running search return its best move at the next clock check. Once stopped, the search stays stopped.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @param deadlineNanos {@link System#nanoTime()} at which the search has to return.
+     * @param firstDepth    depth of the first iteration, helpers of a parallel search start at different depths.
+     * @return index of the pit to play, from the last completed iteration.
+     */
+    int search(int[] pits, int side, long deadlineNanos, int firstDepth) {
+        position.load(pits, side);
+        deadline = deadlineNanos;
+        nodes = 0;
+        probes = 0;
+        hits = 0;
+        endgameHits = 0;
+        completedDepth = 0;
+        aborted = false;
+
+        long legalMoves = position.legalMoves();
+        if (legalMoves == 0) {
+            throw new IllegalStateException("No legal moves for side " + side);
+        }
+        int bestMove = Long.numberOfTrailingZeros(legalMoves);
+        if (Long.bitCount(legalMoves) == 1) {
+            return bestMove;
+        }
+
+        for (int depth = firstDepth; depth <= maxDepth; depth++) {
+            reachedHorizon = false;
+            int move = searchRoot(depth, bestMove);
+            if (aborted) {
+                break;
+            }
+            bestMove = move;
+            completedDepth = depth;
+            if (!reachedHorizon) {
+                // Every line ended the game, so the result is exact and deeper iterations can't change it.
+                break;
+            }
+        }
+        table.record(probes, hits);
+        return bestMove;
+    }
+
+    private int searchRoot(int depth, int previousBest) {
+        int count = orderMoves(0, previousBest);
+        int alpha = -INFINITY;
+        int bestMove = moves[0][0];
+        for (int i = 0; i < count; i++) {
+            int move = moves[0][i];
+            int score = searchMove(move, depth, alpha, INFINITY);
+            if (aborted) {
+                return bestMove;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+            }
+        }
+        return bestMove;
+    }
+
+    private int search(int depth, int alpha, int beta) {
+        if ((++nodes & CLOCK_CHECK_MASK) == 0 && (stopped || System.nanoTime() - deadline > 0)) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (position.isGameOver()) {
+            return position.finalScore();
+        }
+        if (endgame != null && endgame.covers(position.houseStones())) {
+            // Exact with perfect play, so like the end of the game it doesn't count as reaching the horizon.
+            endgameHits++;
+            return position.endgameScore(endgame);
+        }
+        if (depth == 0) {
+            reachedHorizon = true;
+            return position.score();
+        }
+
+        long hash = position.getHash();
+        int hashMove = -1;
+        probes++;
+        long entry = table.probe(hash);
+        if (entry != 0L) {
+            hits++;
+            int entryDepth = KalahTranspositionTable.depth(entry);
+            int score = KalahTranspositionTable.score(entry);
+            int bound = KalahTranspositionTable.bound(entry);
+            if (entryDepth >= depth && (bound == KalahTranspositionTable.EXACT
+                    || (bound == KalahTranspositionTable.LOWER_BOUND && score >= beta)
+                    || (bound == KalahTranspositionTable.UPPER_BOUND && score <= alpha))) {
+                if (entryDepth != KalahTranspositionTable.SOLVED_DEPTH) {
+                    reachedHorizon = true;
+                }
+                return score;
+            }
+            if (KalahTranspositionTable.move(entry) != KalahTranspositionTable.NO_MOVE) {
+                hashMove = KalahTranspositionTable.move(entry);
+            }
+        }
+
+        // Track whether this subtree reaches the horizon, so results that are exact at any depth can be stored as such.
+        boolean outerReachedHorizon = reachedHorizon;
+        reachedHorizon = false;
+
+        int ply = position.getPly();
+        int count = orderMoves(ply, hashMove);
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMove = KalahTranspositionTable.NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[ply][i];
+            int score = searchMove(move, depth, alpha, beta);
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                if (best > alpha) {
+                    alpha = best;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = KalahTranspositionTable.EXACT;
+        if (best <= originalAlpha) {
+            bound = KalahTranspositionTable.UPPER_BOUND;
+        } else if (best >= beta) {
+            bound = KalahTranspositionTable.LOWER_BOUND;
+        }
+        table.store(hash, reachedHorizon ? depth : KalahTranspositionTable.SOLVED_DEPTH, best, bound, bestMove);
+        reachedHorizon |= outerReachedHorizon;
+        return best;
+    }
+
+    /**
+     * Scores a move from the point of view of the side making it. After an extra turn the same
+     * side is still to move, so the child score is only negated if the turn passes.
+     */
+    private int searchMove(int move, int depth, int alpha, int beta) {
+        int side = position.getSide();
+        position.make(move);
+        int score = position.getSide() == side
+                ? search(depth - 1, alpha, beta)
+                : -search(depth - 1, -beta, -alpha);
+        position.unmake();
+        return score;
+    }
+
+    /**
+     * Fills the move list of the ply with the first move, if legal, then the extra turn moves and then the rest.
+     *
+     * @return number of moves in the list.
+     */
+    private int orderMoves(int ply, int firstMove) {
+        int[] list = moves[ply];
+        long legalMoves = position.legalMoves();
+        int count = 0;
+        if (firstMove >= 0 && (legalMoves & (1L << firstMove)) != 0) {
+            list[count++] = firstMove;
+            legalMoves &= ~(1L << firstMove);
+        }
+        for (long remaining = legalMoves; remaining != 0; remaining &= remaining - 1) {
+            int pitNum = Long.numberOfTrailingZeros(remaining);
+            if (position.isPlayAgain(pitNum)) {
+                list[count++] = pitNum;
+                legalMoves &= ~(1L << pitNum);
+            }
+        }
+        for (long remaining = legalMoves; remaining != 0; remaining &= remaining - 1) {
+            list[count++] = Long.numberOfTrailingZeros(remaining);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,134 @@
+package com.bb.kalah.engine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size transposition table in a primitive long array, safe to share between threads without locks.
+ * Every entry takes two longs: the hash XOR the data, followed by the data. An entry is only used if
+ * both words XOR back to the probed hash, so entries torn by concurrent writers are ignored instead of trusted.
+ * <p>
+ * Data layout: move in bits 0-6, depth in bits 8-15, bound in bits 16-17, search generation in bits 24-31
+ * and the score in bits 32-63. An entry is replaced by a search of the same or greater depth, by any search
+ * of a newer generation, or by another result for the same position.
+ */
+public final class KalahTranspositionTable {
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2;
+    public static final int UPPER_BOUND = 3;
+
+    public static final int NO_MOVE = 0x7F;
+
+    /**
+     * Depth of entries from subtrees that were searched to the end of the game, valid at any depth.
+     */
+    public static final int SOLVED_DEPTH = 0xFF;
+
+    private final long[] table;
+    private final int mask;
+
+    private volatile int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param entries number of entries, rounded up to a power of two.
+     */
+    public KalahTranspositionTable(int entries) {
+        int size = size(entries);
+        this.table = new long[size * 2];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return bytes used by a table with the number of entries.
+     */
+    public static long memoryBytes(int entries) {
+        return (long) size(entries) * 2 * Long.BYTES;
+    }
+
+    private static int size(int entries) {
+        return entries <= 1 ? 1 : Integer.highestOneBit(entries - 1) << 1;
+    }
+
+    /**
+     * Starts a new search, so older entries are replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * @return the entry data for the hash, or 0 if the position is not in the table.
+     */
+    public long probe(long hash) {
+        int index = ((int) hash & mask) << 1;
+        long data = table[index + 1];
+        if ((table[index] ^ data) != hash) {
+            return 0L;
+        }
+        return data;
+    }
+
+    public void store(long hash, int depth, int score, int bound, int move) {
+        int index = ((int) hash & mask) << 1;
+        long current = table[index + 1];
+        if (current != 0L && (table[index] ^ current) != hash
+                && generation(current) == generation && depth(current) > depth) {
+            return;
+        }
+        long data = ((long) score << 32) | ((long) generation << 24) | ((long) bound << 16)
+                | ((long) depth << 8) | move;
+        table[index] = hash ^ data;
+        table[index + 1] = data;
+    }
+
+    /**
+     * Adds the probe statistics of a finished search.
+     */
+    public void record(long searchProbes, long searchHits) {
+        probes.add(searchProbes);
+        hits.add(searchHits);
+    }
+
+    public static int move(long data) {
+        return (int) data & 0x7F;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 8) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 16) & 0x3;
+    }
+
+    public static int score(long data) {
+        return (int) (data >> 32);
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 24) & 0xFF;
+    }
+
+    public int getEntries() {
+        return mask + 1;
+    }
+
+    public long getMemoryBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public double getHitRate() {
+        long probeCount = probes.sum();
+        return probeCount == 0 ? 0.0 : (double) hits.sum() / probeCount;
+    }
+}
@@ -0,0 +1,61 @@
+package com.bb.kalah.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for the positions of one board configuration: a random key for every count of stones
+ * in every pit and one for the side to move. A position's hash is the XOR of the keys of its pits,
+ * so a move only has to update the pits it changed.
+ * The keys come from a fixed seed, so hashes are stable between runs and can be stored on disk.
+ */
+public final class KalahZobrist {
+    private static final long SEED = 0x4B616C6168L;
+
+    private final int pitsPerPlayer;
+    private final int maxStones;
+    private final long[] keys;
+    private final long sideKey;
+
+    /**
+     * @param pitsPerPlayer number of houses on each side of the board.
+     * @param maxStones     total number of stones on the board.
+     */
+    public KalahZobrist(int pitsPerPlayer, int maxStones) {
+        this.pitsPerPlayer = pitsPerPlayer;
+        this.maxStones = maxStones;
+        SplittableRandom random = new SplittableRandom(SEED);
+        this.sideKey = random.nextLong();
+        int pits = (pitsPerPlayer + 1) * 2;
+        this.keys = new long[pits * (maxStones + 1)];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+    }
+
+    public int getPitsPerPlayer() {
+        return pitsPerPlayer;
+    }
+
+    public int getMaxStones() {
+        return maxStones;
+    }
+
+    public long key(int pitNum, int stones) {
+        return keys[pitNum * (maxStones + 1) + stones];
+    }
+
+    public long sideKey() {
+        return sideKey;
+    }
+
+    /**
+     * @return hash of the pits and the side to move, computed from scratch.
+     */
+    public long hash(int[] pits, int side) {
+        long hash = side == KalahPosition.PLAYER_ONE ? 0L : sideKey;
+        for (int i = 0; i < pits.length; i++) {
+            hash ^= key(i, pits[i]);
+        }
+        return hash;
+    }
+}
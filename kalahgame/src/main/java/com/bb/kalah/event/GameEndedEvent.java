@@ -0,0 +1,14 @@
+package com.bb.kalah.event;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class GameEndedEvent {
+    private String result;
+
+    private int playerOneScore;
+
+    private int playerTwoScore;
+}
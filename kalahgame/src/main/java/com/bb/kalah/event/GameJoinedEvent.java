@@ -0,0 +1,19 @@
+package com.bb.kalah.event;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class GameJoinedEvent {
+    /**
+     * 1 or 2
+     */
+    private int seat;
+
+    private String playerId;
+
+    private String playerName;
+
+    private boolean started;
+}
@@ -0,0 +1,31 @@
+package com.bb.kalah.event;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * What a move changed on the board, instead of the whole game.
+ */
+@Builder
+@Data
+public class GameMovedEvent {
+    /**
+     * The pits moved, the player's followed by the computer's in a single player game.
+     */
+    private int[] moves;
+
+    /**
+     * Moves made so far, after these.
+     */
+    private int moveNumber;
+
+    /**
+     * The pits that changed, as pairs of the pit index and its stones.
+     */
+    private int[] changed;
+
+    /**
+     * The player to move next.
+     */
+    private String currentPlayerId;
+}
@@ -1,7 +1,10 @@
 package com.bb.kalah.exception;
 
+/**
+ * Client errors are expected on the move path, so none of the game exceptions fill in a stack trace.
+ */
 public class BadRequestException extends RuntimeException {
     BadRequestException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,8 @@
+package com.bb.kalah.exception;
+
+public class BatchTooLargeException extends BadRequestException {
+
+    public BatchTooLargeException(int moves, int maxMoves) {
+        super("Batch of " + moves + " moves is larger than " + maxMoves);
+    }
+}
@@ -1,5 +1,6 @@
 package com.bb.kalah.exception;
 
+import com.bb.kalah.KalahMetrics;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -7,9 +8,15 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 
 @ControllerAdvice
 public class ExceptionHandlingController {
+    private final KalahMetrics metrics;
+
+    public ExceptionHandlingController(KalahMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     @ExceptionHandler(GameNotFoundException.class)
     public ResponseEntity<ExceptionResponse> resourceNotFound(GameNotFoundException ex) {
+        metrics.error(ex);
         ExceptionResponse response = new ExceptionResponse();
         response.setErrorCode("Not Found");
         response.setErrorMessage(ex.getMessage());
@@ -17,8 +24,10 @@ public class ExceptionHandlingController {
         return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
     }
 
-    @ExceptionHandler({GameNotStartedException.class, GameWrongTurnException.class, IllegalMoveException.class})
+    @ExceptionHandler({GameNotStartedException.class, GameWrongTurnException.class, IllegalMoveException.class,
+            BatchTooLargeException.class, MalformedMoveException.class, UnsupportedVariantException.class})
     public ResponseEntity<ExceptionResponse> badRequest(BadRequestException ex) {
+        metrics.error(ex);
         ExceptionResponse response = new ExceptionResponse();
         response.setErrorCode("Bad Request");
         response.setErrorMessage(ex.getMessage());
@@ -28,6 +37,7 @@ public class ExceptionHandlingController {
 
     @ExceptionHandler({UnauthorizedPitAccessException.class})
     public ResponseEntity<ExceptionResponse> unauthorized(UnauthorizedPitAccessException ex) {
+        metrics.error(ex);
         ExceptionResponse response = new ExceptionResponse();
         response.setErrorCode("Unauthorized");
         response.setErrorMessage(ex.getMessage());
@@ -37,10 +47,44 @@ public class ExceptionHandlingController {
 
     @ExceptionHandler({GameFullException.class})
     public ResponseEntity<ExceptionResponse> conflict(GameFullException ex) {
+        metrics.error(ex);
         ExceptionResponse response = new ExceptionResponse();
         response.setErrorCode("Conflict");
         response.setErrorMessage(ex.getMessage());
 
         return new ResponseEntity<>(response, HttpStatus.CONFLICT);
     }
+
+    @ExceptionHandler({StoreFullException.class})
+    public ResponseEntity<ExceptionResponse> serviceUnavailable(StoreFullException ex) {
+        metrics.error(ex);
+        ExceptionResponse response = new ExceptionResponse();
+        response.setErrorCode("Service Unavailable");
+        response.setErrorMessage(ex.getMessage());
+
+        return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * @return the response a request failing with the exception gets, for requests that answer many moves.
+     * @throws RuntimeException the exception itself, if it is no game exception.
+     */
+    public ResponseEntity<ExceptionResponse> handle(RuntimeException ex) {
+        if (ex instanceof GameNotFoundException) {
+            return resourceNotFound((GameNotFoundException) ex);
+        }
+        if (ex instanceof UnauthorizedPitAccessException) {
+            return unauthorized((UnauthorizedPitAccessException) ex);
+        }
+        if (ex instanceof BadRequestException) {
+            return badRequest((BadRequestException) ex);
+        }
+        if (ex instanceof GameFullException) {
+            return conflict((GameFullException) ex);
+        }
+        if (ex instanceof StoreFullException) {
+            return serviceUnavailable((StoreFullException) ex);
+        }
+        throw ex;
+    }
 }
@@ -3,6 +3,6 @@ package com.bb.kalah.exception;
 public class GameNotFoundException extends RuntimeException {
 
     public GameNotFoundException(String gameId) {
-        super("Could not find game with id " + gameId);
+        super("Could not find game with id " + gameId, null, false, false);
     }
 }
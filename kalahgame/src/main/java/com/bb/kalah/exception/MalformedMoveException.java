@@ -0,0 +1,8 @@
+package com.bb.kalah.exception;
+
+public class MalformedMoveException extends BadRequestException {
+
+    public MalformedMoveException(String reason) {
+        super("Malformed move: " + reason);
+    }
+}
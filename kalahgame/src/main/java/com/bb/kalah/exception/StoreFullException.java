@@ -0,0 +1,11 @@
+package com.bb.kalah.exception;
+
+/**
+ * No more games fit into the store until some of the games in it end.
+ */
+public class StoreFullException extends RuntimeException {
+
+    public StoreFullException(int maxGames) {
+        super("Game store is full with " + maxGames + " games", null, false, false);
+    }
+}
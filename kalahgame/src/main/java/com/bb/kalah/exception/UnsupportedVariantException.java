@@ -0,0 +1,8 @@
+package com.bb.kalah.exception;
+
+public class UnsupportedVariantException extends BadRequestException {
+
+    public UnsupportedVariantException(String reason) {
+        super("Unsupported variant: " + reason);
+    }
+}
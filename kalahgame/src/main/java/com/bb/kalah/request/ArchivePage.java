@@ -0,0 +1,24 @@
+package com.bb.kalah.request;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Builder
+@Data
+public class ArchivePage {
+    /**
+     * Games of the page, the most recently ended first.
+     */
+    private List<ArchivedGame> games;
+
+    private int page;
+
+    private int size;
+
+    /**
+     * Whether there are games on the next page.
+     */
+    private boolean more;
+}
@@ -0,0 +1,48 @@
+package com.bb.kalah.request;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class ArchivedGame {
+    private String gameId;
+
+    /**
+     * Time the game ended, in milliseconds since the epoch.
+     */
+    private long endedAt;
+
+    private String player1Id;
+
+    private String player1Name;
+
+    private String player2Id;
+
+    private String player2Name;
+
+    private int pitsPerPlayer;
+
+    private int stonesPerPit;
+
+    private boolean captures;
+
+    private boolean emptyCaptures;
+
+    private int playerOneScore;
+
+    private int playerTwoScore;
+
+    private String result;
+
+    /**
+     * Moves made before the first one in {@link #moves}, more than 0 only for a game that was in progress
+     * while the server restarted.
+     */
+    private int firstMoveNumber;
+
+    /**
+     * Pits moved, the computer's moves included, in the order they were made.
+     */
+    private int[] moves;
+}
@@ -0,0 +1,13 @@
+package com.bb.kalah.request;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchMoveRequest {
+    /**
+     * Made in this order within each game.
+     */
+    private List<GameMoveRequest> moves;
+}
@@ -0,0 +1,24 @@
+package com.bb.kalah.request;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @param <G> the games
+ */
+@Builder
+@Data
+public class BatchMoveResponse<G> {
+    /**
+     * One per move, in the order of the request.
+     */
+    private List<GameMoveResult> results;
+
+    /**
+     * Every game of the batch as it is after its moves, unless it could not be found.
+     */
+    private Map<String, G> games;
+}
@@ -1,5 +1,6 @@
 package com.bb.kalah.request;
 
+import com.bb.kalah.KalahGameType;
 import lombok.Data;
 
 @Data
@@ -7,4 +8,27 @@ public class CreateGameRequest {
     private String gameName;
 
     private String playerName;
+
+    private KalahGameType gameType;
+
+    /**
+     * Houses each player has, 6 if not given.
+     */
+    private Integer pitsPerPlayer;
+
+    /**
+     * Stones in every house at the start, 6 if not given.
+     */
+    private Integer stonesPerPit;
+
+    /**
+     * Whether the last stone landing in an own empty house captures the stones in the house across,
+     * true if not given.
+     */
+    private Boolean captures;
+
+    /**
+     * Whether the last stone also captures when the house across is empty, true if not given.
+     */
+    private Boolean emptyCaptures;
 }
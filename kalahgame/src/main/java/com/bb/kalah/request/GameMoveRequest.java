@@ -0,0 +1,12 @@
+package com.bb.kalah.request;
+
+import lombok.Data;
+
+@Data
+public class GameMoveRequest {
+    private String gameId;
+
+    private String playerId;
+
+    private int pitIndex;
+}
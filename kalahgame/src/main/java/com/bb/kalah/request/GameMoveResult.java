@@ -0,0 +1,26 @@
+package com.bb.kalah.request;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class GameMoveResult {
+    private String gameId;
+
+    private int pitIndex;
+
+    /**
+     * HTTP status the move would have got on its own.
+     */
+    private int status;
+
+    private String errorCode;
+
+    private String errorMessage;
+
+    /**
+     * Moves made in the game after this one, the computer's included, if it was made.
+     */
+    private Integer moveNumber;
+}
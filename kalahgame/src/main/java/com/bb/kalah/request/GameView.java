@@ -0,0 +1,36 @@
+package com.bb.kalah.request;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * The game in as few fields as possible, players by ID and name and the board as flat pits.
+ */
+@Builder
+@Data
+public class GameView {
+    private String gameId;
+
+    private String name;
+
+    private String gameType;
+
+    private String player1Id;
+
+    private String player1Name;
+
+    private String player2Id;
+
+    private String player2Name;
+
+    private String currentPlayerId;
+
+    /**
+     * All the pits, player 1's houses and store followed by player 2's.
+     */
+    private int[] pits;
+
+    private int moveNumber;
+
+    private String result;
+}
@@ -0,0 +1,26 @@
+package com.bb.kalah.request;
+
+import lombok.Data;
+
+@Data
+public class MatchRequest {
+    private String playerName;
+
+    /**
+     * Rating of the player, if any. Players are only paired with players of the same rating band, and players
+     * without a rating only with each other.
+     */
+    private Integer rating;
+
+    /**
+     * Board and rules of the game, as in {@link CreateGameRequest}. Players are only paired with players who
+     * asked for the same.
+     */
+    private Integer pitsPerPlayer;
+
+    private Integer stonesPerPit;
+
+    private Boolean captures;
+
+    private Boolean emptyCaptures;
+}
@@ -4,6 +4,9 @@ package com.bb.kalah;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class KalahBoardTest {
@@ -67,6 +70,20 @@ public class KalahBoardTest {
         assertThat(nextMove).isEqualTo(KalahGameMove.ILLEGAL);
     }
 
+    @Test
+    public void shouldReportLegalMovesWithoutChangingBoard() {
+        assertThat(board.isLegalMove(0)).isTrue();
+        assertThat(board.isLegalMove(6)).isFalse();
+        assertThat(board.isLegalMove(14)).isFalse();
+        assertThat(board.isLegalMove(-1)).isFalse();
+        assertThat(board.legalMoves()).isEqualTo(0b01111110111111L);
+
+        board.makeMove(0);
+        assertThat(board.isLegalMove(0)).isFalse();
+        assertThat(board.legalMoves()).isEqualTo(0b01111110111110L);
+        assertThat(board.getPlayerOneStoneCount()).isEqualTo(35);
+    }
+
     @Test
     public void shouldCaptureWhenLastPitIsEmpty() {
         board.makeMove(0);
@@ -80,6 +97,32 @@ public class KalahBoardTest {
         assertThat(nextMove).isEqualTo(KalahGameMove.CAPTURE);
     }
 
+    @Test
+    public void shouldNotCaptureWithoutCaptures() {
+        board = new KalahBoard(KalahRuleSet.of(INITIAL_PITS_COUNT, false, false), INITIAL_STONES_COUNT);
+        board.makeMove(0);
+        board.makeMove(1);
+        board.makeMove(7);
+        KalahGameMove nextMove = board.makeMove(0);
+        assertThat(board.getPlayerOneScore()).isEqualTo(2);
+        assertThat(board.getPits()[1]).isEqualTo(1);
+        assertThat(board.isCaptures()).isFalse();
+        assertThat(nextMove).isEqualTo(KalahGameMove.CONTINUE);
+    }
+
+    @Test
+    public void shouldCaptureFromEmptyHouseOnlyIfRulesSaySo() {
+        int[] pits = {1, 0, 0, 0, 2, 0};
+        KalahBoard standard = new KalahBoard(2, 1, pits);
+        assertThat(standard.makeMove(0)).isEqualTo(KalahGameMove.CAPTURE);
+        assertThat(standard.getPits()).containsExactly(0, 0, 1, 0, 2, 0);
+
+        KalahBoard noEmptyCaptures = new KalahBoard(KalahRuleSet.of(2, true, false), 1, pits);
+        assertThat(noEmptyCaptures.makeMove(0)).isEqualTo(KalahGameMove.CONTINUE);
+        assertThat(noEmptyCaptures.getPits()).containsExactly(0, 1, 0, 0, 2, 0);
+        assertThat(noEmptyCaptures.isEmptyCaptures()).isFalse();
+    }
+
     @Test
     public void shouldEndGameWhenStoneCountIsZero() {
         board.makeMove(0);
@@ -110,4 +153,147 @@ public class KalahBoardTest {
         assertThat(board.getPlayerTwoStoneCount()).isEqualTo(0);
         assertThat(nextMove).isEqualTo(KalahGameMove.PLAY_AGAIN);
     }
+
+    @Test
+    public void shouldMatchStoneByStoneSowingOnRandomBoards() {
+        Random random = new Random(42);
+        for (int game = 0; game < 500; game++) {
+            int pitsPerPlayer = 1 + random.nextInt(8);
+            KalahBoard randomBoard = new KalahBoard(pitsPerPlayer, 1 + random.nextInt(48));
+            for (int move = 0; move < 200; move++) {
+                int pitNum = random.nextInt((pitsPerPlayer + 1) * 2);
+                int[] expectedPits = randomBoard.getPits();
+                KalahGameMove expectedMove = sowStoneByStone(expectedPits, pitsPerPlayer, pitNum);
+
+                KalahGameMove nextMove = randomBoard.makeMove(pitNum);
+
+                assertThat(nextMove).isEqualTo(expectedMove);
+                assertThat(randomBoard.getPits()).containsExactly(expectedPits);
+                assertHouseStonesCounted(randomBoard);
+                if (randomBoard.getPlayerOneStoneCount() == 0 || randomBoard.getPlayerTwoStoneCount() == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchStoneByStoneSowingWithAllRules() {
+        Random random = new Random(11);
+        for (int game = 0; game < 500; game++) {
+            int pitsPerPlayer = 1 + random.nextInt(KalahBoard.MAX_PITS_PER_PLAYER);
+            boolean captures = random.nextBoolean();
+            boolean emptyCaptures = captures && random.nextBoolean();
+            KalahBoard randomBoard = new KalahBoard(KalahRuleSet.of(pitsPerPlayer, captures, emptyCaptures),
+                    1 + random.nextInt(12));
+            for (int move = 0; move < 200; move++) {
+                int pitNum = random.nextInt((pitsPerPlayer + 1) * 2);
+                int[] expectedPits = randomBoard.getPits();
+                KalahGameMove expectedMove = sowStoneByStone(expectedPits, pitsPerPlayer, pitNum, captures,
+                        emptyCaptures);
+
+                KalahGameMove nextMove = randomBoard.makeMove(pitNum);
+
+                assertThat(nextMove).isEqualTo(expectedMove);
+                assertThat(randomBoard.getPits()).containsExactly(expectedPits);
+                assertHouseStonesCounted(randomBoard);
+                if (randomBoard.getPlayerOneStoneCount() == 0 || randomBoard.getPlayerTwoStoneCount() == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepHouseStonesCountedOnRandomPositionsUntilTheEnd() {
+        Random random = new Random(7);
+        for (int game = 0; game < 2000; game++) {
+            int pitsPerPlayer = 1 + random.nextInt(KalahBoard.MAX_PITS_PER_PLAYER);
+            int[] pits = new int[(pitsPerPlayer + 1) * 2];
+            for (int i = 0; i < pits.length; i++) {
+                pits[i] = random.nextInt(4) == 0 ? 0 : random.nextInt(3 * pits.length);
+            }
+            KalahBoard randomBoard = new KalahBoard(pitsPerPlayer, 6, pits);
+            assertHouseStonesCounted(randomBoard);
+
+            while (randomBoard.getPlayerOneStoneCount() != 0 && randomBoard.getPlayerTwoStoneCount() != 0) {
+                long legalMoves = randomBoard.legalMoves();
+                for (int choice = random.nextInt(Long.bitCount(legalMoves)); choice > 0; choice--) {
+                    legalMoves &= legalMoves - 1;
+                }
+                randomBoard = new KalahBoard(randomBoard);
+                randomBoard.makeMove(Long.numberOfTrailingZeros(legalMoves));
+                assertHouseStonesCounted(randomBoard);
+            }
+            int stones = Arrays.stream(randomBoard.getPits()).sum();
+            randomBoard.endGame();
+
+            assertHouseStonesCounted(randomBoard);
+            assertThat(randomBoard.getPlayerOneStoneCount()).isZero();
+            assertThat(randomBoard.getPlayerTwoStoneCount()).isZero();
+            assertThat(randomBoard.getPlayerOneScore() + randomBoard.getPlayerTwoScore()).isEqualTo(stones);
+        }
+    }
+
+    private static void assertHouseStonesCounted(KalahBoard board) {
+        int[] pits = board.getPits();
+        assertThat(board.getPlayerOneStoneCount())
+                .isEqualTo(KalahRules.houseStones(pits, board.getPitsPerPlayer(), true));
+        assertThat(board.getPlayerTwoStoneCount())
+                .isEqualTo(KalahRules.houseStones(pits, board.getPitsPerPlayer(), false));
+    }
+
+    /**
+     * Reference implementation sowing one stone per iteration, as the board originally did.
+     */
+    private static KalahGameMove sowStoneByStone(int[] pits, int pitsPerPlayer, int pitNum) {
+        return sowStoneByStone(pits, pitsPerPlayer, pitNum, true, true);
+    }
+
+    private static KalahGameMove sowStoneByStone(int[] pits, int pitsPerPlayer, int pitNum, boolean captures,
+                                                 boolean emptyCaptures) {
+        int playerTwoStore = (pitsPerPlayer * 2) + 1;
+        if (pitNum < 0 || pitNum >= pits.length || pitNum == pitsPerPlayer || pitNum == playerTwoStore
+                || pits[pitNum] == 0) {
+            return KalahGameMove.ILLEGAL;
+        }
+
+        int stones = pits[pitNum];
+        pits[pitNum] = 0;
+
+        KalahGameMove nextMove = KalahGameMove.CONTINUE;
+        boolean isOppositionPit = false;
+        int index = pitNum;
+        while (stones > 0) {
+            stones--;
+            index = (index == playerTwoStore) ? 0 : index + 1;
+            if (index == pitsPerPlayer || index == playerTwoStore) {
+                if (!isOppositionPit) {
+                    pits[index]++;
+                    if (stones == 0) {
+                        nextMove = KalahGameMove.PLAY_AGAIN;
+                    }
+                } else {
+                    stones++;
+                }
+                isOppositionPit = !isOppositionPit;
+            } else {
+                if (!isOppositionPit && stones == 0 && pits[index] == 0) {
+                    nextMove = KalahGameMove.CAPTURE;
+                }
+                pits[index]++;
+            }
+        }
+        int oppositePit = (pitsPerPlayer * 2) - index;
+        if (nextMove == KalahGameMove.CAPTURE && (!captures || !emptyCaptures && pits[oppositePit] == 0)) {
+            nextMove = KalahGameMove.CONTINUE;
+        }
+        if (nextMove == KalahGameMove.CAPTURE) {
+            int storeIndex = index > pitsPerPlayer ? playerTwoStore : pitsPerPlayer;
+            pits[storeIndex] += pits[index] + pits[oppositePit];
+            pits[index] = 0;
+            pits[oppositePit] = 0;
+        }
+        return nextMove;
+    }
 }
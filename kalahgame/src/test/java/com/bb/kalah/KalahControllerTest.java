@@ -2,6 +2,7 @@ package com.bb.kalah;
 
 import com.bb.kalah.request.CreateGameRequest;
 import com.bb.kalah.request.CreateGameResponse;
+import com.bb.kalah.request.GameMoveRequest;
 import com.bb.kalah.request.MoveRequest;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -15,9 +16,16 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -160,6 +168,212 @@ public class KalahControllerTest {
         assertThat(moveResponse).contains("playerTwoStoneCount\":36");
     }
 
+    @Test
+    public void shouldReturn404OnSubscribingToGameThatDoesntExist() throws Exception {
+        mockMvc.perform(get("/api/v1/game/INVALID_UUID/events"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void shouldPushJoinAndMoveToSubscribers() throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/v1/game")
+                .content(convertToJson(createGameRequest()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        CreateGameResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
+                CreateGameResponse.class);
+
+        MvcResult events = mockMvc.perform(get("/api/v1/game/" + response.getGameId() + "/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitEvent(events, "event:game");
+
+        mockMvc.perform(post("/api/v1/game/join/" + response.getGameId())
+                .content(PLAYER_NAME_2)
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/api/v1/game/move/" + response.getGameId())
+                .content(convertToJson(createMoveRequest(response.getPlayerId(), 0)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        String stream = awaitEvent(events, "\"currentPlayerId\"");
+        assertThat(stream).contains("event:joined", "\"seat\":2", "\"playerName\":\"Player 2\"", "\"started\":true");
+        // The first pit was emptied and its six stones went one each into the next five pits and the store.
+        assertThat(stream).contains("\"moves\":[0]", "\"moveNumber\":1", "\"changed\":[0,0,1,7,2,7,3,7,4,7,5,7,6,1]");
+    }
+
+    @Test
+    public void shouldReturn200WithResultPerMoveOnBatch() throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/v1/game")
+                .content(convertToJson(createGameRequest()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        CreateGameResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
+                CreateGameResponse.class);
+        mockMvc.perform(post("/api/v1/game/join/" + response.getGameId())
+                .content(PLAYER_NAME_2)
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isOk());
+
+        String batch = "{\"moves\":[" + convertToJson(createGameMoveRequest(response, 0)) + ","
+                + convertToJson(createGameMoveRequest(response, 3)) + "]}";
+        String content = mockMvc.perform(post("/api/v1/game/moves")
+                .content(batch)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        // The first move lands in the store and it is the first player's turn again, so the second is made too.
+        assertThat(content).contains("\"status\":200,\"errorCode\":null,\"errorMessage\":null,\"moveNumber\":1");
+        assertThat(content).contains("\"status\":200,\"errorCode\":null,\"errorMessage\":null,\"moveNumber\":2");
+        assertThat(content).contains("\"games\":{\"" + response.getGameId() + "\"");
+    }
+
+    @Test
+    public void shouldPairPlayersAskingForMatch() throws Exception {
+        // A rating of its own, so no player of another test gets in between.
+        MvcResult first = mockMvc.perform(post("/api/v1/game/match")
+                .content("{\"playerName\":\"" + PLAYER_NAME_1 + "\",\"rating\":100000}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult second = mockMvc.perform(post("/api/v1/game/match")
+                .content("{\"playerName\":\"" + PLAYER_NAME_2 + "\",\"rating\":100001}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        CreateGameResponse firstResponse = objectMapper.readValue(mockMvc.perform(asyncDispatch(first))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), CreateGameResponse.class);
+        CreateGameResponse secondResponse = objectMapper.readValue(mockMvc.perform(asyncDispatch(second))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), CreateGameResponse.class);
+        assertThat(secondResponse.getGameId()).isEqualTo(firstResponse.getGameId());
+
+        // The player who waited has the first move.
+        mockMvc.perform(post("/api/v1/game/move/" + firstResponse.getGameId())
+                .content(convertToJson(createMoveRequest(firstResponse.getPlayerId(), 0)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldCreateGameOnBoardAskedFor() throws Exception {
+        CreateGameRequest request = createGameRequest();
+        request.setPitsPerPlayer(4);
+        request.setStonesPerPit(3);
+        request.setCaptures(false);
+        MvcResult result = mockMvc.perform(post("/api/v1/game")
+                .content(convertToJson(request))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        CreateGameResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
+                CreateGameResponse.class);
+
+        String json = mockMvc.perform(get("/api/v1/game/" + response.getGameId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(json).contains("\"pitsPerPlayer\":4,\"stonesPerPit\":3", "\"captures\":false",
+                "\"emptyCaptures\":false");
+    }
+
+    @Test
+    public void shouldReturn400OnCreatingGameOfUnsupportedVariant() throws Exception {
+        CreateGameRequest tooLarge = createGameRequest();
+        tooLarge.setPitsPerPlayer(40);
+        mockMvc.perform(post("/api/v1/game")
+                .content(convertToJson(tooLarge))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        CreateGameRequest noCaptures = createGameRequest();
+        noCaptures.setGameType(KalahGameType.SINGLE_PLAYER);
+        noCaptures.setCaptures(false);
+        mockMvc.perform(post("/api/v1/game")
+                .content(convertToJson(noCaptures))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturn404ForGameNotInArchive() throws Exception {
+        mockMvc.perform(get("/api/v1/archive/" + UUID.randomUUID()))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/v1/archive").param("page", "1"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"games\":[],\"page\":1,\"size\":20,\"more\":false}"));
+    }
+
+    @Test
+    public void shouldServeMetricsForPrometheus() throws Exception {
+        mockMvc.perform(post("/api/v1/game/join/INVALID_UUID")
+                .content(PLAYER_NAME_1)
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isNotFound());
+
+        String scrape = mockMvc.perform(get("/api/v1/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(scrape).contains("kalah_operation_seconds_count{operation=\"assign_player\"}");
+        assertThat(scrape).contains("kalah_errors_total{exception=\"GameNotFoundException\"}");
+        assertThat(scrape).contains("kalah_games{state=\"waiting\"}");
+    }
+
+    @Test
+    public void shouldAnswerInFormAskedFor() throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/v1/game")
+                .content(convertToJson(createGameRequest()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        CreateGameResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
+                CreateGameResponse.class);
+        mockMvc.perform(post("/api/v1/game/join/" + response.getGameId())
+                .content(PLAYER_NAME_2)
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isOk());
+
+        String json = mockMvc.perform(get("/api/v1/game/" + response.getGameId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(json).contains("\"board\":{");
+
+        MoveRequest move = createMoveRequest(response.getPlayerId(), 0);
+        byte[] binary = mockMvc.perform(post("/api/v1/game/move/" + response.getGameId())
+                .content(KalahGameCodec.encode(move))
+                .contentType(KalahGameCodec.MEDIA_TYPE)
+                .accept(KalahGameCodec.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        KalahGame game = KalahGameCodec.decodeGame(ByteBuffer.wrap(binary));
+        assertThat(game.getMoveNumber()).isEqualTo(1);
+        assertThat(binary.length).isLessThan(json.length() / 3);
+
+        String slim = mockMvc.perform(get("/api/v1/game/" + response.getGameId())
+                .accept(KalahSlimJsonMessageConverter.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(slim).contains("\"pits\":[0,7,7,7,7,7,1,6,6,6,6,6,6,0]", "\"moveNumber\":1");
+        assertThat(slim).doesNotContain("board");
+    }
+
+    private static String awaitEvent(MvcResult result, String event) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String stream = result.getResponse().getContentAsString();
+        while (!stream.contains(event) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            stream = result.getResponse().getContentAsString();
+        }
+        assertThat(stream).contains(event);
+        return stream;
+    }
+
     private String convertToJson(Object object) {
         try {
             return objectMapper.writeValueAsString(object);
@@ -175,6 +389,14 @@ public class KalahControllerTest {
         return request;
     }
 
+    private GameMoveRequest createGameMoveRequest(CreateGameResponse game, int pitIndex) {
+        GameMoveRequest request = new GameMoveRequest();
+        request.setGameId(game.getGameId());
+        request.setPlayerId(game.getPlayerId());
+        request.setPitIndex(pitIndex);
+        return request;
+    }
+
     private MoveRequest createMoveRequest(String playerId, int pitIndex) {
         MoveRequest request = new MoveRequest();
         request.setPlayerId(playerId);
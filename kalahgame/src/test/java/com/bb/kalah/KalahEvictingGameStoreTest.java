@@ -0,0 +1,170 @@
+package com.bb.kalah;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahEvictingGameStoreTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    private KalahServiceProperties.Store settings;
+
+    @Before
+    public void setup() {
+        settings = new KalahServiceProperties.Store();
+        settings.setWaitingIdleMillis(TimeUnit.MINUTES.toMillis(5));
+        settings.setInProgressIdleMillis(TimeUnit.MINUTES.toMillis(60));
+        settings.setTickMillis(1000);
+    }
+
+    @Test
+    public void shouldEvictWaitingGameAfterItsIdleTime() {
+        KalahEvictingGameStore store = store();
+        KalahGame game = waitingGame();
+        store.put(game);
+
+        advance(TimeUnit.MINUTES.toMillis(5) - 1000);
+        store.expire();
+        assertThat(store.size()).isEqualTo(1);
+
+        advance(2000);
+        store.expire();
+        assertThat(store.get(game.getGameId())).isNull();
+        assertThat(store.getEvictedIdleWaiting()).isEqualTo(1);
+        assertThat(store.getEvictedIdleInProgress()).isZero();
+    }
+
+    @Test
+    public void shouldKeepStartedGameForLongerIdleTime() {
+        KalahEvictingGameStore store = store();
+        KalahGame game = startedGame();
+        store.put(game);
+
+        advance(TimeUnit.MINUTES.toMillis(30));
+        store.expire();
+        assertThat(store.get(game.getGameId())).isSameAs(game);
+
+        // The request above restarted the idle time.
+        advance(TimeUnit.MINUTES.toMillis(59));
+        store.expire();
+        assertThat(store.size()).isEqualTo(1);
+
+        advance(TimeUnit.MINUTES.toMillis(2));
+        store.expire();
+        assertThat(store.size()).isZero();
+        assertThat(store.getEvictedIdleInProgress()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeepGamesThatAreAskedFor() {
+        KalahEvictingGameStore store = store();
+        KalahGame asked = waitingGame();
+        KalahGame abandoned = waitingGame();
+        store.put(asked);
+        store.put(abandoned);
+
+        for (int minute = 0; minute < 20; minute++) {
+            advance(TimeUnit.MINUTES.toMillis(1));
+            store.get(asked.getGameId());
+            store.expire();
+        }
+        assertThat(store.get(asked.getGameId())).isSameAs(asked);
+        assertThat(store.get(abandoned.getGameId())).isNull();
+    }
+
+    @Test
+    public void shouldEvictWaitingGamesFirstWhenFull() {
+        settings.setMaxGames(4);
+        KalahEvictingGameStore store = store();
+        KalahGame waiting = waitingGame();
+        store.put(waiting);
+        KalahGame[] started = new KalahGame[3];
+        for (int i = 0; i < started.length; i++) {
+            advance(1000);
+            started[i] = startedGame();
+            store.put(started[i]);
+        }
+
+        advance(1000);
+        store.put(startedGame());
+        assertThat(store.size()).isEqualTo(4);
+        assertThat(store.get(waiting.getGameId())).isNull();
+        assertThat(store.getEvictedForSize()).isEqualTo(1);
+
+        advance(1000);
+        store.put(startedGame());
+        assertThat(store.size()).isEqualTo(4);
+        assertThat(store.get(started[0].getGameId())).isNull();
+        assertThat(store.get(started[1].getGameId())).isSameAs(started[1]);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedWhenFull() {
+        settings.setMaxGames(2);
+        settings.setSizeEviction(KalahServiceProperties.SizeEviction.LEAST_RECENTLY_USED);
+        KalahEvictingGameStore store = store();
+        KalahGame started = startedGame();
+        store.put(started);
+        advance(1000);
+        KalahGame waiting = waitingGame();
+        store.put(waiting);
+
+        advance(1000);
+        store.put(waitingGame());
+        assertThat(store.get(started.getGameId())).isNull();
+        assertThat(store.get(waiting.getGameId())).isSameAs(waiting);
+    }
+
+    @Test
+    public void shouldNotCountRemovedGamesAsEvicted() {
+        KalahEvictingGameStore store = store();
+        KalahGame game = waitingGame();
+        store.put(game);
+        store.remove(game.getGameId());
+
+        advance(TimeUnit.HOURS.toMillis(3));
+        store.expire();
+        assertThat(store.size()).isZero();
+        assertThat(store.getEvictedIdleWaiting()).isZero();
+    }
+
+    @Test
+    public void shouldNotReplaceStateOfGameEvictedAfterItWasTaken() {
+        KalahEvictingGameStore store = store();
+        KalahGame started = startedGame();
+        store.put(started);
+        KalahGame game = store.get(started.getGameId());
+        KalahGameState before = game.getState();
+        KalahGameState moved = before.move(game.getGameId(), 0);
+        assertThat(store.replace(game, before, moved)).isTrue();
+
+        advance(TimeUnit.MINUTES.toMillis(61));
+        store.expire();
+        assertThat(store.replace(game, moved, moved.move(game.getGameId(), 1))).isFalse();
+        assertThat(game.getState()).isSameAs(moved);
+    }
+
+    private KalahEvictingGameStore store() {
+        return new KalahEvictingGameStore(settings, clock::get, false);
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static KalahGame waitingGame() {
+        return new KalahGame("Waiting");
+    }
+
+    private static KalahGame startedGame() {
+        KalahGame game = new KalahGame("Started");
+        game.setPlayer1("Player 1");
+        game.setPlayer2("Player 2");
+        return game;
+    }
+}
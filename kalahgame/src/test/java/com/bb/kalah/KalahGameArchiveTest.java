@@ -0,0 +1,200 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.exception.GameNotFoundException;
+import com.bb.kalah.request.ArchivePage;
+import com.bb.kalah.request.ArchivedGame;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KalahGameArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private KalahServiceProperties properties;
+    private KalahGameArchive archive;
+    private KalahService service;
+
+    @Before
+    public void setup() throws IOException {
+        properties = new KalahServiceProperties();
+        properties.getArchive().setEnabled(true);
+        properties.getArchive().setDirectory(folder.newFolder("archive").getPath());
+        properties.getArchive().setIdBuckets(64);
+        start();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        archive.close();
+    }
+
+    @Test
+    public void shouldKeepFinishedGameWithItsMoves() throws IOException {
+        String gameId = service.createGame("Game");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        String player2 = service.assignPlayer(gameId, "Player 2");
+        List<Integer> moves = new ArrayList<>();
+        KalahGame last = play(gameId, player1, player2, moves);
+        restart();
+
+        ArchivedGame game = archive.find(gameId);
+        assertThat(game.getPlayer1Id()).isEqualTo(player1);
+        assertThat(game.getPlayer2Name()).isEqualTo("Player 2");
+        assertThat(game.getPlayerOneScore()).isEqualTo(last.getBoard().getPlayerOneScore());
+        assertThat(game.getPlayerTwoScore()).isEqualTo(last.getBoard().getPlayerTwoScore());
+        assertThat(game.getResult()).isEqualTo(last.getResult());
+        assertThat(game.getFirstMoveNumber()).isZero();
+        assertThat(game.getMoves()).containsExactly(moves.stream().mapToInt(Integer::intValue).toArray());
+        assertThat(game.getMoves()).hasSize(last.getMoveNumber());
+    }
+
+    @Test
+    public void shouldNotFindGameInProgress() {
+        String gameId = service.createGame("Game");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        service.assignPlayer(gameId, "Player 2");
+        service.makeMove(gameId, player1, 0);
+
+        assertThatThrownBy(() -> archive.find(gameId)).isInstanceOf(GameNotFoundException.class);
+        assertThatThrownBy(() -> archive.find("INVALID_UUID")).isInstanceOf(GameNotFoundException.class);
+        assertThat(archive.getPlaying()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldPageGamesNewestFirst() throws IOException {
+        List<String> gameIds = new ArrayList<>();
+        List<String> players = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String gameId = service.createGame("Game " + i);
+            String player1 = service.assignPlayer(gameId, "Player 1");
+            play(gameId, player1, service.assignPlayer(gameId, "Player 2"), new ArrayList<>());
+            gameIds.add(0, gameId);
+            players.add(0, player1);
+        }
+        restart();
+
+        ArchivePage first = archive.query(null, null, null, 0, 3);
+        assertThat(first.getGames()).extracting(ArchivedGame::getGameId).containsExactlyElementsOf(gameIds.subList(0, 3));
+        assertThat(first.isMore()).isTrue();
+        ArchivePage second = archive.query(null, null, null, 1, 3);
+        assertThat(second.getGames()).extracting(ArchivedGame::getGameId).containsExactlyElementsOf(gameIds.subList(3, 5));
+        assertThat(second.isMore()).isFalse();
+
+        assertThat(archive.query(players.get(2), null, null, 0, 10).getGames()).extracting(ArchivedGame::getGameId)
+                .containsExactly(gameIds.get(2));
+        assertThat(archive.query(players.get(2), null, null, 1, 10).getGames()).isEmpty();
+        assertThat(archive.query("INVALID_UUID", null, null, 0, 10).getGames()).isEmpty();
+
+        long newest = first.getGames().get(0).getEndedAt();
+        long oldest = second.getGames().get(1).getEndedAt();
+        assertThat(archive.query(null, newest + 1, null, 0, 10).getGames()).isEmpty();
+        assertThat(archive.query(null, null, oldest - 1, 0, 10).getGames()).isEmpty();
+        assertThat(archive.query(null, oldest, newest, 0, 10).getGames()).hasSize(5);
+    }
+
+    @Test
+    public void shouldFindGamesSharingBucket() throws IOException {
+        archive.close();
+        properties.getArchive().setDirectory(folder.newFolder("single-bucket").getPath());
+        properties.getArchive().setIdBuckets(1);
+        start();
+
+        String single = service.createGame("Single", KalahGameType.SINGLE_PLAYER);
+        String player = service.assignPlayer(single, "Player");
+        List<Integer> moves = new ArrayList<>();
+        KalahGame last = play(single, player, null, moves);
+        for (int i = 0; i < 3; i++) {
+            String gameId = service.createGame("Game " + i);
+            play(gameId, service.assignPlayer(gameId, "A"), service.assignPlayer(gameId, "B"), new ArrayList<>());
+        }
+        awaitArchived(4);
+
+        assertThat(archive.query(player, null, null, 0, 10).getGames()).extracting(ArchivedGame::getGameId)
+                .containsExactly(single);
+        ArchivedGame game = archive.find(single);
+        assertThat(game.getPlayer2Name()).isEqualTo("Computer");
+        // The computer's moves are kept too.
+        assertThat(game.getMoves()).hasSize(last.getMoveNumber());
+        assertThat(game.getMoves().length).isGreaterThan(moves.size());
+    }
+
+    @Test
+    public void shouldDropWhatWasNotWrittenCompletely() throws IOException {
+        String kept = service.createGame("Kept");
+        String keptPlayer = service.assignPlayer(kept, "A");
+        play(kept, keptPlayer, service.assignPlayer(kept, "B"), new ArrayList<>());
+        String cut = service.createGame("Cut");
+        String cutPlayer = service.assignPlayer(cut, "A");
+        play(cut, cutPlayer, service.assignPlayer(cut, "B"), new ArrayList<>());
+        archive.close();
+
+        // The crash came while the entries of the players of the last game were written.
+        Path directory = Paths.get(properties.getArchive().getDirectory());
+        Files.write(directory.resolve("games.dat"), new byte[]{0, 0, 1, 0, 1, 2}, StandardOpenOption.APPEND);
+        try (FileChannel ids = FileChannel.open(directory.resolve("ids.idx"), StandardOpenOption.WRITE)) {
+            ids.truncate(ids.size() - 50);
+        }
+        start();
+
+        assertThat(archive.find(kept).getGameId()).isEqualTo(kept);
+        assertThat(archive.find(cut).getGameId()).isEqualTo(cut);
+        assertThat(archive.query(keptPlayer, null, null, 0, 10).getGames()).hasSize(1);
+        assertThat(archive.query(cutPlayer, null, null, 0, 10).getGames()).isEmpty();
+
+        String next = service.createGame("Next");
+        play(next, service.assignPlayer(next, "A"), service.assignPlayer(next, "B"), new ArrayList<>());
+        awaitArchived(1);
+        assertThat(archive.find(next).getGameId()).isEqualTo(next);
+        assertThat(archive.query(null, null, null, 0, 10).getGames()).hasSize(3);
+    }
+
+    private void start() {
+        archive = new KalahGameArchive(properties);
+        service = new KalahService(new KalahEngine(), properties, archive);
+    }
+
+    private void restart() throws IOException {
+        archive.close();
+        start();
+    }
+
+    private void awaitArchived(long games) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (archive.getArchived() < games && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertThat(archive.getArchived()).isEqualTo(games);
+    }
+
+    /**
+     * Plays the game to its end, always moving the first pit that can be moved.
+     * @param moves gets the pits the players moved
+     */
+    private KalahGame play(String gameId, String player1, String player2, List<Integer> moves) {
+        KalahGame game = service.getGame(gameId).snapshot();
+        while (!game.hasGameEnded()) {
+            boolean playerOne = game.getCurrentPlayer().getId().equals(player1);
+            int pit = Long.numberOfTrailingZeros(game.getBoard().legalMoves() & KalahRules.houseMask(6, playerOne));
+            game = service.makeMove(gameId, playerOne ? player1 : player2, pit);
+            moves.add(pit);
+        }
+        return game;
+    }
+}
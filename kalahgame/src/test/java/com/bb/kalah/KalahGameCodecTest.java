@@ -0,0 +1,96 @@
+package com.bb.kalah;
+
+import com.bb.kalah.request.MoveRequest;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KalahGameCodecTest {
+
+    @Test
+    public void shouldDecodeWhatWasEncoded() {
+        KalahGame game = new KalahGame("Encoded");
+        game.setPlayer1("Player 1");
+        game.setPlayer2("Spieler Zwei Überall");
+        game.makeMove(0);
+        game.makeMove(1);
+        game.makeMove(9);
+
+        byte[] bytes = KalahGameCodec.encode(game);
+        KalahGame decoded = KalahGameCodec.decodeGame(ByteBuffer.wrap(bytes));
+
+        assertThat(bytes.length).isLessThan(120);
+        assertThat(decoded.getGameId()).isEqualTo(game.getGameId());
+        assertThat(decoded.getName()).isEqualTo(game.getName());
+        assertThat(decoded.getGameType()).isEqualTo(KalahGameType.MULTI_PLAYER);
+        assertThat(decoded.getPlayer1().getId()).isEqualTo(game.getPlayer1().getId());
+        assertThat(decoded.getPlayer2().getName()).isEqualTo("Spieler Zwei Überall");
+        assertThat(decoded.getCurrentPlayer().getId()).isEqualTo(game.getCurrentPlayer().getId());
+        assertThat(decoded.getBoard().getPits()).containsExactly(game.getBoard().getPits());
+        assertThat(decoded.getMoveNumber()).isEqualTo(3);
+        assertThat(decoded.getResult()).isEqualTo(game.getResult());
+    }
+
+    @Test
+    public void shouldKeepBoardAndRulesOfVariant() {
+        KalahGame game = new KalahGame("Variant", KalahGameType.MULTI_PLAYER,
+                KalahVariant.of(4, 3, true, false));
+        game.setPlayer1("Player 1");
+        game.setPlayer2("Player 2");
+        game.makeMove(1);
+
+        KalahGame decoded = KalahGameCodec.decodeGame(ByteBuffer.wrap(KalahGameCodec.encode(game)));
+
+        assertThat(decoded.getBoard().getPitsPerPlayer()).isEqualTo(4);
+        assertThat(decoded.getBoard().getStonesPerPit()).isEqualTo(3);
+        assertThat(decoded.getBoard().isCaptures()).isTrue();
+        assertThat(decoded.getBoard().isEmptyCaptures()).isFalse();
+        assertThat(decoded.getBoard().getPits()).containsExactly(game.getBoard().getPits());
+    }
+
+    @Test
+    public void shouldKeepResultAndEmptySeats() {
+        KalahGame game = new KalahGame(null, KalahGameType.SINGLE_PLAYER);
+        game.setPlayer1("Player 1");
+        game.endGame();
+
+        KalahGame decoded = KalahGameCodec.decodeGame(ByteBuffer.wrap(KalahGameCodec.encode(game)));
+
+        assertThat(decoded.getName()).isNull();
+        assertThat(decoded.getGameType()).isEqualTo(KalahGameType.SINGLE_PLAYER);
+        assertThat(decoded.getPlayer2().getName()).isEqualTo("Computer");
+        assertThat(decoded.getResult()).isEqualTo("Draw");
+
+        KalahGame waiting = KalahGameCodec.decodeGame(ByteBuffer.wrap(KalahGameCodec.encode(new KalahGame("W"))));
+        assertThat(waiting.getPlayer1()).isNull();
+        assertThat(waiting.getPlayer2()).isNull();
+    }
+
+    @Test
+    public void shouldDecodeMoves() {
+        MoveRequest move = new MoveRequest();
+        move.setPlayerId(UUID.randomUUID().toString());
+        move.setPitIndex(200);
+
+        byte[] bytes = KalahGameCodec.encode(move);
+        MoveRequest decoded = KalahGameCodec.decodeMove(ByteBuffer.wrap(bytes));
+
+        assertThat(bytes).hasSize(18);
+        assertThat(decoded).isEqualTo(move);
+    }
+
+    @Test
+    public void shouldRefuseGameCutShort() {
+        byte[] bytes = KalahGameCodec.encode(new KalahGame("Cut"));
+
+        assertThatThrownBy(() -> KalahGameCodec.decodeGame(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> KalahGameCodec.decodeMove(ByteBuffer.wrap(new byte[10])))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,34 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahGameEventsTest {
+
+    @Test
+    public void shouldListOnlyChangedPits() {
+        int[] before = {6, 6, 6, 6, 6, 6, 0, 6, 6, 6, 6, 6, 6, 0};
+        int[] after = {6, 6, 0, 7, 7, 7, 1, 7, 7, 6, 6, 6, 6, 0};
+
+        assertThat(KalahGameEvents.changed(before, after)).containsExactly(2, 0, 3, 7, 4, 7, 5, 7, 6, 1, 7, 7, 8, 7);
+        assertThat(KalahGameEvents.changed(after, after)).isEmpty();
+    }
+
+    @Test
+    public void shouldCostNothingWithoutSubscribers() {
+        KalahServiceProperties properties = new KalahServiceProperties();
+        properties.getEvents().setQueueSize(1);
+        KalahGameEvents events = new KalahGameEvents(properties);
+        KalahService service = new KalahService(new KalahEngine(), properties, events);
+        String gameId = service.createGame("Game");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        service.assignPlayer(gameId, "Player 2");
+        service.makeMove(gameId, player1, 2);
+
+        assertThat(events.getSubscribedGames()).isZero();
+        assertThat(events.getDroppedEvents()).isZero();
+        events.shutdown();
+    }
+}
@@ -0,0 +1,91 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.exception.GameNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahGameWaitersTest {
+
+    private KalahGameWaiters waiters;
+    private KalahService service;
+
+    @Before
+    public void setup() {
+        KalahServiceProperties properties = new KalahServiceProperties();
+        waiters = new KalahGameWaiters(properties);
+        service = new KalahService(new KalahEngine(), properties, waiters);
+    }
+
+    @Test
+    public void shouldAnswerWaiterWithNextMove() {
+        String gameId = service.createGame("Game");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        service.assignPlayer(gameId, "Player 2");
+
+        DeferredResult<KalahGame> waiting = waiters.await(gameId, 0, () -> service.getGame(gameId).snapshot());
+        assertThat(waiting.hasResult()).isFalse();
+        assertThat(waiters.getWaiting()).isEqualTo(1);
+
+        service.makeMove(gameId, player1, 2);
+        assertThat(waiting.hasResult()).isTrue();
+        KalahGame game = (KalahGame) waiting.getResult();
+        assertThat(game.getGameId()).isEqualTo(gameId);
+        assertThat(game.getMoveNumber()).isEqualTo(1);
+        assertThat(game.getBoard().getPits()[2]).isZero();
+        assertThat(waiters.getWaiting()).isZero();
+    }
+
+    @Test
+    public void shouldAnswerAtOnceIfMoveWasAlreadyMade() {
+        String gameId = service.createGame("Game");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        service.assignPlayer(gameId, "Player 2");
+        service.makeMove(gameId, player1, 0);
+        service.makeMove(gameId, player1, 1);
+
+        DeferredResult<KalahGame> waiting = waiters.await(gameId, 1, () -> service.getGame(gameId).snapshot());
+        assertThat(((KalahGame) waiting.getResult()).getMoveNumber()).isEqualTo(2);
+        assertThat(waiters.getWaiting()).isZero();
+    }
+
+    @Test
+    public void shouldAnswerWaiterWhenOpponentJoins() {
+        String gameId = service.createGame("Game");
+        service.assignPlayer(gameId, "Player 1");
+
+        DeferredResult<KalahGame> waiting = waiters.await(gameId, 0, () -> service.getGame(gameId).snapshot());
+        service.assignPlayer(gameId, "Player 2");
+
+        KalahGame game = (KalahGame) waiting.getResult();
+        assertThat(game.hasStarted()).isTrue();
+        assertThat(game.getMoveNumber()).isZero();
+    }
+
+    @Test
+    public void shouldAnswerTimeoutWithGameLastSeenAfterItIsDropped() {
+        String gameId = service.createGame("Game");
+        service.assignPlayer(gameId, "Player 1");
+        AtomicInteger reads = new AtomicInteger();
+
+        // Any read after the first finds the game gone.
+        DeferredResult<KalahGame> waiting = waiters.await(gameId, 0, () -> {
+            if (reads.getAndIncrement() > 0) {
+                throw new GameNotFoundException(gameId);
+            }
+            return service.getGame(gameId).snapshot();
+        });
+        ((Runnable) ReflectionTestUtils.getField(waiting, "timeoutCallback")).run();
+
+        KalahGame game = (KalahGame) waiting.getResult();
+        assertThat(game.getGameId()).isEqualTo(gameId);
+        assertThat(game.getPlayer1().getName()).isEqualTo("Player 1");
+        assertThat(waiters.getWaiting()).isZero();
+    }
+}
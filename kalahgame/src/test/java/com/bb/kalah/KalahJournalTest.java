@@ -0,0 +1,285 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.exception.GameNotFoundException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private KalahServiceProperties properties;
+
+    @Before
+    public void setup() throws IOException {
+        properties = new KalahServiceProperties();
+        properties.getJournal().setEnabled(true);
+        properties.getJournal().setDirectory(folder.newFolder("journal").getPath());
+        properties.getJournal().setFsync(false);
+    }
+
+    @Test
+    public void shouldRebuildGamesAfterRestart() {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        String waiting = service.createGame("Waiting");
+        String gameId = service.createGame("Playing");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        String player2 = service.assignPlayer(gameId, "Player 2");
+        service.makeMove(gameId, player1, 0);
+        service.makeMove(gameId, player1, 1);
+        KalahGame before = service.makeMove(gameId, player2, 9);
+        service.shutdown();
+
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        assertThat(restarted.getGames()).isEqualTo(2);
+        assertThat(restarted.getGame(waiting).getName()).isEqualTo("Waiting");
+        assertSameGame(restarted.getGame(gameId), before);
+        assertThat(restarted.getGame(gameId).getPlayer2().getId()).isEqualTo(player2);
+        restarted.shutdown();
+    }
+
+    @Test
+    public void shouldRebuildVariantGamesAfterRestart() {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        String gameId = service.createGame("Variant", KalahGameType.MULTI_PLAYER,
+                KalahVariant.of(4, 3, false, null));
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        service.assignPlayer(gameId, "Player 2");
+        KalahGame before = service.makeMove(gameId, player1, 2);
+        service.shutdown();
+
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        KalahGame after = restarted.getGame(gameId);
+        assertSameGame(after, before);
+        assertThat(after.getBoard().getPitsPerPlayer()).isEqualTo(4);
+        assertThat(after.getBoard().isCaptures()).isFalse();
+        restarted.shutdown();
+    }
+
+    @Test
+    public void shouldReplayComputerMoves() {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        String gameId = service.createGame("Single", KalahGameType.SINGLE_PLAYER);
+        String player = service.assignPlayer(gameId, "Player");
+        KalahGame before = service.makeMove(gameId, player, 2);
+        service.shutdown();
+
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        assertSameGame(restarted.getGame(gameId), before);
+        assertThat(restarted.getGame(gameId).getPlayer2().getName()).isEqualTo("Computer");
+        restarted.shutdown();
+    }
+
+    @Test
+    public void shouldStartFromSnapshotAndDropOldSegments() throws IOException {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        String gameId = service.createGame("Playing");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        String player2 = service.assignPlayer(gameId, "Player 2");
+        service.makeMove(gameId, player1, 2);
+        service.takeSnapshot();
+        KalahGame before = service.makeMove(gameId, player2, 8);
+        service.shutdown();
+
+        assertThat(files("journal-")).isEqualTo(1);
+        assertThat(files("snapshot-")).isEqualTo(1);
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        assertSameGame(restarted.getGame(gameId), before);
+        restarted.shutdown();
+    }
+
+    @Test
+    public void shouldKeepGamesNeverAskedForAcrossSnapshots() {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        String asked = service.createGame("Asked");
+        String never = service.createGame("Never");
+        service.takeSnapshot();
+        service.shutdown();
+
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        assertThat(restarted.getGames()).isEqualTo(2);
+        String player = restarted.assignPlayer(asked, "Player 1");
+        restarted.takeSnapshot();
+        restarted.shutdown();
+
+        KalahService again = new KalahService(new KalahEngine(), properties);
+        assertThat(again.getGames()).isEqualTo(2);
+        assertThat(again.getGame(asked).getPlayer1().getId()).isEqualTo(player);
+        assertThat(again.getGame(never).getName()).isEqualTo("Never");
+        again.shutdown();
+    }
+
+    @Test
+    public void shouldSnapshotGamesAsTheyWereWhenTheSegmentStarted() throws Exception {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        List<String> gameIds = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String gameId = service.createGame("Game " + i);
+            service.assignPlayer(gameId, "Player 1");
+            service.assignPlayer(gameId, "Player 2");
+            gameIds.add(gameId);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> moves = executor.submit(() -> {
+            while (!done.get()) {
+                for (String gameId : gameIds) {
+                    moveFirstHouse(service, gameId);
+                }
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            service.takeSnapshot();
+        }
+        done.set(true);
+        moves.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        Map<String, KalahGame> before = new HashMap<>();
+        for (String gameId : gameIds) {
+            try {
+                before.put(gameId, service.getGame(gameId).snapshot());
+            } catch (GameNotFoundException e) {
+                // Ended.
+            }
+        }
+        service.shutdown();
+
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        assertThat(restarted.getGames()).isEqualTo(before.size());
+        for (KalahGame game : before.values()) {
+            assertSameGame(restarted.getGame(game.getGameId()), game);
+        }
+        restarted.shutdown();
+    }
+
+    @Test
+    public void shouldSkipBatchThatWasNotWrittenCompletely() throws IOException {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        String gameId = service.createGame("Playing");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        service.assignPlayer(gameId, "Player 2");
+        KalahGame before = service.makeMove(gameId, player1, 2);
+        service.shutdown();
+
+        // The start of a batch that says it is much longer than what was written.
+        Files.write(lastSegment(), new byte[]{0, 0, 1, 0, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        assertSameGame(restarted.getGame(gameId), before);
+        restarted.shutdown();
+    }
+
+    @Test
+    public void shouldSkipRestOfBatchAfterUnknownRecord() throws IOException {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        String gameId = service.createGame("Playing");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        service.assignPlayer(gameId, "Player 2");
+        KalahGame before = service.makeMove(gameId, player1, 2);
+        service.shutdown();
+
+        // A batch that matches its checksum, with a record of an unknown type before a move of the game.
+        UUID id = UUID.fromString(gameId);
+        ByteBuffer records = ByteBuffer.allocate(36);
+        records.put((byte) 9).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).put((byte) 0);
+        records.put((byte) 3).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).put((byte) 9);
+        CRC32 crc = new CRC32();
+        crc.update(records.array());
+        ByteBuffer batch = ByteBuffer.allocate(8 + records.capacity());
+        batch.putInt(records.capacity()).putInt((int) crc.getValue()).put(records.array());
+        Files.write(lastSegment(), batch.array(), StandardOpenOption.APPEND);
+
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        assertSameGame(restarted.getGame(gameId), before);
+        restarted.shutdown();
+    }
+
+    @Test
+    public void shouldNotRestoreEndedGames() {
+        KalahService service = new KalahService(new KalahEngine(), properties);
+        String gameId = service.createGame("Short");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        String player2 = service.assignPlayer(gameId, "Player 2");
+        KalahGame game = service.getGame(gameId).snapshot();
+        while (!game.hasGameEnded()) {
+            boolean playerOne = game.getCurrentPlayer().getId().equals(player1);
+            long moves = game.getBoard().legalMoves() & KalahRules.houseMask(6, playerOne);
+            game = service.makeMove(gameId, playerOne ? player1 : player2, Long.numberOfTrailingZeros(moves));
+        }
+        service.shutdown();
+
+        KalahService restarted = new KalahService(new KalahEngine(), properties);
+        assertThat(restarted.getGames()).isZero();
+        restarted.shutdown();
+    }
+
+    /**
+     * Makes the move of the first house with stones of the player to move, if the game hasn't ended.
+     */
+    private static void moveFirstHouse(KalahService service, String gameId) {
+        try {
+            KalahGame game = service.getGame(gameId);
+            int first = game.getCurrentPlayer() == game.getPlayer1() ? 0 : 7;
+            int[] pits = game.getBoard().getPits();
+            for (int pit = first; pit < first + 6; pit++) {
+                if (pits[pit] > 0) {
+                    service.makeMove(gameId, game.getCurrentPlayer().getId(), pit);
+                    return;
+                }
+            }
+        } catch (GameNotFoundException e) {
+            // Ended.
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> segments = Files.list(directory())) {
+            return segments.filter(file -> file.getFileName().toString().startsWith("journal-"))
+                    .max(Path::compareTo).get();
+        }
+    }
+
+    private long files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory())) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+    private Path directory() {
+        return new File(properties.getJournal().getDirectory()).toPath();
+    }
+
+    private static void assertSameGame(KalahGame actual, KalahGame expected) {
+        assertThat(actual.getName()).isEqualTo(expected.getName());
+        assertThat(actual.getPlayer1().getId()).isEqualTo(expected.getPlayer1().getId());
+        assertThat(actual.getPlayer2().getId()).isEqualTo(expected.getPlayer2().getId());
+        assertThat(actual.getCurrentPlayer().getId()).isEqualTo(expected.getCurrentPlayer().getId());
+        assertThat(actual.getBoard().getPits()).containsExactly(expected.getBoard().getPits());
+        assertThat(actual.getMoveNumber()).isEqualTo(expected.getMoveNumber());
+    }
+}
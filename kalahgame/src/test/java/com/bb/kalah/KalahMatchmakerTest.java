@@ -0,0 +1,143 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.request.CreateGameResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahMatchmakerTest {
+
+    private KalahService service;
+    private KalahMatchmaker matchmaker;
+
+    @Before
+    public void setup() {
+        KalahServiceProperties properties = new KalahServiceProperties();
+        service = new KalahService(new KalahEngine(), properties);
+        matchmaker = new KalahMatchmaker(service, properties);
+    }
+
+    @Test
+    public void shouldPairTwoPlayersIntoNewGame() {
+        DeferredResult<ResponseEntity<CreateGameResponse>> first = matchmaker.enqueue("Player 1", null);
+        assertThat(first.hasResult()).isFalse();
+        assertThat(matchmaker.getWaitingPlayers()).isEqualTo(1);
+
+        DeferredResult<ResponseEntity<CreateGameResponse>> second = matchmaker.enqueue("Player 2", null);
+        CreateGameResponse firstGame = response(first);
+        CreateGameResponse secondGame = response(second);
+        assertThat(secondGame.getGameId()).isEqualTo(firstGame.getGameId());
+
+        KalahGame game = service.getGame(firstGame.getGameId());
+        assertThat(game.hasStarted()).isTrue();
+        assertThat(game.getName()).isEqualTo("Player 1 vs Player 2");
+        assertThat(game.getPlayer1().getId()).isEqualTo(firstGame.getPlayerId());
+        assertThat(game.getPlayer2().getId()).isEqualTo(secondGame.getPlayerId());
+        assertThat(matchmaker.getWaitingPlayers()).isZero();
+        assertThat(matchmaker.getPairs()).isEqualTo(1);
+        assertThat(matchmaker.getMaxPairingMillis()).isGreaterThan(0);
+    }
+
+    @Test
+    public void shouldOnlyPairPlayersOfSameRatingBand() {
+        DeferredResult<ResponseEntity<CreateGameResponse>> low = matchmaker.enqueue("Low", 1000);
+        DeferredResult<ResponseEntity<CreateGameResponse>> high = matchmaker.enqueue("High", 1400);
+        DeferredResult<ResponseEntity<CreateGameResponse>> unrated = matchmaker.enqueue("Unrated", null);
+        assertThat(low.hasResult()).isFalse();
+        assertThat(high.hasResult()).isFalse();
+        assertThat(unrated.hasResult()).isFalse();
+        assertThat(matchmaker.getWaitingPlayers()).isEqualTo(3);
+
+        DeferredResult<ResponseEntity<CreateGameResponse>> close = matchmaker.enqueue("Close", 1199);
+        assertThat(response(close).getGameId()).isEqualTo(response(low).getGameId());
+        assertThat(high.hasResult()).isFalse();
+        assertThat(unrated.hasResult()).isFalse();
+    }
+
+    @Test
+    public void shouldPairRatingsBeyondRangeInItsEdgeBands() {
+        DeferredResult<ResponseEntity<CreateGameResponse>> huge = matchmaker.enqueue("Huge", 1_000_000);
+        DeferredResult<ResponseEntity<CreateGameResponse>> negative = matchmaker.enqueue("Negative", -5000);
+        assertThat(matchmaker.getWaitingPlayers()).isEqualTo(2);
+
+        DeferredResult<ResponseEntity<CreateGameResponse>> top = matchmaker.enqueue("Top", 3000);
+        DeferredResult<ResponseEntity<CreateGameResponse>> bottom = matchmaker.enqueue("Bottom", 0);
+        assertThat(response(top).getGameId()).isEqualTo(response(huge).getGameId());
+        assertThat(response(bottom).getGameId()).isEqualTo(response(negative).getGameId());
+        assertThat(matchmaker.getWaitingPlayers()).isZero();
+    }
+
+    @Test
+    public void shouldOnlyPairPlayersAskingForSameVariant() {
+        KalahVariant small = KalahVariant.of(4, 4, null, null);
+        DeferredResult<ResponseEntity<CreateGameResponse>> standard = matchmaker.enqueue("Standard", null);
+        DeferredResult<ResponseEntity<CreateGameResponse>> first = matchmaker.enqueue("Small 1", null, small);
+        assertThat(standard.hasResult()).isFalse();
+        assertThat(first.hasResult()).isFalse();
+
+        DeferredResult<ResponseEntity<CreateGameResponse>> second = matchmaker.enqueue("Small 2", null, small);
+        CreateGameResponse game = response(second);
+        assertThat(game.getGameId()).isEqualTo(response(first).getGameId());
+        assertThat(service.getGame(game.getGameId()).getBoard().getPitsPerPlayer()).isEqualTo(4);
+        assertThat(standard.hasResult()).isFalse();
+    }
+
+    @Test
+    public void shouldPairEveryPlayerExactlyOnceUnderLoad() throws Exception {
+        int threads = 8;
+        int playersPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<DeferredResult<ResponseEntity<CreateGameResponse>>>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<DeferredResult<ResponseEntity<CreateGameResponse>>> results = new ArrayList<>();
+                for (int i = 0; i < playersPerThread; i++) {
+                    results.add(matchmaker.enqueue("Player", i % 3 == 0 ? null : i));
+                }
+                return results;
+            }));
+        }
+        start.countDown();
+        // Every thread has to be done, as the others may still pair the players one of them left waiting.
+        List<DeferredResult<ResponseEntity<CreateGameResponse>>> results = new ArrayList<>();
+        for (Future<List<DeferredResult<ResponseEntity<CreateGameResponse>>>> future : futures) {
+            results.addAll(future.get());
+        }
+        executor.shutdown();
+        Map<String, Integer> players = new HashMap<>();
+        int waiting = 0;
+        for (DeferredResult<ResponseEntity<CreateGameResponse>> result : results) {
+            if (result.hasResult()) {
+                players.merge(response(result).getGameId(), 1, Integer::sum);
+            } else {
+                waiting++;
+            }
+        }
+
+        assertThat(waiting).isEqualTo(matchmaker.getWaitingPlayers());
+        assertThat(players.values()).containsOnly(2);
+        assertThat((long) players.size()).isEqualTo(matchmaker.getPairs());
+        assertThat(2 * players.size() + waiting).isEqualTo(threads * playersPerThread);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CreateGameResponse response(DeferredResult<ResponseEntity<CreateGameResponse>> result) {
+        assertThat(result.hasResult()).isTrue();
+        return ((ResponseEntity<CreateGameResponse>) result.getResult()).getBody();
+    }
+}
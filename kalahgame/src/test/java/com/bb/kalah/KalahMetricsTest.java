@@ -0,0 +1,130 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.exception.IllegalMoveException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KalahMetricsTest {
+
+    private KalahMetrics metrics;
+    private KalahService service;
+
+    @Before
+    public void setup() {
+        metrics = new KalahMetrics();
+        service = new KalahService(new KalahEngine(), new KalahServiceProperties(), KalahGameListener.NONE, metrics);
+    }
+
+    @Test
+    public void shouldCountGamesByState() {
+        String waiting = service.createGame("Waiting");
+        service.assignPlayer(waiting, "Player 1");
+        String playing = service.createGame("Playing");
+        service.assignPlayer(playing, "Player 1");
+        service.assignPlayer(playing, "Player 2");
+
+        assertThat(metrics.getWaitingGames()).isEqualTo(1);
+        assertThat(metrics.getInProgressGames()).isEqualTo(1);
+        assertThat(metrics.getCalls()).containsEntry("create_game", 2L).containsEntry("assign_player", 3L);
+    }
+
+    @Test
+    public void shouldCountMovesByOutcomeAndStonesSown() {
+        String gameId = service.createGame("Game");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        String player2 = service.assignPlayer(gameId, "Player 2");
+        // Six stones from the first pit end in the store, so player 1 plays again.
+        service.makeMove(gameId, player1, 0);
+        // Seven stones from the second pit end in the opponent's second house.
+        service.makeMove(gameId, player1, 1);
+        // Seven stones from pit 8 end in player 1's second house.
+        service.makeMove(gameId, player2, 8);
+        service.makeMove(gameId, player1, 0);
+        // Pit 8 is empty now.
+        assertThatThrownBy(() -> service.makeMove(gameId, player2, 8)).isInstanceOf(IllegalMoveException.class);
+
+        assertThat(metrics.getMoves()).containsEntry("PLAY_AGAIN", 1L).containsEntry("CONTINUE", 3L)
+                .containsEntry("ILLEGAL", 1L).containsEntry("CAPTURE", 0L);
+        assertThat(metrics.getMeanStonesSown()).isEqualTo((6 + 7 + 7 + 1) / 4.0);
+        assertThat(metrics.getCalls()).containsEntry("make_move", 5L);
+    }
+
+    @Test
+    public void shouldCountEveryMoveOfWholeGame() {
+        String gameId = service.createGame("Game");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        String player2 = service.assignPlayer(gameId, "Player 2");
+        long[] expected = new long[KalahGameMove.values().length];
+        KalahGame game = service.getGame(gameId).snapshot();
+        while (!game.hasGameEnded()) {
+            boolean playerOne = game.getCurrentPlayer().getId().equals(player1);
+            int pit = 63 - Long.numberOfLeadingZeros(game.getBoard().legalMoves() & KalahRules.houseMask(6, playerOne));
+            expected[KalahRules.sow(game.getBoard().getPits(), 6, pit).ordinal()]++;
+            game = service.makeMove(gameId, playerOne ? player1 : player2, pit);
+        }
+
+        assertThat(expected[KalahGameMove.CAPTURE.ordinal()]).isPositive();
+        for (KalahGameMove move : KalahGameMove.values()) {
+            assertThat(metrics.getMoves().get(move.name())).isEqualTo(expected[move.ordinal()]);
+        }
+        assertThat(metrics.getInProgressGames()).isZero();
+        assertThat(metrics.getWaitingGames()).isZero();
+    }
+
+    @Test
+    public void shouldScrapeInPrometheusFormat() {
+        String gameId = service.createGame("Game");
+        service.assignPlayer(gameId, "Player 1");
+        metrics.error(new IllegalMoveException(gameId, "player"));
+
+        String scrape = metrics.scrape();
+        assertThat(scrape).contains("# TYPE kalah_operation_seconds histogram\n");
+        assertThat(scrape).contains("kalah_operation_seconds_count{operation=\"create_game\"} 1\n");
+        assertThat(scrape).contains("kalah_operation_seconds_bucket{operation=\"make_move\",le=\"+Inf\"} 0\n");
+        assertThat(scrape).contains("kalah_stones_sown_bucket{le=\"6\"} 0\n");
+        assertThat(scrape).contains("kalah_errors_total{exception=\"IllegalMoveException\"} 1\n");
+        assertThat(scrape).contains("kalah_games{state=\"waiting\"} 1\n");
+        assertThat(scrape).contains("kalah_games{state=\"in_progress\"} 0\n");
+    }
+
+    @Test
+    public void shouldNotAllocateWhileRecording() {
+        KalahBoard board = new KalahBoard(6, 6);
+        board.makeMove(1);
+        int recordings = 10_000;
+        Runnable record = () -> {
+            for (int i = 0; i < recordings; i++) {
+                metrics.timed(KalahMetrics.Operation.MAKE_MOVE, System.nanoTime());
+                metrics.moved(board);
+                metrics.illegalMove();
+            }
+        };
+        // Once to compile.
+        record.run();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        record.run();
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        // Less than a byte a recording, leaving room for what the JVM itself allocates now and then.
+        assertThat(allocated).isLessThan(recordings);
+    }
+
+    @Test
+    public void shouldPlaceValuesIntoBuckets() {
+        KalahHistogram histogram = new KalahHistogram(new long[]{1, 2, 4});
+        for (long value : new long[]{0, 1, 2, 3, 4, 5, 100}) {
+            histogram.record(value);
+        }
+        assertThat(histogram.getCounts()).containsExactly(2, 1, 2, 2);
+        assertThat(histogram.getSum()).isEqualTo(115);
+        assertThat(histogram.percentile(50)).isEqualTo(4);
+        assertThat(histogram.percentile(99)).isEqualTo(4);
+    }
+}
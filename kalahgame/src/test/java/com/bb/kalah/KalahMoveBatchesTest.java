@@ -0,0 +1,130 @@
+package com.bb.kalah;
+
+import com.bb.kalah.exception.BatchTooLargeException;
+import com.bb.kalah.exception.ExceptionHandlingController;
+import com.bb.kalah.exception.MalformedMoveException;
+import com.bb.kalah.request.BatchMoveResponse;
+import com.bb.kalah.request.GameMoveRequest;
+import com.bb.kalah.request.GameMoveResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KalahMoveBatchesTest {
+
+    private KalahServiceProperties properties;
+    private KalahService service;
+    private KalahMoveBatches batches;
+
+    @Before
+    public void setup() {
+        properties = new KalahServiceProperties();
+        properties.getBatch().setMaxMoves(100);
+        service = new KalahService();
+        batches = new KalahMoveBatches(service, new ExceptionHandlingController(new KalahMetrics()), properties);
+    }
+
+    @After
+    public void tearDown() {
+        batches.shutdown();
+    }
+
+    @Test
+    public void shouldMakeMovesInOrderPerGameAndAnswerEachMove() {
+        String playing = service.createGame("Playing");
+        String player1 = service.assignPlayer(playing, "Player 1");
+        String player2 = service.assignPlayer(playing, "Player 2");
+        String waiting = service.createGame("Waiting");
+        String alone = service.assignPlayer(waiting, "Alone");
+
+        BatchMoveResponse<KalahGame> response = batches.makeMoves(Arrays.asList(
+                move(playing, player1, 0),
+                move(waiting, alone, 0),
+                move(playing, player1, 1),
+                move(playing, player1, 2),
+                move(playing, player2, 9),
+                move("not-a-game", player1, 0)));
+
+        List<GameMoveResult> results = response.getResults();
+        assertThat(results).extracting(GameMoveResult::getStatus).containsExactly(200, 400, 200, 400, 200, 404);
+        assertThat(results).extracting(GameMoveResult::getMoveNumber).containsExactly(1, null, 2, null, 3, null);
+        assertThat(results.get(3).getErrorMessage()).contains(player1);
+        assertThat(response.getGames().keySet()).containsExactly(playing, waiting);
+        assertThat(response.getGames().get(playing).getMoveNumber()).isEqualTo(3);
+        assertThat(response.getGames().get(playing).getBoard().getPits())
+                .containsExactly(service.getGame(playing).getBoard().getPits());
+        assertThat(response.getGames().get(waiting).hasStarted()).isFalse();
+    }
+
+    @Test
+    public void shouldPlayManyGamesAtOnce() {
+        List<GameMoveRequest> moves = new ArrayList<>();
+        List<String> gameIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String gameId = service.createGame("Game " + i);
+            String player1 = service.assignPlayer(gameId, "Player 1");
+            String player2 = service.assignPlayer(gameId, "Player 2");
+            gameIds.add(gameId);
+            moves.add(move(gameId, player1, 0));
+            moves.add(move(gameId, player1, 1));
+            moves.add(move(gameId, player2, 7));
+        }
+        Collections.shuffle(gameIds);
+
+        BatchMoveResponse<KalahGame> response = batches.makeMoves(moves);
+
+        assertThat(response.getResults()).extracting(GameMoveResult::getStatus).containsOnly(200);
+        for (String gameId : gameIds) {
+            assertThat(service.getGame(gameId).getMoveNumber()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void shouldAnswerMalformedMovesAndPlayTheOthers() {
+        String gameId = service.createGame("Playing");
+        String player1 = service.assignPlayer(gameId, "Player 1");
+        service.assignPlayer(gameId, "Player 2");
+
+        BatchMoveResponse<KalahGame> response = batches.makeMoves(Arrays.asList(
+                move(gameId, player1, 0),
+                move(null, player1, 1),
+                null,
+                move(gameId, null, 1),
+                move(gameId, player1, 1)));
+
+        List<GameMoveResult> results = response.getResults();
+        assertThat(results).extracting(GameMoveResult::getStatus).containsExactly(200, 400, 400, 400, 200);
+        assertThat(results.get(1).getErrorMessage()).contains("no game");
+        assertThat(results.get(3).getErrorMessage()).contains("no player");
+        assertThat(response.getGames().keySet()).containsExactly(gameId);
+        assertThat(service.getGame(gameId).getMoveNumber()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRefuseBatchWithoutMoves() {
+        assertThatThrownBy(() -> batches.makeMoves(null)).isInstanceOf(MalformedMoveException.class);
+    }
+
+    @Test
+    public void shouldRefuseTooManyMoves() {
+        List<GameMoveRequest> moves = Collections.nCopies(101, move("game", "player", 0));
+
+        assertThatThrownBy(() -> batches.makeMoves(moves)).isInstanceOf(BatchTooLargeException.class);
+    }
+
+    private static GameMoveRequest move(String gameId, String playerId, int pitIndex) {
+        GameMoveRequest move = new GameMoveRequest();
+        move.setGameId(gameId);
+        move.setPlayerId(playerId);
+        move.setPitIndex(pitIndex);
+        return move;
+    }
+}
@@ -0,0 +1,119 @@
+package com.bb.kalah;
+
+import com.bb.kalah.request.CreateGameRequest;
+import com.bb.kalah.request.CreateGameResponse;
+import com.bb.kalah.request.MoveRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The same requests as {@link KalahControllerTest} get the same answers without holding the request thread,
+ * with the journal on so changes really wait for the disk.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "kalah.service.non-blocking=true",
+        "kalah.service.journal.enabled=true",
+        "kalah.service.journal.directory=${java.io.tmpdir}/kalah-journal-${random.uuid}"})
+@AutoConfigureMockMvc
+public class KalahNonBlockingControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldAnswerGameChangesOnceWritten() throws Exception {
+        CreateGameResponse game = createGame(null);
+
+        String player2 = perform(post("/api/v1/game/join/" + game.getGameId())
+                .content("Player 2")
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(player2).isNotEmpty();
+
+        String moved = perform(post("/api/v1/game/move/" + game.getGameId())
+                .content(objectMapper.writeValueAsString(move(game.getPlayerId(), 0)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(moved).contains("playerOneScore\":1", "\"moveNumber\":1");
+
+        perform(post("/api/v1/game/join/" + game.getGameId())
+                .content("Player 3")
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void shouldMapErrorsLikeBlockingEndpoints() throws Exception {
+        perform(post("/api/v1/game/join/INVALID_UUID")
+                .content("Player 1")
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isNotFound());
+
+        CreateGameResponse waiting = createGame(null);
+        perform(post("/api/v1/game/move/" + waiting.getGameId())
+                .content(objectMapper.writeValueAsString(move(waiting.getPlayerId(), 0)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        // Moves against the computer fail on the search threads.
+        CreateGameResponse single = createGame(KalahGameType.SINGLE_PLAYER);
+        perform(post("/api/v1/game/move/" + single.getGameId())
+                .content(objectMapper.writeValueAsString(move("someone-else", 0)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        String moved = perform(post("/api/v1/game/move/" + single.getGameId())
+                .content(objectMapper.writeValueAsString(move(single.getPlayerId(), 0)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(moved).contains("\"gameType\":\"SINGLE_PLAYER\"");
+    }
+
+    private CreateGameResponse createGame(KalahGameType gameType) throws Exception {
+        CreateGameRequest request = new CreateGameRequest();
+        request.setGameName("Non Blocking");
+        request.setPlayerName("Player 1");
+        request.setGameType(gameType);
+        String content = perform(post("/api/v1/game")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(content, CreateGameResponse.class);
+    }
+
+    /**
+     * Performs the request, and the dispatch of its answer if it was handed back to the container.
+     */
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        ResultActions actions = mockMvc.perform(request);
+        MvcResult result = actions.andReturn();
+        return result.getRequest().isAsyncStarted() ? mockMvc.perform(asyncDispatch(result)) : actions;
+    }
+
+    private static MoveRequest move(String playerId, int pitIndex) {
+        MoveRequest move = new MoveRequest();
+        move.setPlayerId(playerId);
+        move.setPitIndex(pitIndex);
+        return move;
+    }
+}
@@ -0,0 +1,162 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahTranspositionTable;
+import com.bb.kalah.exception.StoreFullException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KalahOffHeapGameStoreTest {
+
+    private KalahServiceProperties.Store settings;
+
+    @Before
+    public void setup() {
+        settings = new KalahServiceProperties.Store();
+        settings.setType(KalahServiceProperties.StoreType.OFF_HEAP);
+    }
+
+    @Test
+    public void shouldKeepWholeGameInSlot() {
+        KalahOffHeapGameStore store = new KalahOffHeapGameStore(settings);
+        KalahGame game = new KalahGame("A name much longer than what fits into the slot");
+        game.setPlayer1("Player 1");
+        game.setPlayer2("Player Two With A Very Long Name");
+        game.makeMove(0);
+        game.makeMove(1);
+        game.makeMove(9);
+        store.put(game);
+
+        KalahGame stored = store.get(game.getGameId());
+        assertThat(stored).isNotSameAs(game);
+        assertSameGame(stored, game);
+        assertThat(store.getOffHeapBytes()).isPositive();
+        assertThat(store.getSlotBytes()).isLessThanOrEqualTo(144);
+    }
+
+    @Test
+    public void shouldKeepFinishedGameAndItsResult() {
+        KalahOffHeapGameStore store = new KalahOffHeapGameStore(settings);
+        KalahGame game = new KalahGame("Single", KalahGameType.SINGLE_PLAYER);
+        game.setPlayer1("Player 1");
+        game.endGame();
+        store.put(game);
+
+        KalahGame stored = store.get(game.getGameId());
+        assertSameGame(stored, game);
+        assertThat(stored.getGameType()).isEqualTo(KalahGameType.SINGLE_PLAYER);
+        assertThat(stored.getResult()).isEqualTo("Draw");
+        assertThat(stored.hasGameEnded()).isTrue();
+    }
+
+    @Test
+    public void shouldOnlyReplaceExpectedState() {
+        KalahOffHeapGameStore store = new KalahOffHeapGameStore(settings);
+        KalahGame game = new KalahGame("Game");
+        store.put(game);
+
+        KalahGame first = store.get(game.getGameId());
+        KalahGame second = store.get(game.getGameId());
+        KalahGameState seated = first.getState().seat(first.getGameId(), new KalahPlayer("First"));
+        assertThat(store.replace(first, first.getState(), seated)).isTrue();
+        assertThat(store.replace(second, second.getState(),
+                second.getState().seat(second.getGameId(), new KalahPlayer("Second")))).isFalse();
+
+        assertThat(store.get(game.getGameId()).getPlayer1().getName()).isEqualTo("First");
+        assertThat(store.get(game.getGameId()).getPlayer1().getId()).isEqualTo(seated.getPlayer1().getId());
+    }
+
+    @Test
+    public void shouldKeepSearchTableOfGameUntilRemoved() {
+        KalahOffHeapGameStore store = new KalahOffHeapGameStore(settings);
+        KalahGame game = new KalahGame("Single", KalahGameType.SINGLE_PLAYER);
+        store.put(game);
+        KalahTranspositionTable table = new KalahTranspositionTable(1 << 4);
+
+        KalahGame taken = store.get(game.getGameId());
+        assertThat(taken.getSearchTable()).isNull();
+        taken.setSearchTable(table);
+        store.keepSearchTable(taken);
+
+        assertThat(store.get(game.getGameId()).getSearchTable()).isSameAs(table);
+        store.remove(game.getGameId());
+        store.put(game);
+        assertThat(store.get(game.getGameId()).getSearchTable()).isNull();
+    }
+
+    @Test
+    public void shouldReuseSlotsOfRemovedGames() {
+        settings.setMaxGames(2);
+        KalahOffHeapGameStore store = new KalahOffHeapGameStore(settings);
+        List<KalahGame> games = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            games.add(new KalahGame("Game " + i));
+            store.put(games.get(i));
+        }
+        assertThatThrownBy(() -> store.put(new KalahGame("One too many"))).isInstanceOf(StoreFullException.class);
+
+        store.remove(games.get(0).getGameId());
+        assertThat(store.get(games.get(0).getGameId())).isNull();
+        KalahGame next = new KalahGame("Next");
+        store.put(next);
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.get(next.getGameId()).getName()).isEqualTo("Next");
+        assertThat(store.get(games.get(1).getGameId()).getName()).isEqualTo("Game 1");
+    }
+
+    @Test
+    public void shouldKeepBoardsTooBigForSlotOnHeap() {
+        KalahOffHeapGameStore store = new KalahOffHeapGameStore(settings);
+        KalahGame game = new KalahGame("Big", 8, 20);
+        store.put(game);
+
+        assertThat(store.get(game.getGameId())).isSameAs(game);
+        assertThat(store.size()).isEqualTo(1);
+        store.remove(game.getGameId());
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    public void shouldFindManyGames() {
+        KalahOffHeapGameStore store = new KalahOffHeapGameStore(settings);
+        List<KalahGame> games = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            KalahGame game = new KalahGame("Game " + i);
+            games.add(game);
+            store.put(game);
+        }
+        for (int i = 0; i < games.size(); i += 2) {
+            store.remove(games.get(i).getGameId());
+        }
+        assertThat(store.size()).isEqualTo(2500);
+        for (int i = 0; i < games.size(); i++) {
+            KalahGame stored = store.get(games.get(i).getGameId());
+            if (i % 2 == 0) {
+                assertThat(stored).isNull();
+            } else {
+                assertThat(stored.getName()).isEqualTo("Game " + i);
+            }
+        }
+        assertThat(store.get("not-a-game")).isNull();
+    }
+
+    private static void assertSameGame(KalahGame actual, KalahGame expected) {
+        assertThat(actual.getGameId()).isEqualTo(expected.getGameId());
+        assertThat(actual.getName()).isEqualTo(expected.getName());
+        assertThat(actual.getGameType()).isEqualTo(expected.getGameType());
+        assertThat(actual.getPlayer1().getId()).isEqualTo(expected.getPlayer1().getId());
+        assertThat(actual.getPlayer1().getName()).isEqualTo(expected.getPlayer1().getName());
+        assertThat(actual.getPlayer2().getId()).isEqualTo(expected.getPlayer2().getId());
+        assertThat(actual.getPlayer2().getName()).isEqualTo(expected.getPlayer2().getName());
+        assertThat(actual.getCurrentPlayer().getId()).isEqualTo(expected.getCurrentPlayer().getId());
+        assertThat(actual.getBoard().getPits()).containsExactly(expected.getBoard().getPits());
+        assertThat(actual.getMoveNumber()).isEqualTo(expected.getMoveNumber());
+        assertThat(actual.getBoard().getStonesPerPit()).isEqualTo(expected.getBoard().getStonesPerPit());
+        assertThat(actual.getResult()).isEqualTo(expected.getResult());
+    }
+}
@@ -0,0 +1,295 @@
+package com.bb.kalah;
+
+import com.bb.kalah.engine.KalahEngine;
+import com.bb.kalah.engine.KalahTranspositionTable;
+import com.bb.kalah.exception.GameFullException;
+import com.bb.kalah.exception.GameNotFoundException;
+import com.bb.kalah.exception.GameWrongTurnException;
+import com.bb.kalah.exception.IllegalMoveException;
+import com.bb.kalah.exception.UnauthorizedPitAccessException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress tests that run many requests for the same game at once and check the game afterwards,
+ * for each way of applying concurrent changes.
+ */
+@RunWith(Parameterized.class)
+public class KalahServiceConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 50;
+
+    @Parameterized.Parameter
+    public KalahServiceProperties.Concurrency concurrency;
+
+    @Parameterized.Parameter(1)
+    public KalahServiceProperties.StoreType storeType;
+
+    private KalahService kalahService;
+    private ExecutorService executor;
+
+    @Parameterized.Parameters(name = "{0} {1}")
+    public static Collection<Object[]> concurrencies() {
+        return Arrays.asList(new Object[][]{
+                {KalahServiceProperties.Concurrency.LOCKING, KalahServiceProperties.StoreType.EVICTING},
+                {KalahServiceProperties.Concurrency.OPTIMISTIC, KalahServiceProperties.StoreType.EVICTING},
+                {KalahServiceProperties.Concurrency.LOCKING, KalahServiceProperties.StoreType.OFF_HEAP},
+                {KalahServiceProperties.Concurrency.OPTIMISTIC, KalahServiceProperties.StoreType.OFF_HEAP}
+        });
+    }
+
+    @Before
+    public void setup() {
+        KalahServiceProperties properties = new KalahServiceProperties();
+        properties.setConcurrency(concurrency);
+        properties.getStore().setType(storeType);
+        kalahService = new KalahService(new KalahEngine(), properties);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        kalahService.shutdown();
+    }
+
+    @Test
+    public void shouldSeatExactlyTwoPlayersWhenManyJoinAtOnce() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            String gameId = kalahService.createGame("Race " + round);
+            Set<String> playerIds = ConcurrentHashMap.newKeySet();
+            AtomicInteger rejected = new AtomicInteger();
+
+            runAtOnce(thread -> {
+                try {
+                    playerIds.add(kalahService.assignPlayer(gameId, "Player " + thread));
+                } catch (GameFullException e) {
+                    rejected.incrementAndGet();
+                }
+            });
+
+            KalahGame game = kalahService.getGame(gameId);
+            assertThat(playerIds).hasSize(2).containsOnly(game.getPlayer1().getId(), game.getPlayer2().getId());
+            assertThat(rejected.get()).isEqualTo(THREADS - 2);
+            assertThat(game.getCurrentPlayer()).isSameAs(game.getPlayer1());
+        }
+    }
+
+    @Test
+    public void shouldKeepBoardConsistentUnderConcurrentMoves() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            String gameId = kalahService.createGame("Race " + round);
+            String[] playerIds = {
+                    kalahService.assignPlayer(gameId, "Player 1"),
+                    kalahService.assignPlayer(gameId, "Player 2")
+            };
+            Queue<KalahGame> finished = new ConcurrentLinkedQueue<>();
+            AtomicInteger moves = new AtomicInteger();
+
+            runAtOnce(thread -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (true) {
+                    try {
+                        KalahGame game = kalahService.makeMove(gameId, playerIds[random.nextInt(2)],
+                                random.nextInt(14));
+                        moves.incrementAndGet();
+                        if (!"In Progress".equals(game.getResult())) {
+                            finished.add(game);
+                        }
+                    } catch (GameWrongTurnException | UnauthorizedPitAccessException | IllegalMoveException e) {
+                        // Expected for most random requests, the game is unchanged.
+                    } catch (GameNotFoundException e) {
+                        return;
+                    }
+                }
+            });
+
+            assertThat(finished).hasSize(1);
+            KalahBoard board = finished.peek().getBoard();
+            assertThat(board.getPlayerOneStoneCount()).isZero();
+            assertThat(board.getPlayerTwoStoneCount()).isZero();
+            assertThat(board.getPlayerOneScore() + board.getPlayerTwoScore()).isEqualTo(72);
+            assertThat(moves.get()).isGreaterThan(1);
+        }
+    }
+
+    @Test
+    public void shouldNeverShowHalfMadeMoveToReaders() throws Exception {
+        String gameId = kalahService.createGame("Readers");
+        String[] playerIds = {
+                kalahService.assignPlayer(gameId, "Player 1"),
+                kalahService.assignPlayer(gameId, "Player 2")
+        };
+        Queue<String> inconsistencies = new ConcurrentLinkedQueue<>();
+
+        runAtOnce(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (true) {
+                try {
+                    if (thread % 2 == 0) {
+                        KalahGame game = kalahService.getGame(gameId).snapshot();
+                        KalahBoard board = game.getBoard();
+                        int stones = board.getPlayerOneStoneCount() + board.getPlayerTwoStoneCount()
+                                + board.getPlayerOneScore() + board.getPlayerTwoScore();
+                        if (stones != 72) {
+                            inconsistencies.add(stones + " stones on the board");
+                        }
+                    } else {
+                        kalahService.makeMove(gameId, playerIds[random.nextInt(2)], random.nextInt(14));
+                    }
+                } catch (GameWrongTurnException | UnauthorizedPitAccessException | IllegalMoveException e) {
+                    // Expected for most random requests, the game is unchanged.
+                } catch (GameNotFoundException e) {
+                    return;
+                }
+            }
+        });
+
+        assertThat(inconsistencies).isEmpty();
+    }
+
+    @Test
+    public void shouldNotHoldGameLockWhileComputerSearches() throws Exception {
+        CountDownLatch searching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        KalahEngine engine = new KalahEngine() {
+            @Override
+            public int bestMove(int[] pits, int pitsPerPlayer, int stonesPerPit, int side,
+                                KalahTranspositionTable table) {
+                searching.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.bestMove(pits, pitsPerPlayer, stonesPerPit, side, table);
+            }
+        };
+        KalahServiceProperties properties = new KalahServiceProperties();
+        properties.setConcurrency(concurrency);
+        properties.getStore().setType(storeType);
+        properties.setLockStripes(1);
+        KalahService service = new KalahService(engine, properties);
+        try {
+            String single = service.createGame("Single", KalahGameType.SINGLE_PLAYER);
+            String player = service.assignPlayer(single, "Player");
+            // A game behind the same lock.
+            KalahGameLocks locks = new KalahGameLocks(1);
+            String other;
+            do {
+                other = service.createGame("Other");
+            } while (locks.lockFor(other) != locks.lockFor(single));
+            String player1 = service.assignPlayer(other, "Player 1");
+            service.assignPlayer(other, "Player 2");
+
+            Future<KalahGame> computer = executor.submit(() -> service.makeMove(single, player, 1));
+            assertThat(searching.await(5, TimeUnit.SECONDS)).isTrue();
+            String otherGame = other;
+            KalahGame moved = executor.submit(() -> service.makeMove(otherGame, player1, 1)).get(5, TimeUnit.SECONDS);
+            assertThat(moved.getMoveNumber()).isEqualTo(1);
+            assertThat(service.getGame(single).getMoveNumber()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(computer.get(30, TimeUnit.SECONDS).getMoveNumber()).isGreaterThan(1);
+        } finally {
+            release.countDown();
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldSearchOnlyForMovesThatAreInstalled() throws Exception {
+        AtomicInteger searches = new AtomicInteger();
+        KalahEngine engine = new KalahEngine() {
+            @Override
+            public int bestMove(int[] pits, int pitsPerPlayer, int stonesPerPit, int side,
+                                KalahTranspositionTable table) {
+                searches.incrementAndGet();
+                return super.bestMove(pits, pitsPerPlayer, stonesPerPit, side, table);
+            }
+        };
+        KalahServiceProperties properties = new KalahServiceProperties();
+        properties.setConcurrency(concurrency);
+        properties.getStore().setType(storeType);
+        KalahService service = new KalahService(engine, properties);
+        try {
+            String gameId = service.createGame("Single", KalahGameType.SINGLE_PLAYER);
+            String player = service.assignPlayer(gameId, "Player");
+            AtomicInteger moves = new AtomicInteger();
+
+            runAtOnce(thread -> {
+                try {
+                    service.makeMove(gameId, player, 1);
+                    moves.incrementAndGet();
+                } catch (GameWrongTurnException | IllegalMoveException e) {
+                    // Another thread's move got in first.
+                }
+            });
+
+            int computerMoves = service.getGame(gameId).getMoveNumber() - moves.get();
+            assertThat(moves.get()).isGreaterThan(0);
+            assertThat(searches.get()).isEqualTo(computerMoves);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldAlwaysMapGameToSameLock() {
+        KalahGameLocks locks = new KalahGameLocks(100);
+        assertThat(locks.size()).isEqualTo(128);
+        assertThat(new KalahGameLocks(1).size()).isEqualTo(1);
+        assertThat(new KalahGameLocks(2).size()).isEqualTo(2);
+        String gameId = kalahService.createGame("Locks");
+        assertThat(locks.lockFor(gameId)).isSameAs(locks.lockFor(new String(gameId)));
+    }
+
+    /**
+     * Starts the task on all the threads at the same moment and waits until every thread is done.
+     */
+    private void runAtOnce(Task task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            Callable<Void> callable = () -> {
+                start.await();
+                task.run(thread);
+                return null;
+            };
+            futures.add(executor.submit(callable));
+        }
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private interface Task {
+        void run(int thread);
+    }
+}
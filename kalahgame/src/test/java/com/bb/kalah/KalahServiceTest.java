@@ -1,5 +1,6 @@
 package com.bb.kalah;
 
+import com.bb.kalah.engine.KalahEngine;
 import com.bb.kalah.exception.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +44,24 @@ public class KalahServiceTest {
         fail();
     }
 
+    @Test
+    public void shouldAnswer503WhenStoreIsFull() {
+        KalahServiceProperties properties = new KalahServiceProperties();
+        properties.getStore().setType(KalahServiceProperties.StoreType.OFF_HEAP);
+        properties.getStore().setMaxGames(1);
+        KalahService full = new KalahService(new KalahEngine(), properties);
+        full.createGame(GAME_NAME_1);
+        try {
+            full.createGame(GAME_NAME_1);
+            fail();
+        } catch (StoreFullException e) {
+            assertThat(new ExceptionHandlingController(new KalahMetrics()).handle(e).getStatusCodeValue())
+                    .isEqualTo(503);
+        } finally {
+            full.shutdown();
+        }
+    }
+
     @Test
     public void shouldAssignPlayer1AndSetToCurrentPlayer() {
         String playerId1 = kalahService.assignPlayer(testGameId1, PLAYER_1);
@@ -116,6 +135,27 @@ public class KalahServiceTest {
         kalahService.makeMove(testGameId1, playerId1, 0);
     }
 
+    @Test
+    public void shouldStartSinglePlayerGameWithOnePlayerAndAnswerMoves() {
+        String gameId = kalahService.createGame(GAME_NAME_1, KalahGameType.SINGLE_PLAYER);
+        String playerId1 = kalahService.assignPlayer(gameId, PLAYER_1);
+
+        KalahGame game = kalahService.makeMove(gameId, playerId1, 1);
+        assertThat(game.getGameType()).isEqualTo(KalahGameType.SINGLE_PLAYER);
+        assertThat(game.getPlayer2()).isNotNull();
+        assertThat(game.getCurrentPlayer().getId()).isEqualTo(playerId1);
+        assertThat(game.getBoard().getPlayerTwoScore()).isGreaterThan(0);
+        assertThat(game.getBoard().getPlayerOneStoneCount() + game.getBoard().getPlayerTwoStoneCount()
+                + game.getBoard().getPlayerOneScore() + game.getBoard().getPlayerTwoScore()).isEqualTo(72);
+    }
+
+    @Test(expected = GameFullException.class)
+    public void shouldThrowExceptionIfSecondPlayerJoinsSinglePlayerGame() {
+        String gameId = kalahService.createGame(GAME_NAME_1, KalahGameType.SINGLE_PLAYER);
+        kalahService.assignPlayer(gameId, PLAYER_1);
+        kalahService.assignPlayer(gameId, PLAYER_2);
+    }
+
     @Test
     public void shouldEndGameAndReturnGameStateIfEnd() {
         KalahGame game = endGameMove();
@@ -0,0 +1,95 @@
+package com.bb.kalah;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReadEachGameOnceWhenAskedFor() throws IOException {
+        KalahGame waiting = new KalahGame(null);
+        KalahGame playing = new KalahGame("Playing", KalahGameType.SINGLE_PLAYER);
+        playing.setPlayer1("Player 1");
+        playing.makeMove(2);
+        Path file = folder.newFile().toPath();
+        KalahSnapshot.write(file, Arrays.asList(waiting, playing), null, null);
+
+        try (KalahSnapshot snapshot = KalahSnapshot.open(file)) {
+            assertThat(snapshot.remaining()).isEqualTo(2);
+            KalahGame read = snapshot.take(playing.getGameId());
+            assertSameGame(read, playing);
+            assertThat(read.getGameType()).isEqualTo(KalahGameType.SINGLE_PLAYER);
+            assertThat(read.getMoveNumber()).isEqualTo(1);
+            assertThat(snapshot.take(playing.getGameId())).isNull();
+            assertThat(snapshot.take("not-a-game")).isNull();
+            assertThat(snapshot.remaining()).isEqualTo(1);
+
+            KalahGame readWaiting = snapshot.take(waiting.getGameId());
+            assertThat(readWaiting.getName()).isNull();
+            assertThat(readWaiting.getPlayer1()).isNull();
+            assertThat(readWaiting.getBoard().getPits()).containsExactly(waiting.getBoard().getPits());
+        }
+    }
+
+    @Test
+    public void shouldKeepGamesNotTakenInNextSnapshot() throws IOException {
+        List<KalahGame> games = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            KalahGame game = new KalahGame("Game " + i);
+            game.setPlayer1("Player " + i);
+            games.add(game);
+        }
+        Path first = folder.newFile().toPath();
+        KalahSnapshot.write(first, games, null, null);
+
+        Path second = folder.newFile().toPath();
+        List<KalahGame> changed = new ArrayList<>();
+        try (KalahSnapshot base = KalahSnapshot.open(first)) {
+            for (int i = 0; i < games.size(); i += 3) {
+                KalahGame game = base.take(games.get(i).getGameId());
+                game.setPlayer2("Joined " + i);
+                changed.add(game);
+            }
+            // Taken after the store was collected, so still written from the base.
+            long[] taken = base.takenSoFar();
+            base.take(games.get(1).getGameId());
+            changed.add(new KalahGame("New", 4, 3));
+            Collections.shuffle(changed);
+            KalahSnapshot.write(second, changed, base, taken);
+        }
+
+        try (KalahSnapshot snapshot = KalahSnapshot.open(second)) {
+            assertThat(snapshot.remaining()).isEqualTo(101);
+            for (int i = 0; i < games.size(); i++) {
+                KalahGame game = snapshot.take(games.get(i).getGameId());
+                assertThat(game.getName()).isEqualTo("Game " + i);
+                assertThat(game.getPlayer1().getId()).isEqualTo(games.get(i).getPlayer1().getId());
+                assertThat(game.getPlayer2() == null).isEqualTo(i % 3 != 0);
+            }
+            assertThat(snapshot.remaining()).isEqualTo(1);
+        }
+    }
+
+    private static void assertSameGame(KalahGame actual, KalahGame expected) {
+        assertThat(actual.getGameId()).isEqualTo(expected.getGameId());
+        assertThat(actual.getName()).isEqualTo(expected.getName());
+        assertThat(actual.getPlayer1().getId()).isEqualTo(expected.getPlayer1().getId());
+        assertThat(actual.getPlayer1().getName()).isEqualTo(expected.getPlayer1().getName());
+        assertThat(actual.getPlayer2().getId()).isEqualTo(expected.getPlayer2().getId());
+        assertThat(actual.getCurrentPlayer().getId()).isEqualTo(expected.getCurrentPlayer().getId());
+        assertThat(actual.getBoard().getPits()).containsExactly(expected.getBoard().getPits());
+    }
+}
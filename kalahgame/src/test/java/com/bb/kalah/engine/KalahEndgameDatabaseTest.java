@@ -0,0 +1,118 @@
+package com.bb.kalah.engine;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KalahEndgameDatabaseTest {
+
+    private static final int MAX_STONES = 6;
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static KalahEndgameDatabase database;
+
+    @BeforeClass
+    public static void generateDatabase() throws IOException {
+        Path file = folder.newFile("kalah-endgame.db").toPath();
+        KalahEndgameGenerator.generate(file, 6, MAX_STONES);
+        database = KalahEndgameDatabase.open(file);
+    }
+
+    @Test
+    public void shouldRankEveryPositionToItsOwnIndex() {
+        KalahEndgameDatabase layout = KalahEndgameDatabase.layout(3, 4);
+        BitSet ranks = new BitSet();
+        int positions = 0;
+        int[] pits = new int[8];
+        for (int code = 0; code < 5 * 5 * 5 * 5 * 5 * 5; code++) {
+            int stones = 0;
+            for (int house = 0, rest = code; house < 6; house++, rest /= 5) {
+                pits[house < 3 ? house : house + 1] = rest % 5;
+                stones += rest % 5;
+            }
+            if (stones <= 4) {
+                long rank = layout.rank(pits, KalahPosition.PLAYER_ONE);
+                assertThat(rank).isBetween(0L, layout.size() - 1);
+                assertThat(ranks.get((int) rank)).isFalse();
+                ranks.set((int) rank);
+                positions++;
+            }
+        }
+        assertThat((long) positions).isEqualTo(layout.size());
+    }
+
+    @Test
+    public void shouldMatchMinimaxOnRandomEndgames() {
+        KalahZobrist zobrist = new KalahZobrist(6, 72);
+        KalahPosition position = new KalahPosition(zobrist, 128);
+        Random random = new Random(11);
+        for (int game = 0; game < 200; game++) {
+            int[] pits = new int[14];
+            pits[6] = random.nextInt(30);
+            pits[13] = random.nextInt(30);
+            for (int stones = 1 + random.nextInt(MAX_STONES); stones > 0; stones--) {
+                int house = random.nextInt(12);
+                pits[house < 6 ? house : house + 1]++;
+            }
+            int side = random.nextInt(2);
+            position.load(pits, side);
+
+            assertThat(database.covers(position.houseStones())).isTrue();
+            assertThat(position.endgameScore(database)).isEqualTo(minimax(position));
+        }
+    }
+
+    @Test
+    public void shouldScoreEndgamesFromDatabaseInSearch() {
+        int[] pits = {1, 0, 2, 0, 0, 1, 30, 0, 1, 0, 0, 1, 0, 36};
+        KalahZobrist zobrist = new KalahZobrist(6, 72);
+        KalahSearch search = new KalahSearch(zobrist, new KalahTranspositionTable(1024), database, 16);
+        int move = search.bestMove(pits, KalahPosition.PLAYER_ONE, TimeUnit.SECONDS.toNanos(10));
+
+        assertThat(search.getEndgameHits()).isGreaterThan(0);
+        assertThat(search.getCompletedDepth()).isEqualTo(1);
+
+        KalahPosition position = new KalahPosition(zobrist, 128);
+        position.load(pits, KalahPosition.PLAYER_ONE);
+        assertThat(minimaxAfter(position, move)).isEqualTo(minimax(position));
+    }
+
+    @Test
+    public void shouldRejectOtherFiles() throws IOException {
+        Path file = folder.newFile("not-a-database.db").toPath();
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThatThrownBy(() -> KalahEndgameDatabase.open(file)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static int minimaxAfter(KalahPosition position, int move) {
+        int side = position.getSide();
+        position.make(move);
+        int score = position.getSide() == side ? minimax(position) : -minimax(position);
+        position.unmake();
+        return score;
+    }
+
+    private static int minimax(KalahPosition position) {
+        if (position.isGameOver()) {
+            return position.finalScore();
+        }
+        int best = Integer.MIN_VALUE;
+        for (long moves = position.legalMoves(); moves != 0; moves &= moves - 1) {
+            best = Math.max(best, minimaxAfter(position, Long.numberOfTrailingZeros(moves)));
+        }
+        return best;
+    }
+}
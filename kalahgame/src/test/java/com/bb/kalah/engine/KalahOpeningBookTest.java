@@ -0,0 +1,84 @@
+package com.bb.kalah.engine;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahOpeningBookTest {
+
+    private static final int[] START = {6, 6, 6, 6, 6, 6, 0, 6, 6, 6, 6, 6, 6, 0};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static KalahOpeningBook book;
+
+    @BeforeClass
+    public static void generateBook() {
+        book = KalahOpeningBookGenerator.generate(6, 6, 2, 6);
+    }
+
+    @Test
+    public void shouldHaveLegalMoveForEveryPositionWithinPlies() {
+        KalahPosition position = new KalahPosition(new KalahZobrist(6, 72), 4);
+        position.load(START, KalahPosition.PLAYER_ONE);
+        assertThat(position.legalMoves() & (1L << book.move(position.getHash()))).isNotZero();
+
+        for (long moves = position.legalMoves(); moves != 0; moves &= moves - 1) {
+            position.make(Long.numberOfTrailingZeros(moves));
+            int move = book.move(position.getHash());
+            assertThat(move).isGreaterThanOrEqualTo(0);
+            assertThat(position.legalMoves() & (1L << move)).isNotZero();
+            position.unmake();
+        }
+        assertThat(book.size()).isGreaterThan(6);
+        assertThat(book.move(0L)).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldReadWhatWasWritten() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        book.write(out);
+        KalahOpeningBook read = KalahOpeningBook.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(read.size()).isEqualTo(book.size());
+        assertThat(read.getPlies()).isEqualTo(2);
+        assertThat(read.covers(6, 6)).isTrue();
+        assertThat(read.covers(6, 4)).isFalse();
+        long hash = new KalahZobrist(6, 72).hash(START, KalahPosition.PLAYER_ONE);
+        assertThat(read.move(hash)).isEqualTo(book.move(hash));
+    }
+
+    @Test
+    public void shouldAnswerBookPositionsWithoutSearching() throws IOException {
+        File file = folder.newFile("kalah-opening-book.bin");
+        try (OutputStream out = new FileOutputStream(file)) {
+            book.write(out);
+        }
+        KalahEngineProperties properties = new KalahEngineProperties();
+        properties.setOpeningBook(file.getAbsolutePath());
+        KalahEngine engine = new KalahEngine(properties);
+        KalahTranspositionTable table = engine.tableFor(6, 6);
+
+        int[] afterFirstMove = {6, 0, 7, 7, 7, 7, 1, 7, 6, 6, 6, 6, 6, 0};
+        int move = engine.bestMove(afterFirstMove, 6, 6, KalahPosition.PLAYER_TWO, table);
+        assertThat(move).isBetween(7, 12);
+        assertThat(engine.getBookHits()).isEqualTo(1);
+        assertThat(table.getProbes()).isZero();
+
+        int[] outOfBook = {0, 0, 0, 1, 0, 1, 30, 0, 0, 1, 0, 0, 1, 38};
+        engine.bestMove(outOfBook, 6, 6, KalahPosition.PLAYER_TWO, table);
+        assertThat(engine.getBookMisses()).isEqualTo(1);
+        assertThat(engine.getBookHitRate()).isEqualTo(0.5);
+    }
+}
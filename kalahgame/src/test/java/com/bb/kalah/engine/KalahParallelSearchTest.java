@@ -0,0 +1,83 @@
+package com.bb.kalah.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahParallelSearchTest {
+
+    private static final int[] INITIAL_BOARD = {6, 6, 6, 6, 6, 6, 0, 6, 6, 6, 6, 6, 6, 0};
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setup() {
+        pool = new ForkJoinPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void shouldCaptureLargestPileWithHelpers() {
+        int[] pits = {2, 0, 0, 1, 1, 2, 0, 1, 1, 1, 20, 1, 1, 0};
+        KalahParallelSearch search = new KalahParallelSearch(new KalahZobrist(6, 36),
+                new KalahTranspositionTable(1 << 12), 6, 3, pool);
+        assertThat(search.bestMove(pits, KalahPosition.PLAYER_ONE, TimeUnit.SECONDS.toNanos(10))).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCountNodesOfAllSearchesAndStopHelpersWithMainSearch() {
+        KalahZobrist zobrist = new KalahZobrist(6, 72);
+        KalahTranspositionTable table = new KalahTranspositionTable(1 << 16);
+        KalahParallelSearch search = new KalahParallelSearch(zobrist, table, 48, 3, pool);
+
+        long start = System.nanoTime();
+        int move = search.bestMove(INITIAL_BOARD, KalahPosition.PLAYER_ONE, TimeUnit.MILLISECONDS.toNanos(100));
+        long elapsed = System.nanoTime() - start;
+
+        assertThat(move).isBetween(0, 5);
+        assertThat(search.getNodes()).isGreaterThan(0);
+        assertThat(search.getProbes()).isGreaterThanOrEqualTo(search.getHits());
+        assertThat(elapsed).isLessThan(TimeUnit.SECONDS.toNanos(2));
+        assertThat(pool.awaitQuiescence(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldNotWaitForHelpersThePoolHasNotStarted() throws InterruptedException {
+        CountDownLatch busy = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            pool.execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        KalahParallelSearch search = new KalahParallelSearch(new KalahZobrist(6, 72),
+                new KalahTranspositionTable(1 << 12), 48, 3, pool);
+
+        int move = search.bestMove(INITIAL_BOARD, KalahPosition.PLAYER_ONE, TimeUnit.MILLISECONDS.toNanos(100));
+        busy.countDown();
+
+        assertThat(move).isBetween(0, 5);
+        assertThat(pool.awaitQuiescence(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldSearchWithoutHelpersOrPool() {
+        KalahParallelSearch search = new KalahParallelSearch(new KalahZobrist(6, 72),
+                new KalahTranspositionTable(1 << 12), 4, 0, null);
+        assertThat(search.bestMove(INITIAL_BOARD, KalahPosition.PLAYER_TWO, TimeUnit.SECONDS.toNanos(10)))
+                .isBetween(7, 12);
+    }
+}
@@ -0,0 +1,100 @@
+package com.bb.kalah.engine;
+
+import com.bb.kalah.KalahGameMove;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahPositionTest {
+
+    private static final int[] INITIAL_BOARD = {6, 6, 6, 6, 6, 6, 0, 6, 6, 6, 6, 6, 6, 0};
+
+    private KalahPosition position;
+
+    @Before
+    public void setup() {
+        position = new KalahPosition(new KalahZobrist(6, 72), 8);
+        position.load(INITIAL_BOARD, KalahPosition.PLAYER_ONE);
+    }
+
+    @Test
+    public void shouldOnlyOfferMovesOfSideToMove() {
+        assertThat(position.legalMoves()).isEqualTo(0b111111L);
+        position.make(1);
+        assertThat(position.getSide()).isEqualTo(KalahPosition.PLAYER_TWO);
+        assertThat(position.legalMoves()).isEqualTo(0b1111110000000L);
+    }
+
+    @Test
+    public void shouldKeepSideToMoveOnPlayAgain() {
+        assertThat(position.isPlayAgain(0)).isTrue();
+        assertThat(position.isPlayAgain(1)).isFalse();
+        assertThat(position.make(0)).isEqualTo(KalahGameMove.PLAY_AGAIN);
+        assertThat(position.getSide()).isEqualTo(KalahPosition.PLAYER_ONE);
+        assertThat(position.score()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRestorePositionOnUnmake() {
+        long initialHash = position.getHash();
+        position.make(0);
+        position.make(1);
+        position.make(7);
+        assertThat(position.getPly()).isEqualTo(3);
+
+        position.unmake();
+        position.unmake();
+        position.unmake();
+        assertThat(position.getPly()).isEqualTo(0);
+        assertThat(position.getSide()).isEqualTo(KalahPosition.PLAYER_ONE);
+        for (int i = 0; i < INITIAL_BOARD.length; i++) {
+            assertThat(position.getStones(i)).isEqualTo(INITIAL_BOARD[i]);
+        }
+        assertThat(position.getHash()).isEqualTo(initialHash);
+    }
+
+    @Test
+    public void shouldUpdateHashIncrementally() {
+        KalahZobrist zobrist = new KalahZobrist(6, 72);
+        position = new KalahPosition(zobrist, 64);
+        position.load(INITIAL_BOARD, KalahPosition.PLAYER_ONE);
+        Random random = new Random(3);
+        for (int move = 0; move < 40 && !position.isGameOver(); move++) {
+            long moves = position.legalMoves();
+            int pitNum = pickMove(moves, random);
+            position.make(pitNum);
+
+            int[] pits = new int[INITIAL_BOARD.length];
+            for (int i = 0; i < pits.length; i++) {
+                pits[i] = position.getStones(i);
+            }
+            assertThat(position.getHash()).isEqualTo(zobrist.hash(pits, position.getSide()));
+        }
+    }
+
+    @Test
+    public void shouldHashSameBoardDifferentlyForEachSide() {
+        KalahZobrist zobrist = new KalahZobrist(6, 72);
+        assertThat(zobrist.hash(INITIAL_BOARD, KalahPosition.PLAYER_ONE))
+                .isNotEqualTo(zobrist.hash(INITIAL_BOARD, KalahPosition.PLAYER_TWO));
+    }
+
+    private static int pickMove(long moves, Random random) {
+        int skip = random.nextInt(Long.bitCount(moves));
+        for (int i = 0; i < skip; i++) {
+            moves &= moves - 1;
+        }
+        return Long.numberOfTrailingZeros(moves);
+    }
+
+    @Test
+    public void shouldScoreFinalPositionFromSideToMove() {
+        position.load(new int[]{0, 0, 0, 0, 0, 0, 30, 1, 2, 0, 0, 0, 0, 39}, KalahPosition.PLAYER_TWO);
+        assertThat(position.isGameOver()).isTrue();
+        assertThat(position.score()).isEqualTo(9);
+        assertThat(position.finalScore()).isEqualTo(12);
+    }
+}
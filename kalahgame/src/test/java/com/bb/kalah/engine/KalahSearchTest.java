@@ -0,0 +1,91 @@
+package com.bb.kalah.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KalahSearchTest {
+
+    private static final long TIME_BUDGET = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void shouldCaptureLargestPile() {
+        // Pit 0 ends in the empty house 2, capturing the 20 stones of house 10.
+        int[] pits = {2, 0, 0, 1, 1, 2, 0, 1, 1, 1, 20, 1, 1, 0};
+        KalahSearch search = new KalahSearch(new KalahZobrist(6, 36), new KalahTranspositionTable(1024), 4);
+        assertThat(search.bestMove(pits, KalahPosition.PLAYER_ONE, TIME_BUDGET)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReturnOnlyLegalMoveWithoutSearching() {
+        int[] pits = {0, 0, 0, 0, 0, 0, 0, 4, 0, 0, 0, 0, 0, 0};
+        KalahSearch search = new KalahSearch(new KalahZobrist(6, 4), new KalahTranspositionTable(1024), 8);
+        assertThat(search.bestMove(pits, KalahPosition.PLAYER_TWO, TIME_BUDGET)).isEqualTo(7);
+        assertThat(search.getNodes()).isZero();
+    }
+
+    @Test
+    public void shouldPlayOptimallyOnSolvedBoards() {
+        KalahZobrist zobrist = new KalahZobrist(3, 24);
+        KalahTranspositionTable table = new KalahTranspositionTable(1 << 12);
+        Random random = new Random(7);
+        for (int game = 0; game < 50; game++) {
+            int[] pits = new int[8];
+            for (int i = 0; i < 8; i++) {
+                if (i != 3 && i != 7) {
+                    pits[i] = random.nextInt(4);
+                }
+            }
+            pits[0]++;
+            int side = KalahPosition.PLAYER_ONE;
+
+            KalahSearch search = new KalahSearch(zobrist, table, 40);
+            int move = search.bestMove(pits, side, TIME_BUDGET);
+
+            KalahPosition position = new KalahPosition(zobrist, 64);
+            position.load(pits, side);
+            int best = Integer.MIN_VALUE;
+            for (long moves = position.legalMoves(); moves != 0; moves &= moves - 1) {
+                best = Math.max(best, minimaxAfter(position, Long.numberOfTrailingZeros(moves)));
+            }
+            assertThat(minimaxAfter(position, move)).isEqualTo(best);
+        }
+    }
+
+    @Test
+    public void shouldReuseTableAcrossSearches() {
+        int[] pits = {6, 6, 6, 6, 6, 6, 0, 6, 6, 6, 6, 6, 6, 0};
+        KalahTranspositionTable table = new KalahTranspositionTable(1 << 16);
+        KalahSearch search = new KalahSearch(new KalahZobrist(6, 72), table, 6);
+        search.bestMove(pits, KalahPosition.PLAYER_ONE, TIME_BUDGET);
+        long firstNodes = search.getNodes();
+
+        search.bestMove(pits, KalahPosition.PLAYER_ONE, TIME_BUDGET);
+        assertThat(search.getNodes()).isLessThan(firstNodes);
+        assertThat(table.getHits()).isGreaterThan(0);
+        assertThat(table.getHitRate()).isBetween(0.0, 1.0);
+        assertThat(table.getMemoryBytes()).isEqualTo(KalahTranspositionTable.memoryBytes(1 << 16));
+    }
+
+    private static int minimaxAfter(KalahPosition position, int move) {
+        int side = position.getSide();
+        position.make(move);
+        int score = position.getSide() == side ? minimax(position) : -minimax(position);
+        position.unmake();
+        return score;
+    }
+
+    private static int minimax(KalahPosition position) {
+        if (position.isGameOver()) {
+            return position.finalScore();
+        }
+        int best = Integer.MIN_VALUE;
+        for (long moves = position.legalMoves(); moves != 0; moves &= moves - 1) {
+            best = Math.max(best, minimaxAfter(position, Long.numberOfTrailingZeros(moves)));
+        }
+        return best;
+    }
+}